@@ -0,0 +1,355 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times BuhlmannEngine and VPMEngine on the 51 m and 100 m reference profiles, and VPMEngine on a 100 m profile
+ * with four deco gases at conservatism 4, where the critical volume loop runs the most.
+ *
+ * For each engine and profile it reports the time of the first plan and the average time per plan once the JIT
+ * has compiled the engine. The first plan of the first profile runs interpreted. The profiles are also run as
+ * compiled PlanPrograms, which only load the tissues, for comparison with batch work, and the 100 m profile is
+ * replayed through a DiveComputerKernel at 2 second ticks. To see which engine methods
+ * are compiled, run it with
+ *
+ *  java -XX:+PrintCompilation -cp <classes folder>:<benchmark folder> decoplanner.EngineBenchmark | grep Engine
+ *
+ * Arguments: [warm-up plans] [measured plans], 2000 of each by default.
+ * Debug logs and capture files are turned off, so only the calculation itself is timed.
+ *
+ * Last, it checks with the thread's allocated bytes that the deco stop calculations of BuhlmannEngine, the ceiling,
+ * the projected ascent and the solved stop time, don't allocate once compiled, and throws an IllegalStateException
+ * if they do. That needs a JVM whose ThreadMXBean counts allocated bytes. The calculations are private to the
+ * engine and are called through method handles.
+ *
+ * This file is kept out of the normal source folder, since it needs the jdk.management module, which DecoPlanner
+ * doesn't. Compile it after the other classes, from the DecoPlanner folder:
+ *
+ *  javac -encoding UTF-8 -cp <classes folder> -d <benchmark folder> src/com.scubasoft.dp/benchmark/decoplanner/EngineBenchmark.java
+ *
+ * and run it with
+ *
+ *  java -cp <classes folder>:<benchmark folder> decoplanner.EngineBenchmark
+ */
+public final class EngineBenchmark
+{
+    private EngineBenchmark()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int warmupPlans = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int measuredPlans = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        Settings.gradientFactorFirstStop = 0.20;
+        Settings.gradientFactorSurfacing = 0.85;
+        PlannerConfig config = PlannerConfig.fromSettings();
+        int conservatism = Settings.vpmConservatismSetting;
+        Settings.vpmConservatismSetting = 4;
+        PlannerConfig conservativeConfig = PlannerConfig.fromSettings();
+        Settings.vpmConservatismSetting = conservatism;
+
+        BuhlmannEngine buhlmann = new BuhlmannEngine(config);
+        buhlmann.setDebugEnabled(false);
+        buhlmann.setCaptureEnabled(false);
+        VPMEngine vpm = new VPMEngine(config);
+        vpm.setDebugEnabled(false);
+        vpm.setCaptureEnabled(false);
+
+        PrintStream out = System.out;
+        out.println("Kernel: " + DecoKernel.getImplementation());
+        //VPMEngine still prints its final gradients to the console
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try
+        {
+            out.println(run("Buhlmann  51 m", buhlmann, null, config, REFERENCE_51M, warmupPlans, measuredPlans));
+            out.println(run("Buhlmann 100 m", buhlmann, null, config, REFERENCE_100M, warmupPlans, measuredPlans));
+            out.println(run("VPM-B     51 m", null, vpm, config, REFERENCE_51M, warmupPlans, measuredPlans));
+            out.println(run("VPM-B    100 m", null, vpm, config, REFERENCE_100M, warmupPlans, measuredPlans));
+            out.println(run("VPM-B +4 100 m", null, vpm, conservativeConfig, REFERENCE_100M_FOUR_GASES, warmupPlans, measuredPlans));
+            out.println(runProgram("Program   51 m", buhlmann, config, REFERENCE_51M, warmupPlans, measuredPlans));
+            out.println(runProgram("Program  100 m", buhlmann, config, REFERENCE_100M, warmupPlans, measuredPlans));
+            out.println(runTicks("Ticks    100 m", config, REFERENCE_100M, warmupPlans, measuredPlans));
+            out.println(checkDecoStopAllocations("Stops     51 m", buhlmann, config, REFERENCE_51M, warmupPlans, measuredPlans));
+            out.println(checkDecoStopAllocations("Stops    100 m", buhlmann, config, REFERENCE_100M, warmupPlans, measuredPlans));
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+    }
+
+    //depth, bottom time, bottom gas O2/He, then O2/He/switch depth for each deco gas
+    private static final double[] REFERENCE_51M = {51, 25, 21, 35, 50, 0, 21};
+    private static final double[] REFERENCE_100M = {100, 25, 8, 85, 18, 0, 21, 99, 0, 6};
+    private static final double[] REFERENCE_100M_FOUR_GASES = {100, 25, 8, 85, 18, 45, 57, 35, 25, 36, 50, 0, 21, 100, 0, 6};
+
+    private static String run(String name, BuhlmannEngine buhlmann, VPMEngine vpm, PlannerConfig config, double[] profile, int warmupPlans, int measuredPlans)
+    {
+        long start = System.nanoTime();
+        double runtime = plan(buhlmann, vpm, config, profile);
+        long firstPlan = System.nanoTime() - start;
+
+        for(int i=0; i<warmupPlans; i++)
+        {
+            plan(buhlmann, vpm, config, profile);
+        }
+
+        start = System.nanoTime();
+        for(int i=0; i<measuredPlans; i++)
+        {
+            plan(buhlmann, vpm, config, profile);
+        }
+        double compiledPlan = (System.nanoTime() - start) / (double)measuredPlans;
+
+        return String.format("%s: runtime %.0f min, first plan %.2f ms, compiled %.1f us/plan",
+            name, runtime, firstPlan / 1000000.0, compiledPlan / 1000.0);
+    }
+
+    private static String runProgram(String name, BuhlmannEngine buhlmann, PlannerConfig config, double[] profile, int warmupPlans, int measuredPlans)
+    {
+        PlanProgram program = PlanProgram.compile(buildDive(config, profile));
+        double ceiling = 0;
+        for(int i=0; i<warmupPlans; i++)
+        {
+            ceiling = buhlmann.runProgram(program, config);
+        }
+
+        long start = System.nanoTime();
+        for(int i=0; i<measuredPlans; i++)
+        {
+            ceiling = buhlmann.runProgram(program, config);
+        }
+        double compiledRun = (System.nanoTime() - start) / (double)measuredPlans;
+
+        return String.format("%s: ceiling %.1f, compiled %.2f us/run", name, ceiling, compiledRun / 1000.0);
+    }
+
+    /**
+     * The deco stop calculations from the end of the bottom time of the profile to its first stop, with the dive
+     * and the surfacing gradient factor of a plan of it.
+     */
+    private static String checkDecoStopAllocations(String name, BuhlmannEngine buhlmann, PlannerConfig config, double[] profile, int warmupRuns, int measuredRuns)
+    {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) || !threads.isThreadAllocatedMemorySupported())
+        {
+            return name + ": allocated bytes are not counted by this JVM";
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        plan(buhlmann, null, config, profile);
+        buhlmann.runProgram(PlanProgram.compile(buildDive(config, profile)), config);
+        double result = 0;
+        for(int i=0; i<warmupRuns; i++)
+        {
+            result += DecoStopCalculations.run(buhlmann, config, profile[0]);
+        }
+
+        result = 0;
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        for(int i=0; i<measuredRuns; i++)
+        {
+            result += DecoStopCalculations.run(buhlmann, config, profile[0]);
+        }
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        if(allocated > 0)
+        {
+            throw new IllegalStateException(String.format("%s: the deco stop calculations allocated %d bytes in %d runs", name, allocated, measuredRuns));
+        }
+        return String.format("%s: no allocations in %d runs, %.1f per run", name, measuredRuns, result / measuredRuns);
+    }
+
+    /**
+     * CALC_DECO_CEILING, PROJECTED_ASCENT and DECOMPRESSION_STOP of BuhlmannEngine, on its current tissues.
+     */
+    private static final class DecoStopCalculations
+    {
+        private static final MethodHandle CALC_DECO_CEILING;
+        private static final MethodHandle PROJECTED_ASCENT;
+        private static final MethodHandle DECOMPRESSION_STOP;
+        private static final VarHandle START_TIME;
+
+        static
+        {
+            try
+            {
+                MethodHandles.Lookup engine = MethodHandles.privateLookupIn(BuhlmannEngine.class, MethodHandles.lookup());
+                CALC_DECO_CEILING = engine.findVirtual(BuhlmannEngine.class, "CALC_DECO_CEILING", MethodType.methodType(double.class));
+                PROJECTED_ASCENT = engine.findVirtual(BuhlmannEngine.class, "PROJECTED_ASCENT", MethodType.methodType(double.class, double.class, double.class, double.class, double.class));
+                DECOMPRESSION_STOP = engine.findVirtual(BuhlmannEngine.class, "DECOMPRESSION_STOP", MethodType.methodType(double.class, double.class, double.class));
+                START_TIME = engine.findVarHandle(BuhlmannEngine.class, "startTime", long.class);
+            }
+            catch(ReflectiveOperationException e)
+            {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private DecoStopCalculations()
+        {
+        }
+
+        /**
+         * One deco stop, with the stop the ceiling rounded up to the stop interval, as in CALCULATE_DECOMPRESSION.
+         * The engine must have the dive and gradient factor of a plan. The tissues are left as they were.
+         * @param Starting_Depth where the ascent to the stop starts
+         * @return the ceiling, the stop depth and the stop time, added up so that none of them is optimized away
+         */
+        static double run(BuhlmannEngine buhlmann, PlannerConfig config, double Starting_Depth)
+        {
+            try
+            {
+                START_TIME.set(buhlmann, System.nanoTime());
+                double Deco_Ceiling_Depth = (double)CALC_DECO_CEILING.invokeExact(buhlmann);
+                double Deco_Stop_Depth = Math.round((Deco_Ceiling_Depth/config.decoStopInterval) + 0.5) * config.decoStopInterval;
+                double Projected_Stop_Depth = (double)PROJECTED_ASCENT.invokeExact(buhlmann, Starting_Depth, (double)-config.ascentRate, Deco_Stop_Depth, (double)config.decoStopInterval);
+                return Deco_Ceiling_Depth + Projected_Stop_Depth + (double)DECOMPRESSION_STOP.invokeExact(buhlmann, Projected_Stop_Depth, (double)config.decoStopInterval);
+            }
+            catch(Throwable e)
+            {
+                throw e instanceof RuntimeException runtime ? runtime : new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The descent and bottom time of the profile, then a straight ascent at the configured rate, sampled every 2 seconds.
+     */
+    private static String runTicks(String name, PlannerConfig config, double[] profile, int warmupDives, int measuredDives)
+    {
+        DiveComputerKernel diveComputer = new DiveComputerKernel(config, 2.0);
+        double[] depths = tickDepths(config, profile, 2.0);
+        double ceiling = 0;
+        for(int i=0; i<warmupDives; i++)
+        {
+            ceiling = replay(diveComputer, config, profile, depths);
+        }
+
+        long start = System.nanoTime();
+        for(int i=0; i<measuredDives; i++)
+        {
+            ceiling = replay(diveComputer, config, profile, depths);
+        }
+        double ticksPerSecond = (double)measuredDives*depths.length / ((System.nanoTime() - start) / 1000000000.0);
+
+        return String.format("%s: %d ticks per dive, highest ceiling %.1f, %.1f million ticks/s", name, depths.length, ceiling, ticksPerSecond / 1000000.0);
+    }
+
+    private static double replay(DiveComputerKernel diveComputer, PlannerConfig config, double[] profile, double[] depths)
+    {
+        diveComputer.reset(config.surfaceN2Saturation);
+        diveComputer.setGas(profile[3]/100.0, 1.0 - (profile[2] + profile[3])/100.0);
+        double highestCeiling = 0;
+        for(double depth : depths)
+        {
+            diveComputer.tick(depth);
+            highestCeiling = Math.max(highestCeiling, diveComputer.getCeiling());
+        }
+        return highestCeiling;
+    }
+
+    private static double[] tickDepths(PlannerConfig config, double[] profile, double tickSeconds)
+    {
+        double depth = profile[0];
+        double descentTime = depth / config.descentRate;
+        double ascentTime = depth / config.ascentRate;
+        double tickMinutes = tickSeconds / 60.0;
+        double[] depths = new double[(int)Math.ceil((profile[1] + ascentTime) / tickMinutes)];
+        for(int i=0; i<depths.length; i++)
+        {
+            double time = (i + 1)*tickMinutes;
+            if(time < descentTime)
+            {
+                depths[i] = time*config.descentRate;
+            }
+            else if(time < profile[1])
+            {
+                depths[i] = depth;
+            }
+            else
+            {
+                depths[i] = Math.max(0.0, depth - (time - profile[1])*config.ascentRate);
+            }
+        }
+        return depths;
+    }
+
+    private static double plan(BuhlmannEngine buhlmann, VPMEngine vpm, PlannerConfig config, double[] profile)
+    {
+        Dive dive = buildDive(config, profile);
+        if(buhlmann != null)
+        {
+            buhlmann.CalculateOpenCircuitDeco(dive, config);
+        }
+        else
+        {
+            vpm.CalculateOpenCircuitDeco(dive, config);
+        }
+        return dive.currentRunTime;
+    }
+
+    /**
+     * A descent at the configured rate and a constant depth segment, where the bottom time includes the descent.
+     */
+    private static Dive buildDive(PlannerConfig config, double[] profile)
+    {
+        double depth = profile[0];
+        double bottomTime = profile[1];
+
+        Dive dive = new Dive();
+        dive.surfacePressure = config.surfacePressure;
+        dive.gases.add(new Gas(profile[2], profile[3], Gas.DIVE_GAS, (int)depth));
+        for(int i=4; i<profile.length; i+=3)
+        {
+            dive.gases.add(new Gas(profile[i], profile[i+1], Gas.DECO_GAS, (int)profile[i+2]));
+        }
+        for(int i=0; i<16; i++)
+        {
+            dive.initialNitrogenCompartmentPressure[i] = config.surfaceN2Saturation;
+            dive.initialHeliumCompartmentPressure[i] = 0.0;
+        }
+
+        double descentTime = depth / config.descentRate;
+        Gas bottomGas = dive.gases.get(0);
+
+        DiveSegment descent = new DiveSegment();
+        descent.segmentType = DiveSegment.DESCENT;
+        descent.startDepth = 0;
+        descent.endDepth = depth;
+        descent.startRunTime = 0;
+        descent.duration = descentTime;
+        descent.endRunTime = descentTime;
+        descent.gasID = 0;
+        descent.oxygenFraction = bottomGas.oxygenFraction;
+        descent.heliumFraction = bottomGas.heliumFraction;
+        descent.userDefined = true;
+        dive.diveSegments.add(descent);
+
+        DiveSegment bottom = new DiveSegment();
+        bottom.segmentType = DiveSegment.CONSTANT_DEPTH;
+        bottom.startDepth = depth;
+        bottom.endDepth = depth;
+        bottom.startRunTime = descentTime;
+        bottom.duration = bottomTime - descentTime;
+        bottom.endRunTime = bottomTime;
+        bottom.gasID = 0;
+        bottom.oxygenFraction = bottomGas.oxygenFraction;
+        bottom.heliumFraction = bottomGas.heliumFraction;
+        bottom.userDefined = true;
+        dive.diveSegments.add(bottom);
+
+        return dive;
+    }
+}
@@ -0,0 +1,2844 @@
+/**
+ * Copyright Andreas Hagberg
+ */ 
+ 
+ package decoplanner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Bühlmann ZH-L16 decompression engine.
+ *
+ * All tissue, oxygen exposure and gradient factor state is kept in the engine object, so a
+ * plan only touches its own engine. An engine is not thread-safe by itself, but one engine
+ * per thread (or engines taken from a pool) can plan dives in parallel. BuhlmannDeco is the
+ * old static API, and delegates to one shared engine.
+ *
+ * The "Schreiner" equation:
+ *  P = Pi0 + R(t - 1/k) - (Pi0 - P0 - (R/k))e^-kt
+ *
+ * Where
+ *  P = resulting compartment inert gas pressure (after time t)
+ *  Pi0 = initial inspired (alveolar) inert gas pressure = (initial ambient pressure minus water vapor pressure) times fraction of inert gas = (Pamb0 - PH2O)*Fgas
+ *  P0 = initial compartment inert gas pressure
+ *  R = rate of change in inspired gas pressure with change in ambient pressure = rate of ascent/descent times the fraction of inert gas
+ *  t = time (of exposure or interval)
+ *  k = half-time constant = ln2/half-time
+ *  water vapor pressure = 0,627 msw (2,041 fsw)  for Bühlmann.
+ *
+ * This equation is used to compute the partial pressure gas loading for each gas separately during ascent/descent.
+ * The sum of these is then the total compartment gas loading.
+ */
+public final class BuhlmannEngine
+{
+//    private Body body; //the body we are currently working on
+    private Dive currentDive; //the dive we are currently working on
+    
+//    private double PH2O;	// Water vapor Pressure
+    private double surfacePressure;
+
+    private double Currently_Max_Allowed_Gradient_Factor;
+
+    //where we are among the user's input segments, shared by the process...Segment methods
+    private boolean ascentDone;
+    private boolean atManualDecoStop;
+    private boolean doneAdecoStop;
+    private boolean stoppedAfterAscent;
+    private boolean firstShallowerUserInput;
+    
+//    private ObservableList<DiveDecoSegment> resultingDecoPlan;
+
+
+//    private double[] Fraction_Oxygen = new double[10];
+//    private int Number_of_Changes;
+//    private int Mix_Number;
+//    private double[] Depth_Change;
+//    private int[] Mix_Change;		
+//    private int[] Rate_Change;  //use for GUE's variable ascent rates. Whole feet/meters.
+//    private int[] Step_Size_Change; // detta kan jag ju använda för att införa ett alternativ att ändra till 1m/1ft de sista 9 metrarna..
+//    private int Step_Size;
+
+//    private double Last_Run_Time, Run_Time,Stop_Time;
+
+
+    private double CNStoxicityPercentage;
+    private double OTUbuildup;
+
+
+    // N2 compartment pressures
+    private double[] nitrogenCompartmentPressure = new double[16]; //PN2
+    
+    // N2 Half-time constants
+    private double[] kN2;
+
+    // He compartment pressures
+    private double[] heliumCompartmentPressure = new double[16]; //PHe
+
+    // He Half-time constants
+    private double[] kHe;
+
+    private DecoKernel kernel; //the gas loading calculations for the half-times of the model
+
+    private BuhlmannModel model; //the ZH-L16 variant that the time constants and the a- and b-values are loaded from
+    private boolean modelMetric; //if the a-values are loaded in msw or fsw
+
+    // surfacing N2 M-values
+//	private double[] N2_M0;
+//	private final double[] N2_deltaM = {1.7928, 1.5352, 1.3847, 1.2780, 1.2306, 1.1857, 1.1504, 1.1223, 1.0999, 1.0844, 1.0731, 1.0635, 1.0552, 1.0478, 1.0414, 1.0359};
+
+    // surfacing He M-values
+//	private double[] He_M0;
+//	private final double[] He_deltaM = {2.3557, 2.0964, 1.74, 1.5321, 1.3845, 1.3189, 1.2568, 1.2079, 1.1692, 1.1419, 1.1232, 1.1115, 1.1022, 1.0963, 1.0904, 1.085, 1.0791};
+
+    private double[] N2_a;
+    private double[] N2_b;
+    private double[] He_a;
+    private double[] He_b;
+    
+    private int currentMinimumDecoStopDuration;
+    
+    private final TissueState stopSavePoint = new TissueState(); //the tissues before DECOMPRESSION_STOP, reused for every stop
+    private final DecoZoneSearch decoZoneSearch = new DecoZoneSearch(false);
+    private final ProjectedAscentSearch projectedAscentSearch = new ProjectedAscentSearch(); //the stops of PROJECTED_ASCENT
+    private final LeadingCompartmentCeiling leadingCeiling = new LeadingCompartmentCeiling(); //the ceilings, see CALC_DECO_CEILING
+    private final double[] solvedNitrogenPressure = new double[16]; //the tissues at a stop time checked by solveStopTime
+    private final double[] solvedHeliumPressure = new double[16];
+    //PROJECTED_ASCENT's local arrays, reused for every call so a plan doesn't allocate per stop
+    private final double[] projectedInitialHeliumPressure = new double[16];
+    private final double[] projectedInitialNitrogenPressure = new double[16];
+    private final double[] projectedGasLoading = new double[16];
+    private final double[] projectedAllowableGasLoading = new double[16];
+    private final double[] projectedLoopHeliumPressure = new double[16];
+    private final double[] projectedLoopNitrogenPressure = new double[16];
+    private boolean stopTimeVerification; //also step through every stop, and use the stepped stop time
+    private int stopTimeMismatches; //stops in the last calculation where the solved and the stepped stop time differ
+    
+    private PlannerConfig config; //the settings for the plan we are currently working on
+    private double loopSetPoint; //the pO2 setpoint in ATA while on a closed circuit loop, 0 on open circuit
+    private double scrOxygenConsumption; //on a config.scrLoop, for the dive or the deco
+    private double scrMinuteVolume;
+    private final DoubleUnaryOperator loopInertPressure = Ambient_Pressure -> inspiredGasPressure(Ambient_Pressure, config.waterVaporPressure);
+    private static final double SCR_TOLERANCE_ATA = 0.0001; //the largest error in the inspired pressures on an SCR ascent or descent
+    
+    private ArrayList<DecoTableSegment> decoPlan = new ArrayList<>(); //the resulting deco plan of the last calculation
+    private ArrayList<PlanWarning> warnings = new ArrayList<>();
+    
+    private PlanBudget budget = PlanBudget.DEFAULT;
+    private long startTime = System.nanoTime(); //when the current calculation started, for the PlanBudget time limit
+    
+    // Debug logging
+    private PrintWriter debugLog;
+    private boolean debugEnabled = true;
+    private boolean captureEnabled = true; //write the finished schedule to the console and capture files
+    private SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+        
+    public BuhlmannEngine()
+    {
+        this(PlannerConfig.fromSettings());
+    }
+    
+    public BuhlmannEngine(PlannerConfig config)
+    {
+        this.config = config;
+        loadModelValues();
+    }
+    
+    /**
+     * Turns the per-calculation debug log file on or off for this engine.
+     * Batch and worker engines normally want it off, since every call otherwise creates a new log file.
+     * @param enabled 
+     */
+    public void setDebugEnabled(boolean enabled)
+    {
+        debugEnabled = enabled;
+    }
+    
+    /**
+     * Turns writing the finished schedule to the console and capture files on or off for this engine.
+     * @param enabled 
+     */
+    public void setCaptureEnabled(boolean enabled)
+    {
+        captureEnabled = enabled;
+    }
+    
+    /**
+     * DECOMPRESSION_STOP solves the stop times (see solveStopTime). With verification on, every stop is also stepped
+     * through minute by minute as in the original code, the stepped stop time is used, and the stops where the two
+     * differ are counted in getStopTimeMismatches.
+     * @param verification 
+     */
+    public void setStopTimeVerification(boolean verification)
+    {
+        stopTimeVerification = verification;
+    }
+    
+    /**
+     * @return the number of stops in the last calculation where the solved and the stepped stop time differ, with verification on
+     */
+    public int getStopTimeMismatches()
+    {
+        return stopTimeMismatches;
+    }
+    
+    /**
+     * @return the number of compartments the ceilings in the last calculation didn't have to calculate, since they
+     * couldn't lead
+     */
+    public long getSkippedCeilingCompartments()
+    {
+        return leadingCeiling.getSkippedCompartments();
+    }
+    
+    /**
+     * Sets the limits for each calculation. The default is PlanBudget.DEFAULT.
+     * @param budget 
+     */
+    public void setBudget(PlanBudget budget)
+    {
+        this.budget = budget;
+    }
+    
+    /**
+     * The engine doesn't touch Dive.resultingDecoPlan, since that is a JavaFX list. The static API copies this list into it.
+     * @return the resulting deco plan of the last calculation
+     */
+    public List<DecoTableSegment> getDecoPlan()
+    {
+        return decoPlan;
+    }
+    
+    /**
+     * @return the problems found during the last calculation, that the user should be told about
+     */
+    public List<PlanWarning> getWarnings()
+    {
+        return warnings;
+    }
+    
+    public void init()
+    {
+        //The constructor only reads the settings once, so if we have switched Imperial/Metric mode or ZH-L16 B/C between planning dives, we have to load the model again here.
+        //Settings.zhl_model_changed is only a hint for the shared engine, an engine from a pool might have missed the change, so the model is checked for every plan.
+        //BuhlmannDeco clears it, the engine doesn't write to Settings.
+        config = PlannerConfig.fromSettings();
+        loadModelValues();
+    }
+    
+    /**
+     * Loads the time constants and the metric or imperial a- and b-values of the model in the current config.
+     * The model has them calculated already, so this only copies them when the model or the units have changed.
+     */
+    private void loadModelValues()
+    {
+        if(config.buhlmannModel == model && config.metric == modelMetric)
+        {
+            return;
+        }
+        model = config.buhlmannModel;
+        modelMetric = config.metric;
+        kernel = model.getKernel();
+        kN2 = kernel.getNitrogenTimeConstants();
+        kHe = kernel.getHeliumTimeConstants();
+        N2_a = model.getNitrogenA(config.metric);
+        He_a = model.getHeliumA(config.metric);
+        N2_b = model.getNitrogenB();
+        He_b = model.getHeliumB();
+        leadingCeiling.setCoefficients(N2_a, N2_b, He_a, He_b);
+    }
+
+
+    public static double schreinerEquation(double Initial_Inspired_Gas_Pressure, double Rate_Change_Insp_Gas_Pressure, double Interval_Time, double Gas_Time_Constant, double Initial_Gas_Pressure)
+    {
+        return DecoKernel.schreinerEquation(Initial_Inspired_Gas_Pressure, Rate_Change_Insp_Gas_Pressure, Interval_Time, Gas_Time_Constant, Initial_Gas_Pressure);
+    }
+
+/* HALDANE_EQUATION = Initial_Gas_Pressure + (Inspired_Gas_Pressure - Initial_Gas_Pressure) *(1.0 - EXP(-Gas_Time_Constant * Interval_Time))
+Pt (t) = Palv0 + [Pt0 − Palv0]e−kt
+where 
+Pt (t) Partial pressure of the gas in the tissue (bar)
+Pt0 Initial partial pressure of the gas in the tissue at t=0 (bar)
+Palv0 Constant partial pressure of the gas in the breathing mix in the alveoli (bar)
+k A constant depending on the type of tissue (min−1)
+t Time (min)
+ 
+Eller  
+P = Po + (Pi - Po)(1 - 2^(-t/half-time))
+där 
+P = compartment inert gas pressure (final)
+Po = initial compartment inert gas pressure
+Pi = inspired inert gas pressure
+t = time (of exposure or interval)
+k = time constant (in this case, half-time constant)
+*/
+
+    public static double haldaneEquation(double Initial_Compartment_Pressure, double Inspired_Gas_Pressure, double Time_Constant, double Segment_Time)
+    {
+        return DecoKernel.haldaneEquation(Initial_Compartment_Pressure, Inspired_Gas_Pressure, Time_Constant, Segment_Time);
+    }
+    /**
+     * haldaneEquation_helium
+     * @param initialCompartmentPressure
+     * @param compartmentIndex index 0 to 15
+     * @param ambientPressure
+     * @param breathingGasHeliumFraction
+     * @param segmentDuration in minutes
+     * @return The updated compartment pressure
+     */
+    public double haldaneEquation_helium(double initialCompartmentPressure, int compartmentIndex, double ambientPressure, double breathingGasHeliumFraction, double segmentDuration)
+    {
+        double inspiredGasPressure = (ambientPressure - config.waterVaporPressure) * breathingGasHeliumFraction;
+        // Pt (t) = Palv0 + (Pt0 − Palv0)e^−kt
+        return initialCompartmentPressure + (inspiredGasPressure - initialCompartmentPressure)*(1 - Math.exp(-kHe[compartmentIndex]*segmentDuration));
+    }
+    
+    /**
+     * haldaneEquation_nitrogen
+     * @param initialCompartmentPressure
+     * @param compartmentIndex index 0 to 15
+     * @param ambientPressure
+     * @param breathingGasNitrogenFraction
+     * @param segmentDuration in minutes
+     * @return The updated compartment pressure
+     */
+    public double haldaneEquation_nitrogen(double initialCompartmentPressure,  int compartmentIndex, double ambientPressure, double breathingGasNitrogenFraction, double segmentDuration)
+    {
+        double inspiredGasPressure = (ambientPressure - config.waterVaporPressure) * breathingGasNitrogenFraction;
+        // Pt (t) = Palv0 + (Pt0 − Palv0)e^−kt
+        return initialCompartmentPressure + (inspiredGasPressure - initialCompartmentPressure)*(1 - Math.exp(-kN2[compartmentIndex]*segmentDuration));    
+    }
+    
+    /**
+     * To be used in OpenCircuitDivePlan
+     * @param compartmentIndex
+     * @param nitrogenCompartmentPressure
+     * @param heliumCompartmentPressure
+     * @return The calculated A-factor
+     */
+    public double calculateAfactor(int compartmentIndex, double nitrogenCompartmentPressure, double heliumCompartmentPressure)
+    {
+        return ((N2_a[compartmentIndex] * nitrogenCompartmentPressure) + (He_a[compartmentIndex] * heliumCompartmentPressure)) / (nitrogenCompartmentPressure + heliumCompartmentPressure);
+    }
+    /**
+     * To be used in OpenCircuitDivePlan
+     * @param compartmentIndex
+     * @param nitrogenCompartmentPressure
+     * @param heliumCompartmentPressure
+     * @return The calculated B-factor
+     */
+    public double calculateBfactor(int compartmentIndex, double nitrogenCompartmentPressure, double heliumCompartmentPressure)
+    {
+        return ((N2_b[compartmentIndex] * nitrogenCompartmentPressure) + (He_b[compartmentIndex] * heliumCompartmentPressure)) / (nitrogenCompartmentPressure + heliumCompartmentPressure);
+    }
+	
+    public void updateHighestMvaluePercentageAndGradientFactor(double ambientPressure)
+    {
+        // calculate the M-value percentage, and GF
+        double highestmValueFraction = -1;
+        double mValuePercent;
+        double mValue;
+        double highestGradientFactor = -1;
+        double gradientFactor;
+        double a;
+        double b;
+
+        for(int cpt=0; cpt<16; cpt++)
+        {
+            a = ((N2_a[cpt] * nitrogenCompartmentPressure[cpt]) + (He_a[cpt] * heliumCompartmentPressure[cpt])) / (nitrogenCompartmentPressure[cpt] + heliumCompartmentPressure[cpt]);	// calculate a(N2+He)
+            b = ((N2_b[cpt] * nitrogenCompartmentPressure[cpt]) + (He_b[cpt] * heliumCompartmentPressure[cpt])) / (nitrogenCompartmentPressure[cpt] + heliumCompartmentPressure[cpt]);	// calculate b(N2+He)
+            mValue = (ambientPressure / b) + a;
+            mValuePercent = (nitrogenCompartmentPressure[cpt] + heliumCompartmentPressure[cpt]) / mValue;	// calculate the mValuePercent for the current Compartment...
+            highestmValueFraction = Math.max(highestmValueFraction, mValuePercent);
+
+            // och nu till gradientFactors..
+            // GF: (TotalCmpPressure(He+N2) - ambientPressure) / (M-value - ambientPressure)
+            // Analys-delen i DecoPlanner är jävligt fel i många fall, så kolla att denna formel verkligen funkar i alla lägen..			
+            gradientFactor = ((nitrogenCompartmentPressure[cpt]+heliumCompartmentPressure[cpt]) - ambientPressure) / (mValue - ambientPressure);
+//System.out.println("[updateHighestMvaluePercentageAndGradientFactor] ambientPressure: " + ambientPressure + " Cpt" + cpt + " mValue: " + mValue + " nitrogenPressure: " + nitrogenCompartmentPressure[cpt] + " gradientFactor: " + gradientFactor);
+            highestGradientFactor = Math.max(highestGradientFactor, gradientFactor);
+        }
+        currentDive.highestCurrentMvalueFraction = highestmValueFraction;
+        currentDive.highestCurrentGradientFactor = highestGradientFactor;
+    }
+    
+    
+    
+    /**===============================================================================
+    * SUBROUTINE ALTITUDE_DIVE_ALGORITHM
+    * Purpose: This subprogram updates gas loadings (as required) based on
+    * whether or not diver is acclimatized at altitude or makes an ascent to
+    * altitude before the dive.
+    **/
+    private void ALTITUDE_DIVE_ALGORITHM()
+    {
+        
+        double Ascent_to_Altitude_Time, Time_at_Altitude_Before_Dive;
+        double Starting_Ambient_Pressure, Ending_Ambient_Pressure;
+        double Initial_Inspired_N2_Pressure, Rate, Nitrogen_Rate;
+        double Inspired_Nitrogen_Pressure, Initial_Nitrogen_Pressure;
+        double Barometric_Pressure;
+        double Water_Vapor_Pressure = config.waterVaporPressure;
+        
+
+        Ascent_to_Altitude_Time = config.hoursToAltitude * 60.0;
+        Time_at_Altitude_Before_Dive = config.hoursAtAltitudeBeforeDive * 60.0;
+        if(config.acclimatizedAtDiveAltitude)
+        {
+            Barometric_Pressure = Util.calculateBarometricPressure(config.altitude);
+            if(currentDive.missionDiveNumber == 1)
+            {
+    //System.out.println("altitudeSubProgram - " + Barometric_Pressure);            
+                for(int i=0;i<16;i++)
+                {
+                    heliumCompartmentPressure[i] = 0.0;
+                    nitrogenCompartmentPressure[i] = (Barometric_Pressure - Water_Vapor_Pressure)*0.79;
+                }
+            }
+        }
+        else
+        {
+            Barometric_Pressure = Util.calculateBarometricPressure(config.altitudeAcclimatized);
+            Starting_Ambient_Pressure = Barometric_Pressure;
+            //if this is a repetitive dive, we do NOT initialize with ambient pressure, since we already have a gas load
+            if(currentDive.missionDiveNumber == 1)
+            {
+                for(int i=0;i<16;i++)
+                {
+                    heliumCompartmentPressure[i] = 0.0;
+                    nitrogenCompartmentPressure[i] = (Barometric_Pressure - Water_Vapor_Pressure)*0.79;
+                }
+            }
+            Barometric_Pressure = Util.calculateBarometricPressure(config.altitude);
+            Ending_Ambient_Pressure = Barometric_Pressure;
+            Initial_Inspired_N2_Pressure = (Starting_Ambient_Pressure - Water_Vapor_Pressure)*0.79;
+            Rate = (Ending_Ambient_Pressure - Starting_Ambient_Pressure) / Ascent_to_Altitude_Time;
+            Nitrogen_Rate = Rate*0.79;
+            for(int i=0;i<16;i++)
+            {
+                Initial_Nitrogen_Pressure = nitrogenCompartmentPressure[i];
+                nitrogenCompartmentPressure[i] = schreinerEquation(Initial_Inspired_N2_Pressure, Nitrogen_Rate, Ascent_to_Altitude_Time, kN2[i], Initial_Nitrogen_Pressure);
+            }
+            Inspired_Nitrogen_Pressure = (Barometric_Pressure - Water_Vapor_Pressure)*0.79;
+            for(int i=0;i<16;i++)
+            {
+                Initial_Nitrogen_Pressure = nitrogenCompartmentPressure[i];
+                nitrogenCompartmentPressure[i] = haldaneEquation(Initial_Nitrogen_Pressure, Inspired_Nitrogen_Pressure, kN2[i], Time_at_Altitude_Before_Dive);
+            }
+        }
+        //the new surface pressure is only in this plan's config, BuhlmannDeco copies it to Settings afterwards
+        config = config.withSurfacePressure(Barometric_Pressure, (Barometric_Pressure - Water_Vapor_Pressure)*0.79);
+    }
+    
+    
+    
+    
+    /**
+     * Plans the dive with the values in Settings right now.
+     * @param theDive
+     * @return Dive
+     */
+    public Dive CalculateOpenCircuitDeco(Dive theDive)
+    {
+        return CalculateOpenCircuitDeco(theDive, PlannerConfig.fromSettings());
+    }
+    
+    /**
+     * @param theDive
+     * @param theConfig the settings to plan with. Settings is not read during the calculation.
+     * @return Dive
+     */
+    //public ObservableList<DiveDecoSegment> CalculateOpenCircuitDeco(Body theBody)
+    public Dive CalculateOpenCircuitDeco(Dive theDive, PlannerConfig theConfig)
+    {
+        config = theConfig;
+        startTime = System.nanoTime();
+        loadModelValues();
+        
+//        body = theBody;
+        currentDive = theDive; // body.getCurrentDive();
+        
+        // Initialize debug logging (create new file for each calculation)
+        if (debugEnabled) {
+            openDebugLog();
+        }
+
+        //reset the currentDive object to surface state (but not tissue pressures and oxygen exposure, since this might be a repetitive dive)
+        currentDive.activeGasID = 0;
+        loopSetPoint = 0.0;
+        currentDive.currentDepth = 0;
+        currentDive.currentRate = config.descentRate;
+        currentDive.currentRunTime = 0;
+        
+//        ArrayList<DecoGas> decoGases = currentDive.decoGases;
+        nitrogenCompartmentPressure = currentDive.initialNitrogenCompartmentPressure.clone(); //body.nitrogenCompartmentPressure; //array
+        heliumCompartmentPressure = currentDive.initialHeliumCompartmentPressure.clone(); //body.heliumCompartmentPressure;  //array
+        
+        if (debugEnabled && debugLog != null) {
+            logTissues("Initial");
+        }
+        
+        if(config.diveAtAltitude)
+        {
+            ALTITUDE_DIVE_ALGORITHM();
+            //I forgot to do the following before version 4.6.4 ...
+            currentDive.surfacePressure = config.surfacePressure;
+            currentDive.surfaceN2Pressure = config.surfaceN2Saturation;
+        }
+        
+        
+        CNStoxicityPercentage = currentDive.initialCNStoxicityPercentage;
+        OTUbuildup = currentDive.initialOTUbuildup;
+        
+//        Settings.setWaterVaporPressure(currentDive.waterVaporPressure);
+        surfacePressure = currentDive.surfacePressure;
+
+        Currently_Max_Allowed_Gradient_Factor = config.gradientFactorFirstStop;
+        
+        currentMinimumDecoStopDuration = Math.round(config.Minimum_Deco_Stop_Time);
+
+        decoPlan = new ArrayList<>();
+        warnings = new ArrayList<>();
+        stopTimeMismatches = 0;
+        leadingCeiling.resetSkippedCompartments();
+
+        double Pamb0;   // initial ambient pressure
+        double Pamb;    // ambient pressure
+        double Pi0;	// initial inspired inert gas pressure = (Pamb0 - PH2O) * [FN2||FHe]
+        double FN2;	// fraction N2.  0.xx
+        double FHe;	// fraction He.  0.xx
+        //double RATE;    // ascent/descent rate msw/min (fsw/min). RATE is negative at ascent.
+        double R;	// RATE * [FN2||FHe]
+        double segmentDuration;	    // duration of interval (minutes)
+        ascentDone = false;
+        atManualDecoStop = false;
+        doneAdecoStop = false;
+        stoppedAfterAscent = false;
+        firstShallowerUserInput = false;
+
+        DiveSegment diveSegment = null;
+        //kör nu igenom alla segment och uppdatera vävnaderna och se om det behövs nån deko mellan de segment som användaren lagt in
+        //for(DiveSegment diveSegment : currentDive.diveSegments)    
+        
+        for(int currentSegmentIndex = 0; currentSegmentIndex < currentDive.diveSegments.size(); currentSegmentIndex++)
+        {
+            diveSegment = currentDive.diveSegments.get(currentSegmentIndex);
+            
+            Pamb0 = diveSegment.startDepth + surfacePressure;		// ambient pressure at start of this segment
+            Pamb = diveSegment.endDepth + surfacePressure;		// ambient pressure at the end of this segment
+            segmentDuration = diveSegment.duration;
+            currentDive.currentRate = (Pamb - Pamb0) / segmentDuration;	// ascent/descent rate msw/min or fsw/min
+//System.out.println("About to process input segment, starting Pamb: " + Pamb0 + " ending Pamb: " + Pamb + " Duration: " + segmentDuration);                        
+            FHe = currentDive.getCurrentHeliumFraction();		// fraction He.  0.xx
+            FN2 = 1 - FHe - currentDive.getCurrentOxygenFraction();	// fraction N2.  0.xx
+            //closed circuit segments are loaded at their setpoint if the config asks for it, see inspiredGasPressure
+            loopSetPoint = config.closedCircuitSetPoints ? Math.max(0.0, diveSegment.pO2SetPoint) : 0.0;
+            setScrPhase(false);
+            
+            //Update compartment pressures
+            switch(diveSegment.segmentType) 
+            {                    
+                case DiveSegment.CONSTANT_DEPTH:
+                    processConstantDepthSegment(currentSegmentIndex, diveSegment, Pamb0);
+                    break;
+                case DiveSegment.ASCENT:
+                    currentSegmentIndex = processAscentSegment(currentSegmentIndex, diveSegment, segmentDuration);
+                    break;
+                case DiveSegment.DESCENT:
+                    processDescentSegment(currentSegmentIndex, diveSegment, segmentDuration);
+                    break;
+            }
+        }
+        
+        //If this is a bailout dive and the last segment was on CCR, we need to switch the current gas to the OC-bailout, which has a gasID of the loop gas + 1.
+        //Denna förutsättning funkar inte om man har lagt till två eller fler input-segment med samma diluent!
+        if(currentDive.isBailoutDive && diveSegment.pO2SetPoint > 0)
+        {
+            currentDive.activeGasID = currentDive.initialBailoutGasID;
+            loopSetPoint = 0.0;
+        }
+ 
+        //Now we have processed all the diver-generated input segments.
+        // So, decompress up to the surface.
+        decompress((int)Math.round(currentDive.currentDepth), 0);
+
+        currentDive.surfacingNitrogenCompartmentPressure = nitrogenCompartmentPressure.clone();
+        currentDive.surfacingHeliumCompartmentPressure = heliumCompartmentPressure.clone();
+        currentDive.surfacingCNStoxicityPercentage = CNStoxicityPercentage;
+        currentDive.surfacingOTUbuildup = OTUbuildup;
+        
+       
+        //And also save the values to the Body object in case we want to do a subsequent dive
+//        Body.saveSurfacingValuesForDive(currentDive.missionDiveNumber, nitrogenCompartmentPressure, heliumCompartmentPressure, CNStoxicityPercentage, OTUbuildup);
+
+        // Log final decompression schedule
+        if (debugEnabled && debugLog != null) {
+            logFinalSchedule();
+        }
+        
+        // CONSOLE OUTPUT FOR DIVE PLAN CAPTURE
+        if (captureEnabled) {
+            printScheduleCapture();
+        }
+
+        return currentDive;
+    }
+
+    /**
+     * Creates a new debug log file for this calculation.
+     */
+    private void openDebugLog()
+    {
+        try {
+            // Close existing debug log if open
+            if (debugLog != null) {
+                debugLog.close();
+            }
+            
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            String logFileName = "decoplanner_debug_" + timestamp + ".txt";
+            debugLog = new PrintWriter(new FileWriter(logFileName));
+            debugLog.println("=== DECOPLANNER DEBUG LOG ===");
+            debugLog.println("Generated: " + new Date());
+            debugLog.println();
+            logDebugSettings();
+        } catch (IOException e) {
+            System.err.println("Could not create debug log: " + e.getMessage());
+            debugEnabled = false;
+        }
+    }
+
+    /**
+     * A constant depth segment from the user, which can also be a manual deco stop after an ascent.
+     */
+    private void processConstantDepthSegment(int currentSegmentIndex, DiveSegment diveSegment, double Pamb0)
+    {
+//System.out.println("\nDiveSegment.CONSTANT_DEPTH: " + diveSegment.startDepth + " duration: " + diveSegment.duration);
+        
+        double originalSegmentDuration = diveSegment.duration;
+        //Check if the previous segment was an ascent without deco, and if we want to include the ascent time in the run time of this constant-depth segment
+        if(ascentDone && config.includeTravelTimeInDiveDuration && stoppedAfterAscent)
+        {
+//System.out.println("This is a manual deco stop, NOT the first.");  
+            //And also actually change the duration in the diveSegment
+            diveSegment.duration -= currentDive.diveSegments.get(currentSegmentIndex - 1).duration; //subtract the ascent-segment's duration
+            diveSegment.endRunTime = diveSegment.startRunTime + diveSegment.duration;
+            currentDive.diveSegments.set(currentSegmentIndex, diveSegment);
+            if(doneAdecoStop)
+            {
+                //update allowed gradient factor
+                Currently_Max_Allowed_Gradient_Factor = (diveSegment.startDepth - config.decoStopInterval) * currentDive.gradientFactorSlope + config.gradientFactorSurfacing;
+            }
+        }
+        
+        if(ascentDone && !stoppedAfterAscent)
+        {
+//System.out.println("This is a manual first shallower level, not necessarily a required deco stop.");
+            firstShallowerUserInput = true;
+            //Här rundar vi upp så run_time slutar på en hel minut (eller vad minimum_deco_stop_time nu är) när vi avslutar detta dekostoppet.
+            if(diveSegment.endRunTime % 1 != 0)
+            {
+                diveSegment.endRunTime = Math.round(diveSegment.endRunTime);
+                diveSegment.duration = diveSegment.endRunTime - diveSegment.startRunTime;
+//System.out.println("diveSegment.duration ändrades till " + diveSegment.duration);                            
+            }
+        }
+        
+        if(ascentDone && atManualDecoStop && doneAdecoStop == false)
+        {
+//System.out.println("This is a manual first deco stop."); 
+            //Vi kommer hit om användaren har satt ett manuellt första stopp, så det inte har behövts deko innan detta constant_depth-segment, men segmentet är exakt på första stopp-djupet
+            //SET GRADIENT FACTOR SLOPE
+            if(currentDive.gradientFactorSlope == 0.0)
+            {
+                currentDive.gradientFactorSlope = (config.gradientFactorSurfacing - config.gradientFactorFirstStop)/(0.0 - diveSegment.startDepth);
+            }
+            Currently_Max_Allowed_Gradient_Factor = (diveSegment.startDepth - config.decoStopInterval) * currentDive.gradientFactorSlope + config.gradientFactorSurfacing;
+            doneAdecoStop = true;
+        }
+
+        //Se till att vi verkligen har rätt gas aktiv, eftersom vi kan ha växlat gas under tidigare dekostopp
+        currentDive.activeGasID = diveSegment.gasID;
+//System.out.println("Constant depth input at " + diveSegment.startDepth + ". currentDive.activeGasID set to: " + diveSegment.gasID + " Duration: " + diveSegment.duration);
+        GAS_LOADINGS_CONSTANT_DEPTH(diveSegment.startDepth, diveSegment.duration);
+
+/*
+System.out.println("Buhlman OC: depth " + diveSegment.startDepth + " run time " + (currentDive.currentRunTime + diveSegment.duration));
+System.out.print("Helium: ");
+for(int i=0; i<16; i++)
+{
+    System.out.print(heliumCompartmentPressure[i] + ", ");
+}
+System.out.println();
+System.out.print("Nitrogen: ");
+for(int i=0; i<16; i++)
+{
+    System.out.print(nitrogenCompartmentPressure[i] + ", ");
+}
+System.out.println();
+*/                    
+        currentDive.currentDepth = diveSegment.startDepth;
+                            
+        currentDive.currentRunTime += diveSegment.duration;
+        
+        //skapa ett decoSegment och lägg till i resulting deco plan
+        DecoTableSegment decoSegment = DIVEDATA_CONSTANT_DEPTH(diveSegment.startDepth, config.RMV_During_Dive, diveSegment.duration);
+
+//System.out.println("DiveSegment.CONSTANT_DEPTH: " + diveSegment.startDepth + " duration: " + diveSegment.duration + " original duration: " + originalSegmentDuration);
+        
+        //if(ascentDone && atManualDecoStop)
+        if(ascentDone && atManualDecoStop && !stoppedAfterAscent) // added  "&& !stoppedAfterAscent" in v.4.3.11
+        {
+//System.out.println("ascentDone && atManualDecoStop && !stoppedAfterAscent");
+            //for the first deco stop we set endRunTime to follow the real schedule, but we adjust the startRunTime based on the stop duration
+            decoSegment.setEndRunTime(currentDive.diveSegments.get(currentSegmentIndex - 1).endRunTime + diveSegment.duration);
+            
+            //we don't include the ascent-time in the first deco stop duration
+            decoSegment.setStartRunTime(diveSegment.startRunTime);
+            //decoSegment.setDuration(Util.roundToOneDecimal(currentDive.diveSegments.get(currentSegmentIndex - 1).endRunTime + diveSegment.duration - diveSegment.startRunTime));
+            decoSegment.setDuration(originalSegmentDuration);
+        }
+        else if(stoppedAfterAscent || !ascentDone) //this is not the first stop of an ascent
+        {
+//System.out.println("stoppedAfterAscent || !ascentDone");
+            //set the duration back to the user-input's value if we included ascent time in this
+            if(config.includeTravelTimeInDiveDuration)
+            {
+               decoSegment.setDuration(diveSegment.duration + currentDive.diveSegments.get(currentSegmentIndex - 1).duration);
+               // decoSegment.setDuration(originalSegmentDuration);
+            }
+        }                    
+        
+        //2022-01-21: from v4.3.5: Is there ever a reason to NOT show the user's original input duration for a segment in the deco table..?
+        //let's set it back for any user defined segment.
+        //2022-07-30: the added check for if the segment depth is the same as previous can be true if you plan two segments at the depth, mostly likely during bailout-planning.
+        if(diveSegment.userDefined && (firstShallowerUserInput || (diveSegment.endDepth == currentDive.diveSegments.get(currentSegmentIndex - 1).startDepth)))
+        {
+//System.out.println("Setting back the duration to " + originalSegmentDuration);
+            decoSegment.setDuration(originalSegmentDuration);
+        }
+        
+        
+        //check if we need to adjust the start-runtime of this segment to make it a nicely rounded number
+        if(Double.parseDouble(decoSegment.getStartRunTime()) % currentMinimumDecoStopDuration > 0)
+        {
+            decoSegment.setStartRunTime(Math.round(Double.parseDouble(decoSegment.getStartRunTime())));
+        }
+        //Add the gas volume used on the previous travel-segment
+        decoSegment.setGasVolumeUsedDuringSegment(Double.parseDouble(decoSegment.getGasVolumeUsedDuringSegment()) + currentDive.diveSegments.get(currentSegmentIndex - 1).gasVolumeUsedDuringSegment);
+        if(diveSegment.userDefined)
+        {
+            decoSegment.setUserDefined(true);
+            
+            if(currentDive.isBailoutDive && diveSegment.pO2SetPoint > 0)
+            {
+                //Visa med decimaler så man verkligen ser att det är en loop-gas
+                decoSegment.setHeliumPercentage(Util.roundToOneDecimal(currentDive.getCurrentHeliumFraction() * 100));
+                decoSegment.setOxygenPercentage(Util.roundToOneDecimal(currentDive.getCurrentOxygenFraction() * 100));
+                //och nollställ gasförbrukningen igen. Fast, jag bör väl egentligen beräkna volymen av användarens lungor gånger djupets tryck..
+                decoSegment.setGasVolumeUsedDuringSegment(0.0);
+            }
+        }
+        
+        decoPlan.add(decoSegment);
+        //Update the body's supersaturation values. The gradient factor for the decoSegment needs to show the value for the beginning of the segment, NOT the end.
+        updateHighestMvaluePercentageAndGradientFactor(Pamb0);
+        //Update this diveSegment's compartment pressures
+        diveSegment.nitrogenCompartmentPressuresAtEndOfDuration = nitrogenCompartmentPressure.clone();
+        diveSegment.heliumCompartmentPressuresAtEndOfDuration = heliumCompartmentPressure.clone();
+        //Now update the diveSegment object in the actual array (since the diveSegment is NOT a reference)
+        currentDive.diveSegments.set(currentSegmentIndex, diveSegment);
+        
+        if(ascentDone)
+        {
+            stoppedAfterAscent = true;
+        }
+        
+        ascentDone = false;
+        atManualDecoStop = false;
+        firstShallowerUserInput = false;
+    }
+
+    /**
+     * An ascent segment from the user. Adds the deco stops needed to reach the end depth of the segment.
+     * @return the index of the last segment that was added, for the segment loop
+     */
+    private int processAscentSegment(int currentSegmentIndex, DiveSegment diveSegment, double segmentDuration)
+    {
+        double current_deco_ceiling = CALC_DECO_CEILING();
+//System.out.println("\nDiveSegment.ASCENT: " + diveSegment.startDepth + " -> " + diveSegment.endDepth + " - ceiling: " + current_deco_ceiling);
+        // FÖRST MÅSTE JAG KOLLA SÅ INTE DECO-CEILING ÖVERSKRIDS NÄR VI GÅR GRUNDARE!
+        if(current_deco_ceiling > diveSegment.endDepth)
+        {
+            //fr.o.m. v4.0-beta10: kolla ifall current_deco_ceiling är tillräckligt nära diveSegment.endDepth att det kanske faktiskt inte behövs nån deko efter en "projected ascent"
+            //så, kolla om ceiling är inom ett dekostopp-intervall ifrån diveSegment.endDepth
+            if(current_deco_ceiling < (diveSegment.endDepth + config.decoStopInterval))
+            {
+                //Detta kan hända om man knappar in ett manuellt första deko stopp.
+                //Så det behövs kanske faktiskt inte nån deko innan man når detta stoppet, men detta segment blir ett manuellt deko stopp.
+                //Kolla med en projected ascent.
+                if(diveSegment.endDepth >= PROJECTED_ASCENT(diveSegment.startDepth, Math.negateExact(config.ascentRate), diveSegment.endDepth, config.decoStopInterval))
+                {
+//System.out.println("No need for deco between " + diveSegment.startDepth + " -> " + diveSegment.endDepth);                                
+                    //Behövs alltså ingen deko trots allt. Så uppdatera bara vävnader och syreexponering.
+                    
+                    if(currentDive.offgassingStartsAtDepth == 0.0 && !ascentDone)
+                    {
+                        currentDive.offgassingStartsAtDepth = CALC_START_OF_DECO_ZONE(diveSegment.startDepth);
+//System.out.println("DiveSegment.ASCENT: Saving offgassing startdepth 1 = " + currentDive.offgassingStartsAtDepth + " FROM: " + diveSegment.startDepth);                                    
+                    }
+                    
+                    GAS_LOADINGS_ASCENT_DESCENT(diveSegment.startDepth, diveSegment.endDepth, config.ascentRate);
+//System.out.println(" About to call updateHighestMvaluePercentageAndGradientFactor with endDepth: " + diveSegment.endDepth + " and surface pressure: " + currentDive.surfacePressure);
+                    updateHighestMvaluePercentageAndGradientFactor(diveSegment.endDepth + currentDive.surfacePressure);
+                    DIVEDATA_ASCENT_DESCENT(diveSegment.startDepth, diveSegment.endDepth, config.ascentRate, config.RMV_During_Dive);
+                    //Update this diveSegment's compartment pressures
+                    diveSegment.nitrogenCompartmentPressuresAtEndOfDuration = nitrogenCompartmentPressure.clone();
+                    diveSegment.heliumCompartmentPressuresAtEndOfDuration = heliumCompartmentPressure.clone();
+                    currentDive.diveSegments.set(currentSegmentIndex, diveSegment);
+                    currentDive.currentDepth = diveSegment.endDepth;
+                    currentDive.currentRunTime += segmentDuration;
+                    
+                    ascentDone = true;
+                    atManualDecoStop = true;
+                    currentDive.currentDepth = diveSegment.endDepth;
+                    return currentSegmentIndex;
+                }
+            }
+            
+            //perform decompression up to diveSegment.endDepth and add
+            // all the deco stops to both the diveSegments-array plus the resultingDecoPlan
+            
+            //Jag måste ju ta bort detta ASCENT-segment från arrayen eftersom decompress-functionen lägger till ett ascent-segment till första stoppet.
+            // Och eftersom decompress-funktionen lägger till nya diveSegment i currentDive.diveSegments så måste jag här först spara undan 
+            // alla efterkommande diveSegments som finns INNAN decompress-funktionen, och ta bort dem från currentDive.diveSegments så de nya segmenten läggs till 
+            // i rätt ordning
+            
+            //ta bort segmentet från arrayen
+            currentDive.diveSegments.remove(diveSegment);
+            //och spara undan de efterföljande segmenten vi redan har
+            ArrayList<DiveSegment> tempDiveSegments = new ArrayList<>();
+            for(int i=currentSegmentIndex; i<currentDive.diveSegments.size();i++)
+            {
+                tempDiveSegments.add(currentDive.diveSegments.get(i));
+            }
+            //ta bort efterföljande segment från arrayen
+            currentDive.diveSegments.removeAll(tempDiveSegments);                        
+            //kolla hur många segment vi har innan decompress-funktionen
+            int numberOfSegmentsBeforeAddingDeco = currentDive.diveSegments.size();
+            double runTimeBeforeAddingDeco = currentDive.diveSegments.get(currentDive.diveSegments.size()-1).endRunTime;                        
+            //gör dekompressionen
+            decompress((int)Math.round(diveSegment.startDepth), (int)Math.round(diveSegment.endDepth));
+            //kolla nu hur många segment decompress-funktionen lade till, så vi kan uppdatera currentSegmentIndex (för foor-loopen vi är i)
+            int numberOfSegmentsAddedByDeco = currentDive.diveSegments.size() - numberOfSegmentsBeforeAddingDeco;
+            currentSegmentIndex = currentSegmentIndex + numberOfSegmentsAddedByDeco - 1; // -1 för att vi redan tog bort detta ascent-segment från arrayen
+            //update the currentDive status
+            currentDive.currentDepth = diveSegment.endDepth;
+            currentDive.currentRunTime = currentDive.diveSegments.get(currentDive.diveSegments.size()-1).endRunTime; //current runtime is the endRunTime of the last segment that the decompress-function added
+            //nu är vi på diveSegment.endDepth, så lägg nu till de efterföljande segmenten som vi sparade undan
+            //Först måste jag uppdatera alla StartRunTime och EndRunTimes för alla segmenten i tempDiveSegments, så jag lägger på den dekotid som lagts till på dyket nu.
+            double timeAddedByDeco = currentDive.currentRunTime - runTimeBeforeAddingDeco - diveSegment.duration; //jag tar bort diveSegment.duration eftersom jag tog bort det segmentet från currentDive
+            DiveSegment tmpSegment;
+            for(int i=0; i<tempDiveSegments.size(); i++)
+            {
+                tmpSegment = tempDiveSegments.get(i);
+                tmpSegment.startRunTime += timeAddedByDeco;
+                tmpSegment.endRunTime += timeAddedByDeco;
+                tempDiveSegments.set(i, tmpSegment);
+            }
+            currentDive.diveSegments.addAll(tempDiveSegments);
+            doneAdecoStop = true;
+            stoppedAfterAscent = true;
+        }
+        // Måste även kolla så inte gasupptaget vid denna uppstigning gör att deco-ceiling överskrids
+        else if(diveSegment.endDepth < PROJECTED_ASCENT(diveSegment.startDepth, Math.negateExact(config.ascentRate), diveSegment.endDepth, config.decoStopInterval))
+        {
+//System.out.println("After projected ascent, deco is still needed between " + diveSegment.startDepth + " -> " + diveSegment.endDepth);                        
+            //perform decompression up to diveSegment.endDepth and add
+            // all the deco stops to both the diveSegments-array plus the resultingDecoPlan
+            
+            //Jag måste ju ta bort detta ASCENT-segment från arrayen eftersom decompress-functionen lägger till ett ascent-segment till första stoppet.
+            // Och eftersom decompress-funktionen lägger till nya diveSegment i currentDive.diveSegments så måste jag här först spara undan 
+            // alla efterkommande diveSegments som finns INNAN decompress-funktionen, och ta bort dem från currentDive.diveSegments så de nya segmenten läggs till 
+            // i rätt ordning
+            //ta bort segmentet från arrayen
+            currentDive.diveSegments.remove(diveSegment);
+            //och spara undan de efterföljande segmenten vi redan har
+            ArrayList<DiveSegment> tempDiveSegments = new ArrayList<>();
+            for(int i=currentSegmentIndex; i<currentDive.diveSegments.size();i++)
+            {
+                tempDiveSegments.add(currentDive.diveSegments.get(i));
+            }
+            //ta bort efterföljande segment från arrayen
+            currentDive.diveSegments.removeAll(tempDiveSegments);                        
+            //kolla hur många segment vi har innan decompress-funktionen
+            int numberOfSegmentsBeforeAddingDeco = currentDive.diveSegments.size();
+            //gör dekompressionen
+            decompress((int)Math.round(diveSegment.startDepth), (int)Math.round(diveSegment.endDepth));
+            //kolla nu hur många segment decompress-funktionen lade till, så vi kan uppdatera currentSegmentIndex (för foor-loopen vi är i)
+            int numberOfSegmentsAddedByDeco = currentDive.diveSegments.size() - numberOfSegmentsBeforeAddingDeco;
+            currentSegmentIndex = currentSegmentIndex + numberOfSegmentsAddedByDeco - 1; // -1 för att vi redan tog bort detta ascent-segment från arrayen
+            //nu är vi på diveSegment.endDepth, så lägg nu till de efterföljande segmenten som vi sparade undan
+            currentDive.diveSegments.addAll(tempDiveSegments);     
+        }
+        else
+        {
+            //Deco-ceiling kommer inte överskridas
+            
+            //save the initial offgassing start depth, if needed.
+            if(currentDive.offgassingStartsAtDepth == 0.0 && !ascentDone)
+            { 
+                currentDive.offgassingStartsAtDepth = CALC_START_OF_DECO_ZONE(diveSegment.startDepth);
+//System.out.println("DiveSegment.ASCENT: Deco-ceiling won't be breached. Saving offgassing startdepth = " + currentDive.offgassingStartsAtDepth + " FROM: " + diveSegment.startDepth);                            
+            }
+            //uppdatera vävnader och syreexponering.
+            GAS_LOADINGS_ASCENT_DESCENT(diveSegment.startDepth, diveSegment.endDepth, config.ascentRate);
+//System.out.println(" About to call updateHighestMvaluePercentageAndGradientFactor with endDepth: " + diveSegment.endDepth + " and surface pressure: " + currentDive.surfacePressure);                        
+            updateHighestMvaluePercentageAndGradientFactor(diveSegment.endDepth + currentDive.surfacePressure);
+            DIVEDATA_ASCENT_DESCENT(diveSegment.startDepth, diveSegment.endDepth, config.ascentRate, config.RMV_During_Dive);
+            //Update this diveSegment's compartment pressures
+            diveSegment.nitrogenCompartmentPressuresAtEndOfDuration = nitrogenCompartmentPressure.clone();
+            diveSegment.heliumCompartmentPressuresAtEndOfDuration = heliumCompartmentPressure.clone();
+            currentDive.diveSegments.set(currentSegmentIndex, diveSegment);
+            currentDive.currentDepth = diveSegment.endDepth;
+            currentDive.currentRunTime += segmentDuration;
+            //kolla ändå om vi nu är troligtvis på ett dekostopp. Kan vi fortsätta till nästa dekodjup utan att gå grundare än nuvarande ceiling?
+            if((diveSegment.endDepth - config.decoStopInterval) < current_deco_ceiling)
+            {
+                atManualDecoStop = true;
+            }
+        }
+        ascentDone = true;
+        currentDive.currentDepth = diveSegment.endDepth;
+        return currentSegmentIndex;
+    }
+
+    /**
+     * A descent segment from the user.
+     */
+    private void processDescentSegment(int currentSegmentIndex, DiveSegment diveSegment, double segmentDuration)
+    {
+        logDebug("Processing DESCENT: " + diveSegment.startDepth + "m to " + diveSegment.endDepth + 
+                "m at " + config.descentRate + " m/min");
+        GAS_LOADINGS_ASCENT_DESCENT(diveSegment.startDepth, diveSegment.endDepth, config.descentRate);
+//System.out.println(" DiveSegment.DESCENT: About to call updateHighestMvaluePercentageAndGradientFactor with endDepth: " + diveSegment.endDepth + " and surface pressure: " + currentDive.surfacePressure);                    
+        updateHighestMvaluePercentageAndGradientFactor(diveSegment.endDepth + currentDive.surfacePressure);
+        
+        DIVEDATA_ASCENT_DESCENT(diveSegment.startDepth, diveSegment.endDepth, config.descentRate, config.RMV_During_Dive);
+        
+        //Update this diveSegment's compartment pressures
+        diveSegment.nitrogenCompartmentPressuresAtEndOfDuration = nitrogenCompartmentPressure.clone();
+        diveSegment.heliumCompartmentPressuresAtEndOfDuration = heliumCompartmentPressure.clone();
+        currentDive.diveSegments.set(currentSegmentIndex, diveSegment);
+        currentDive.currentDepth = diveSegment.endDepth;
+        currentDive.currentRunTime += segmentDuration;
+        ascentDone = false;
+        stoppedAfterAscent = false;
+        currentDive.gradientFactorSlope = 0.0; //if we have done an ascent and then descended again, this will reset the gradient factors again.
+    }
+
+    private void logFinalSchedule()
+    {
+        debugLog.println("\n=== FINAL DECOMPRESSION SCHEDULE ===");
+        debugLog.println("Total segments: " + currentDive.diveSegments.size());
+        debugLog.println("\nDive Segments:");
+        for (DiveSegment seg : currentDive.diveSegments) {
+            logSegment(seg);
+        }
+        
+        debugLog.println("\nDeco Table:");
+        if (decoPlan != null) {
+            for (Object obj : decoPlan) {
+                if (obj instanceof DecoTableSegment) {
+                    logDecoStop((DecoTableSegment)obj);
+                }
+            }
+        }
+        
+        debugLog.println("\nFinal Runtime: " + currentDive.currentRunTime + " min");
+        debugLog.println("Total Deco Duration: " + currentDive.totalDecoDuration + " min");
+        debugLog.println("Total Ascent Duration: " + currentDive.totalAscentDuration + " min");
+        
+        logTissues("Final Surface");
+        debugLog.flush(); // Don't close, just flush
+    }
+
+    /**
+     * Writes the finished schedule to the console, stderr and the capture files.
+     */
+    private void printScheduleCapture()
+    {
+        // CONSOLE OUTPUT FOR DIVE PLAN CAPTURE
+        System.out.println("\n=== DECOPLANNER DIVE SCHEDULE OUTPUT ===");
+        System.out.println("Generated: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        System.out.println("Deco Model: " + (config.decoModel == 1 ? "Buhlmann ZH-L16C" : "VPM-B"));
+        if (config.decoModel == 2) {
+            System.out.println("VPM Conservatism: +" + config.vpmConservatismSetting);
+        } else {
+            System.out.println("Gradient Factors: " + (config.gradientFactorFirstStop * 100) + "/" + (config.gradientFactorSurfacing * 100));
+        }
+        System.out.println("\nDive Profile Summary:");
+        System.out.println("Total Runtime: " + String.format("%.1f", currentDive.currentRunTime) + " min");
+        System.out.println("Total Deco Duration: " + String.format("%.1f", currentDive.totalDecoDuration) + " min");
+        System.out.println("Total Ascent Duration: " + String.format("%.1f", currentDive.totalAscentDuration) + " min");
+        
+        System.out.println("\nComplete Dive Schedule:");
+        for (DiveSegment seg : currentDive.diveSegments) {
+            String gasName = String.format("%.0f/%.0f", seg.oxygenFraction * 100, seg.heliumFraction * 100);
+            String segmentTypeStr = seg.segmentType == DiveSegment.ASCENT ? "ASCENT" : 
+                                   seg.segmentType == DiveSegment.DESCENT ? "DESCENT" : "CONSTANT_DEPTH";
+            System.out.println(String.format("Depth: %.0fm, Duration: %.1f min, Gas: %s, Runtime: %.1f min, Type: %s",
+                seg.endDepth, seg.duration, gasName, seg.endRunTime, segmentTypeStr));
+        }
+        
+        if (decoPlan != null) {
+            System.out.println("\nDecompression Stops:");
+            for (Object obj : decoPlan) {
+                if (obj instanceof DecoTableSegment) {
+                    DecoTableSegment stop = (DecoTableSegment)obj;
+                    String gasName = String.format("%.0f/%.0f", stop.getOxygenPercentage(), stop.getHeliumPercentage());
+                    System.out.println(String.format("Stop: %.0fm for %s min on %s (Runtime: %s min)",
+                        stop.getDepthNumber(), stop.getDuration(), gasName, stop.getEndRunTime()));
+                }
+            }
+        }
+        System.out.println("=== END DIVE SCHEDULE OUTPUT ===\n");
+        
+        // Also write to stderr to ensure capture
+        System.err.println("\n=== DECOPLANNER DIVE SCHEDULE (STDERR) ===");
+        System.err.println("Deco Model: " + (config.decoModel == 1 ? "Buhlmann ZH-L16C" : "VPM-B"));
+        if (config.decoModel == 2) {
+            System.err.println("VPM Conservatism: +" + config.vpmConservatismSetting);
+        }
+        System.err.println("Total Runtime: " + String.format("%.1f", currentDive.currentRunTime) + " min");
+        
+        // Also write to a file directly AND create confirmation file
+        try {
+            // Extract dive profile information for logical filename
+            int maxDepth = 0;
+            int bottomTime = 0;
+            
+            // Get original input bottom time (includes descent time) from input segments
+            if (currentDive.inputDiveSegments != null && currentDive.inputDiveSegments.size() > 0) {
+                DiveInputSegment firstInput = currentDive.inputDiveSegments.get(0);
+                maxDepth = firstInput.depthProperty().get();
+                bottomTime = firstInput.durationProperty().get(); // This includes descent time as per convention
+            } else {
+                // Fallback: Find max depth and bottom time from dive segments
+                if (currentDive.diveSegments != null && currentDive.diveSegments.size() > 0) {
+                    for (DiveSegment seg : currentDive.diveSegments) {
+                        if (seg.endDepth > maxDepth) {
+                            maxDepth = (int)seg.endDepth;
+                        }
+                        // Look for constant depth segment as bottom time
+                        if (seg.segmentType == DiveSegment.CONSTANT_DEPTH && seg.endDepth == maxDepth) {
+                            bottomTime = (int)seg.duration;
+                        }
+                    }
+                }
+            }
+            
+            // Build gas string from available gases (replace "/" with "-" for file names)
+            StringBuilder gasStr = new StringBuilder();
+            if (currentDive.gases != null) {
+                for (Gas g : currentDive.gases) {
+                    if (gasStr.length() > 0) gasStr.append("_");
+                    if (g.heliumFraction > 0) {
+                        gasStr.append((int)(g.oxygenFraction * 100)).append("-").append((int)(g.heliumFraction * 100));
+                    } else if (g.oxygenFraction == 0.21) {
+                        gasStr.append("Air");
+                    } else if (g.oxygenFraction == 1.0) {
+                        gasStr.append("O2");
+                    } else {
+                        gasStr.append("EAN").append((int)(g.oxygenFraction * 100));
+                    }
+                }
+            }
+            
+            // Create logical filename with gradient factors
+            int gfLow = (int)(config.gradientFactorFirstStop * 100);
+            int gfHigh = (int)(config.gradientFactorSurfacing * 100);
+            String logicalName = maxDepth + "m" + bottomTime + "min_" + gasStr + "_GF" + gfLow + "_" + gfHigh;
+            
+            // Add descent rate to filename if it's not the standard 10m/min
+            if (config.descentRate != 10) {
+                logicalName += "_DR" + config.descentRate;
+            }
+            
+            String fileName = logicalName + ".txt";
+            
+            // Write detailed output file
+            java.io.PrintWriter fileOut = new java.io.PrintWriter(new java.io.FileWriter(fileName, false));
+            fileOut.println("\n=== DECOPLANNER DIVE SCHEDULE ===");
+            fileOut.println("Generated: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+            fileOut.println("Deco Model: " + (config.decoModel == 1 ? "Buhlmann ZH-L16C" : "VPM-B"));
+            if (config.decoModel == 2) {
+                fileOut.println("VPM Conservatism: +" + config.vpmConservatismSetting);
+            } else {
+                fileOut.println("Gradient Factors: " + (config.gradientFactorFirstStop * 100) + "/" + (config.gradientFactorSurfacing * 100));
+            }
+            fileOut.println("Descent Rate: " + config.descentRate + " m/min");
+            fileOut.println("Ascent Rate: " + config.ascentRate + " m/min");
+            fileOut.println("Total Runtime: " + String.format("%.1f", currentDive.currentRunTime) + " min");
+            fileOut.println("Total Deco Duration: " + String.format("%.1f", currentDive.totalDecoDuration) + " min");
+            
+            // Add gas configuration section
+            fileOut.println("\n=== GAS CONFIGURATION ===");
+            if (currentDive.gases != null) {
+                for (int i = 0; i < currentDive.gases.size(); i++) {
+                    Gas gas = currentDive.gases.get(i);
+                    String gasName = "";
+                    if (gas.heliumFraction > 0) {
+                        gasName = String.format("%.0f/%.0f", gas.oxygenFraction*100, gas.heliumFraction*100);
+                    } else if (gas.oxygenFraction == 0.21) {
+                        gasName = "Air";
+                    } else if (gas.oxygenFraction > 0.21) {
+                        gasName = String.format("EAN%.0f", gas.oxygenFraction*100);
+                    } else {
+                        gasName = String.format("%.0f%% O2", gas.oxygenFraction*100);
+                    }
+                    
+                    if (gas.gasType == Gas.DIVE_GAS) {
+                        fileOut.println("Bottom Gas: " + gasName + 
+                            String.format(" (%.0f%% O2, %.0f%% He, %.0f%% N2)", 
+                            gas.oxygenFraction*100, gas.heliumFraction*100, gas.nitrogenFraction*100));
+                    } else {
+                        fileOut.println("Deco Gas " + i + ": " + gasName + 
+                            String.format(" (%.0f%% O2, %.0f%% He, %.0f%% N2) @ %dm switch depth", 
+                            gas.oxygenFraction*100, gas.heliumFraction*100, gas.nitrogenFraction*100, gas.switchDepth));
+                    }
+                }
+            }
+            
+            fileOut.println("\n=== DECOMPRESSION SCHEDULE ===");
+            if (decoPlan != null) {
+                for (Object obj : decoPlan) {
+                    if (obj instanceof DecoTableSegment) {
+                        DecoTableSegment stop = (DecoTableSegment)obj;
+                        
+                        // Format gas name
+                        String gasName = "";
+                        double o2 = stop.getOxygenPercentage();
+                        double he = stop.getHeliumPercentage();
+                        if (he > 0) {
+                            gasName = String.format("(%.0f/%.0f)", o2, he);
+                        } else if (o2 == 21) {
+                            gasName = "(Air)";
+                        } else if (o2 > 21) {
+                            gasName = String.format("(EAN%.0f)", o2);
+                        } else {
+                            gasName = String.format("(%.0f%% O2)", o2);
+                        }
+                        
+                        fileOut.println(String.format("%.0fm for %s min %s", 
+                            stop.getDepthNumber(), stop.getDuration(), gasName));
+                    }
+                }
+            }
+            fileOut.close();
+            System.out.println("Dive schedule written to: " + fileName);
+            
+            // Write CONFIRMATION file that's easy to see
+            String confirmFile = "LAST_BUHLMANN_CAPTURED.txt";
+            java.io.PrintWriter confirmOut = new java.io.PrintWriter(new java.io.FileWriter(confirmFile, false));
+            confirmOut.println("=== BUHLMANN DIVE PLAN SUCCESSFULLY CAPTURED ===");
+            confirmOut.println("Time: " + new SimpleDateFormat("HH:mm:ss").format(new Date()));
+            confirmOut.println("GF: " + gfLow + "/" + gfHigh);
+            confirmOut.println("Runtime: " + (int)currentDive.currentRunTime + " min");
+            confirmOut.println("✓ CAPTURED IN: " + fileName);
+            confirmOut.close();
+            
+            // Also append to a running log
+            java.io.PrintWriter logOut = new java.io.PrintWriter(new java.io.FileWriter("all_captures.log", true));
+            logOut.println(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + " | " + fileName + " | ✓ CAPTURED");
+            logOut.close();
+            
+        } catch (Exception e) {
+            System.err.println("Error writing dive schedule to file: " + e.getMessage());
+        }
+    }
+	
+
+	
+    /*===============================================================================
+     SUBROUTINE CALC_DECO_CEILING
+     Purpose: This subprogram calculates the deco ceiling (the safe ascent
+     depth) in each compartment, based on M-values modifed by gradient factors,
+     and then finds the deepest deco ceiling across all compartments. This
+     deepest value (Deco Ceiling Depth) is then used by the Decompression Stop
+     subroutine to determine the actual deco schedule.
+     Only the compartments that can lead are calculated, see
+     LeadingCompartmentCeiling.
+    =============================================================================== */
+    private double CALC_DECO_CEILING()
+    {
+        //can be negative (but not less than absolute zero), which is needed to decompress to the last stop at zero depth
+        return leadingCeiling.toleratedAmbientPressure(nitrogenCompartmentPressure, heliumCompartmentPressure, Currently_Max_Allowed_Gradient_Factor) - currentDive.surfacePressure;
+    }
+     
+	
+	
+    /*===============================================================================
+     SUBROUTINE CALC_START_OF_DECO_ZONE
+     Purpose: This subroutine uses the Bisection Method to find the depth at
+     which the leading compartment just enters the decompression zone.
+     Source: "Numerical Recipes in Fortran 77", Cambridge University Press,
+     1992.
+     The bisection is replayed against a root found with Newton's method when
+     the compartment's tension crosses the ambient pressure once, see
+     DecoZoneSearch.
+    =============================================================================== */
+    private double CALC_START_OF_DECO_ZONE(double Starting_Depth)
+    {
+        //===============================================================================
+        // LOCAL VARIABLES
+        //===============================================================================
+        int Rate = Math.negateExact(config.ascentRate);
+        double Initial_Helium_Pressure, Initial_Nitrogen_Pressure;
+        double Initial_Inspired_He_Pressure;
+        double Initial_Inspired_N2_Pressure;
+        double Time_to_Start_of_Deco_Zone, Helium_Rate, Nitrogen_Rate;
+        double Starting_Ambient_Pressure;
+        double Cpt_Depth_Start_of_Deco_Zone, Low_Bound, High_Bound;
+        double High_Bound_Helium_Pressure, High_Bound_Nitrogen_Pressure;
+        double Function_at_High_Bound, Function_at_Low_Bound;
+        double Leading_Time = -1.0;
+
+        //===============================================================================
+        // CALCULATIONS
+        // First initialize some variables
+        //===============================================================================
+        double Depth_Start_of_Deco_Zone = 0.0;
+        Starting_Ambient_Pressure = Starting_Depth + config.surfacePressure; //2022-09-03: surfacepressure saknades här..! Under 28m djup blev denna funktion helt fel och visade samma offgas-djup som startdjupet.
+        //On a CCR loop the inspired pressures are only linear down to where the setpoint can't be held. That is a few meters
+        //from the surface, so the start of the deco zone is searched as if they were linear all the way.
+        //On a passive SCR loop they are close to linear, and the average rate up to the surface is used.
+        Initial_Inspired_He_Pressure = inspiredGasPressure(Starting_Ambient_Pressure, config.waterVaporPressure)*inspiredHeliumFraction();
+        Initial_Inspired_N2_Pressure = inspiredGasPressure(Starting_Ambient_Pressure, config.waterVaporPressure)*inspiredNitrogenFraction();
+        Helium_Rate = inspiredGasRate(Starting_Ambient_Pressure, Rate) * inspiredHeliumFraction();
+        Nitrogen_Rate = inspiredGasRate(Starting_Ambient_Pressure, Rate) * inspiredNitrogenFraction();
+        //===============================================================================
+        // ESTABLISH THE BOUNDS FOR THE ROOT SEARCH USING THE BISECTION METHOD
+        // AND CHECK TO MAKE SURE THAT THE ROOT WILL BE WITHIN BOUNDS. PROCESS
+        // EACH COMPARTMENT INDIVIDUALLY AND FIND THE MAXIMUM DEPTH ACROSS ALL
+        // COMPARTMENTS (LEADING COMPARTMENT)
+        // In this case, we are solving for time - the time when the gas tension in
+        // the compartment will be equal to ambient pressure. The low bound for time
+        // is set at zero and the high bound is set at the time it would take to
+        // ascend to zero ambient pressure (absolute). Since the ascent rate is
+        // negative, a multiplier of -1.0 is used to make the time positive. The
+        // desired point when gas tension equals ambient pressure is found at a time
+        // somewhere between these endpoints. The algorithm checks to make sure that
+        // the solution lies in between these bounds by first computing the low bound
+        // and high bound function values.
+        //===============================================================================
+        Low_Bound = 0.0;
+        High_Bound = -1.0*(Starting_Ambient_Pressure/Rate);
+        decoZoneSearch.setAscent(Starting_Ambient_Pressure, Rate, Initial_Inspired_He_Pressure, Helium_Rate, Initial_Inspired_N2_Pressure, Nitrogen_Rate, 0.0);
+        for(int i=0; i<16; i++) //DO 200 I = 1,16
+        {
+            Initial_Helium_Pressure = heliumCompartmentPressure[i]; // body.heliumCompartmentPressure[i];
+            Initial_Nitrogen_Pressure = nitrogenCompartmentPressure[i]; // body.nitrogenCompartmentPressure[i];
+            Function_at_Low_Bound = Initial_Helium_Pressure + Initial_Nitrogen_Pressure - Starting_Ambient_Pressure;
+            High_Bound_Helium_Pressure = schreinerEquation(Initial_Inspired_He_Pressure, Helium_Rate, High_Bound, kHe[i], Initial_Helium_Pressure);
+            High_Bound_Nitrogen_Pressure = schreinerEquation(Initial_Inspired_N2_Pressure, Nitrogen_Rate, High_Bound, kN2[i], Initial_Nitrogen_Pressure);
+            Function_at_High_Bound = High_Bound_Helium_Pressure + High_Bound_Nitrogen_Pressure;
+            if((Function_at_High_Bound * Function_at_Low_Bound) >= 0.0)
+            {
+                //This compartment is already supersaturated from the start (i.e. it has higher pressure than Starting_Ambient_Pressure
+                return Starting_Depth; //eller?
+                //PRINT *,'ERROR! ROOT IS NOT WITHIN BRACKETS'
+                //PAUSE
+//                System.err.println("ERROR 694! ROOT IS NOT WITHIN BRACKETS");
+            }
+            //===============================================================================
+            // APPLY THE BISECTION METHOD IN SEVERAL ITERATIONS UNTIL A SOLUTION WITH
+            // THE DESIRED ACCURACY IS FOUND
+            // Note: the program allows for up to 100 iterations. Normally an exit will
+            // be made from the loop well before that number. If, for some reason, the
+            // program exceeds 100 iterations, there will be a pause to alert the user.
+            // A compartment that is still below ambient pressure when the leading one
+            // so far reaches it can't lead, and is skipped.
+            //===============================================================================
+            decoZoneSearch.setCompartment(kHe[i], Initial_Helium_Pressure, kN2[i], Initial_Nitrogen_Pressure);
+            if(Leading_Time >= 0.0 && !decoZoneSearch.canLead(Leading_Time))
+            {
+                continue;
+            }
+            Time_to_Start_of_Deco_Zone = decoZoneSearch.time(Low_Bound, High_Bound, Function_at_Low_Bound, budget.maxRootFinderIterations);
+            if(decoZoneSearch.exceededIterations())
+            {
+                //PRINT *,'ERROR! ROOT SEARCH EXCEEDED MAXIMUM ITERATIONS'
+                //PAUSE
+                throw new DecoCalculationException(DecoCalculationException.ROOT_NOT_FOUND, "The search for the start of the deco zone in compartment " + (i + 1) + " did not converge within " + budget.maxRootFinderIterations + " iterations.");
+            }
+            if(Leading_Time < 0.0 || Time_to_Start_of_Deco_Zone < Leading_Time)
+            {
+                Leading_Time = Time_to_Start_of_Deco_Zone;
+            }
+            //===============================================================================
+            // When a solution with the desired accuracy is found, the program jumps out
+            // of the loop to Line 170 and assigns the solution value for the individual
+            // compartment.
+            //===============================================================================
+            Cpt_Depth_Start_of_Deco_Zone = (Starting_Ambient_Pressure + Rate*Time_to_Start_of_Deco_Zone) - surfacePressure;
+            //===============================================================================
+            // The overall solution will be the compartment with the maximum depth where
+            // gas tension equals ambient pressure (leading compartment).
+            //===============================================================================
+            Depth_Start_of_Deco_Zone = Math.max(Depth_Start_of_Deco_Zone, Cpt_Depth_Start_of_Deco_Zone);
+        } //200 CONTINUE
+        //===============================================================================
+        // END OF SUBROUTINE
+        //===============================================================================
+        //RETURN
+//System.out.println("------ CALC_START_OF_DECO_ZONE: " + Depth_Start_of_Deco_Zone + " From " + Starting_Depth);        
+        return Depth_Start_of_Deco_Zone;
+        //END
+    }	
+	
+    /**
+     * perform decompression up to ending_depth and add all the decompression 
+     *  stops to both the diveSegments-array plus the resultingDecoPlan
+     * @param starting_depth
+     * @param ending_depth 
+     */
+    private void decompress(int starting_depth, int ending_depth)
+    {
+
+// System.out.println("DP4 tissue pressures before ascent:");
+// System.out.println(Arrays.toString(heliumCompartmentPressure));
+// System.out.println(Arrays.toString(nitrogenCompartmentPressure));
+        
+/*
+Remember that this method can be called in the middle of a dive, before all input-segments are processed.        
+I can skip Rate_Change, and just use ascent/descent-rates in Settings.
+Depth_Change can be skipped, since I KNOW that there is no user-input between starting_depth and ending_depth in this method/function.
+Step_Size_Change I can replace by checking config.smallDecoStopIntervalShallow when deco stop depth is 9m/30'
+Mix_Change can be replaced with currentDive.gases?
+*/
+
+//        int[] Mix_Change = new int[15];
+//        double[] Depth_Change = new double[15];
+//        int[] Rate_Change = new int[15];
+//        int[] Step_Size_Change = new int[15];
+
+/*        
+        int Number_of_Changes = decoGases.size() + currentDive.inputDiveSegments.size() - 1; //there is no change if we have ONE inputDiveSegment
+        int inputCounter = 0;
+
+        if(Number_of_Changes > 0 || config.smallDecoStopIntervalShallow)
+        {
+            boolean entryMadeThisIteration;
+
+            for(int i=0; i<Number_of_Changes; i++)
+            {
+                entryMadeThisIteration = false;
+
+                //kolla efter ändring av stop-size interval så jag kan inkludera det i xxx_Change-arrayerna..
+                if(config.smallDecoStopIntervalShallow)
+                {
+                    //kolla om jag ska lägga in en entry i alla X_Change-arrayerna mellan denna och nästa loop-varv
+                    if(decoGases.get(i).getSwitchDepth() == config.decoStopIntervalChangeDepth)
+                    {
+                        Mix_Change[inputCounter] = i; //gasens index i decoGases-arrayen
+                        Depth_Change[inputCounter] = decoGases.get(i).getSwitchDepth();
+                        Rate_Change[inputCounter] = config.ascentRate;
+                        Step_Size_Change[inputCounter] = config.decoStopIntervalShallow;
+                        entryMadeThisIteration = true;
+                        inputCounter++;
+                    }
+                    else if(decoGases.get(i).getSwitchDepth() < config.decoStopIntervalChangeDepth && decoGases.get(i+1).getSwitchDepth() > config.decoStopIntervalChangeDepth)
+                    {
+                        Mix_Change[inputCounter] = Mix_Change[inputCounter-1]; //gasens index i decoGases-arrayen
+                        Depth_Change[inputCounter] = config.decoStopIntervalChangeDepth;
+                        Rate_Change[inputCounter] = Rate_Change[inputCounter-1];
+                        Step_Size_Change[inputCounter] = config.decoStopIntervalShallow;
+                        entryMadeThisIteration = false;
+                        inputCounter++;
+                    }
+                }
+                if(!entryMadeThisIteration)
+                {
+                    Mix_Change[inputCounter] = i; //gasens index i decoGases-arrayen
+                    Depth_Change[inputCounter] = decoGases.get(i).getSwitchDepth(); det behöver inte va decoGases som är ifylld för att komma hit, så den kan va tom!
+                    Rate_Change[inputCounter] = config.ascentRate;
+                    Step_Size_Change[inputCounter] = config.decoStopInterval;
+                    inputCounter++;
+                }
+            }
+        }
+        if(inputCounter != 0)
+        {
+            Number_of_Changes = inputCounter;
+        }
+        //Reduce the size of the _Change-arrays
+        Mix_Change = java.util.Arrays.copyOf(Mix_Change, Number_of_Changes);
+        Depth_Change = java.util.Arrays.copyOf(Depth_Change, Number_of_Changes);
+        Rate_Change = java.util.Arrays.copyOf(Rate_Change, Number_of_Changes);
+        Step_Size_Change = java.util.Arrays.copyOf(Step_Size_Change, Number_of_Changes);		
+*/
+        int Starting_Depth = starting_depth;
+        setScrPhase(true);
+        //currentDive.activeGasID = 0;
+        currentDive.currentRate = config.ascentRate;
+        currentDive.currentDecoStopIntervalSize = config.decoStopInterval;
+//        Last_Run_Time = 0.0;
+
+/*        if(Number_of_Changes != 0)
+        {
+            currentDive.activeGasID = Mix_Change[1];
+            currentDive.currentRate = Rate_Change[1];
+            currentDive.currentDecoStopIntervalSize = Step_Size_Change[1];
+        }        
+*/        
+        /*===============================================================================
+         CALCULATE THE DEPTH WHERE THE DECOMPRESSION ZONE BEGINS FOR THIS PROFILE
+         BASED ON THE INITIAL ASCENT PARAMETERS AND WRITE THE DEEPEST POSSIBLE
+         DECOMPRESSION STOP DEPTH TO THE OUTPUT FILE
+         Knowing where the decompression zone starts is very important. Below
+         that depth there is no possibility for bubble formation because there
+         will be no supersaturation gradients. Deco stops should never start
+         below the deco zone. The deepest possible stop deco stop depth is
+         defined as the next "standard" stop depth above the point where the
+         leading compartment enters the deco zone. Thus, the program will not
+         base this calculation on step sizes larger than 10 fsw or 3 msw. The
+         deepest possible stop depth is not used in the program, per se, rather
+         it is information to tell the diver where to start putting on the brakes
+         during ascent. This should be prominently displayed by any deco program.
+        ===============================================================================*/
+        //Debug, diveSegments
+        /*
+        System.out.println("At " + starting_depth + "m, about to start ascent :");
+        for(int i=0; i<16; i++)
+        {
+            System.out.println("Cmp " + i + ": " + nitrogenCompartmentPressure[i]);
+        } 
+        */
+        double Depth_Start_of_Deco_Zone = CALC_START_OF_DECO_ZONE(starting_depth);
+//System.out.println("In decompress(...) - Depth_Start_of_Deco_Zone: " + Depth_Start_of_Deco_Zone + ", starting from " + starting_depth);
+        if(currentDive.offgassingStartsAtDepth == 0.0)
+        {
+            currentDive.offgassingStartsAtDepth = Depth_Start_of_Deco_Zone;
+        }
+        /*
+        double Deepest_Possible_Stop_Depth;
+        if(config.metric)
+        {
+            if(config.decoStopInterval < 3.0)
+            {
+                double Rounding_Operation1 = (Depth_Start_of_Deco_Zone/config.decoStopInterval) - 0.5;
+                Deepest_Possible_Stop_Depth = Math.round(Rounding_Operation1) * config.decoStopInterval;
+            }
+            else
+            {
+                double Rounding_Operation1 = (Depth_Start_of_Deco_Zone/3.0) - 0.5;
+                Deepest_Possible_Stop_Depth = Math.round(Rounding_Operation1) * 3.0;
+            }			
+        }
+        else
+        {
+            if(config.decoStopInterval < 10.0)
+            {
+                double Rounding_Operation1 = (Depth_Start_of_Deco_Zone/config.decoStopInterval) - 0.5;
+                Deepest_Possible_Stop_Depth = Math.round(Rounding_Operation1) * config.decoStopInterval;
+            }
+            else
+            {
+                double Rounding_Operation1 = (Depth_Start_of_Deco_Zone/10.0) - 0.5;
+                Deepest_Possible_Stop_Depth = Math.round(Rounding_Operation1) * 10.0;
+            }
+        } 
+        */
+        /*===============================================================================
+         CALCULATE CURRENT DECO CEILING AND SET FIRST DECO STOP. CHECK TO MAKE
+         SURE THAT SELECTED STEP SIZE WILL NOT ROUND UP FIRST STOP TO A DEPTH THAT
+         IS BELOW THE DECO ZONE.
+        ===============================================================================*/
+        
+//System.out.println("In decompress(...) - Currently_Max_Allowed_Gradient_Factor: " + Currently_Max_Allowed_Gradient_Factor);        
+        double Deco_Ceiling_Depth = CALC_DECO_CEILING();
+//System.out.println("In decompress(...) - Deco ceiling: " + Deco_Ceiling_Depth);        
+        double Deco_Stop_Depth;
+        boolean manually_violating_deco_ceiling = false; //2022-01-22: introduced in version 4.3.6, as some profiles ran into the ERROR 924 below
+        if(Deco_Ceiling_Depth <= 0.0)
+        {
+            Deco_Stop_Depth = 0.0;
+        }
+        else
+        {
+            //check if we are super close, but deeper than a stop depth (like 30.08 feet for example).
+            double remainder = Deco_Ceiling_Depth % config.decoStopInterval;
+            //remainder *= 10; //make it bigger, to compare with the stop interval. I first compared the remainder to 10% of the decoStopInterval, but the comparison didn't work for some reason.
+//System.out.println("In decompress(...) - remainder: " + remainder);
+            //See if the remainder is less than 10 percent of 10'/3m
+//System.out.println("In decompress(...) - 10% of decoStopInterval: " + (config.decoStopInterval / 10.0));            
+            if(remainder <= (config.decoStopInterval * 0.10))
+            {
+                Deco_Stop_Depth = Math.floor(Deco_Ceiling_Depth); //Since v4.3.4
+                manually_violating_deco_ceiling = true;
+//System.out.println("In decompress(...) - Deco_Stop_Depth rounded down: " + Deco_Stop_Depth);
+            }
+            else
+            {
+                double Rounding_Operation2 = (Deco_Ceiling_Depth/config.decoStopInterval) + 0.5;
+                Deco_Stop_Depth = Math.round(Rounding_Operation2) * config.decoStopInterval;
+//System.out.println("In decompress(...) - Deco_Stop_Depth rounded up to: " + Deco_Stop_Depth);
+            }
+        }
+//System.out.println("In decompress(...) - Stop depth: " + Deco_Stop_Depth);
+        if(Deco_Stop_Depth > Depth_Start_of_Deco_Zone)
+        {
+            //2021-07-01: if we have done a series of manual decompression stops earlier we need to adjust the max allowed gradient factor
+//System.out.println("Currently_Max_Allowed_Gradient_Factor: " + Currently_Max_Allowed_Gradient_Factor);
+//            if(currentDive.gradientFactorSlope != 0.0)
+//            {
+//                Currently_Max_Allowed_Gradient_Factor = (Deco_Stop_Depth - config.decoStopInterval) * currentDive.gradientFactorSlope + config.gradientFactorSurfacing;
+//            }
+
+            
+            //System.err.println("ERROR 907! STEP SIZE IS TOO LARGE TO DECOMPRESS");
+//System.out.println("ERROR 907! STEP SIZE IS TOO LARGE TO DECOMPRESS");            
+            //System.err.println("PROGRAM TERMINATED");
+            //TODO: lägg till felhantering som denna, så programmet visar meddelandet.
+            
+            //The engine can't show a dialog, so the conflict is returned as a warning that BuhlmannDeco shows to the user.
+            addFirstStopConflictWarning(starting_depth, Depth_Start_of_Deco_Zone, Deco_Ceiling_Depth, Deco_Stop_Depth);
+            currentDive.error = true;
+            return;
+        }
+        /*===============================================================================
+         PERFORM A SEPARATE "PROJECTED ASCENT" OUTSIDE OF THE MAIN PROGRAM TO MAKE
+         SURE THAT AN INCREASE IN GAS LOADINGS DURING ASCENT TO THE FIRST STOP WILL
+         NOT CAUSE A VIOLATION OF THE DECO CEILING. IF SO, ADJUST THE FIRST STOP
+         DEEPER BASED ON STEP SIZE UNTIL A SAFE ASCENT CAN BE MADE.
+         Note: this situation is a possibility when ascending from extremely deep
+         dives or due to an unusual gas mix selection.
+         CHECK AGAIN TO MAKE SURE THAT ADJUSTED FIRST STOP WILL NOT BE BELOW THE
+         DECO ZONE.
+        ===============================================================================*/
+        if(!manually_violating_deco_ceiling)
+        {
+            Deco_Stop_Depth = PROJECTED_ASCENT(Starting_Depth, Math.negateExact(config.ascentRate), Deco_Stop_Depth, config.decoStopInterval);
+        }
+//System.out.println("In decompress(...) - Stop depth, after projected ascent: " + Deco_Stop_Depth);        
+        if(Deco_Stop_Depth > Depth_Start_of_Deco_Zone)
+        {
+            //ERROR 924! STEP SIZE IS TOO LARGE TO DECOMPRESS
+            throw new DecoCalculationException(DecoCalculationException.STEP_SIZE_TOO_LARGE, "Step size is too large to decompress. After the projected ascent the first stop at " + Deco_Stop_Depth + (config.metric ? " m" : " ft") + " is deeper than where off-gassing starts (" + Util.roundToOneDecimal(Depth_Start_of_Deco_Zone) + (config.metric ? " m" : " ft") + ").");
+        }
+        
+        //v4.0.2: Kolla om 6m ska va sista stoppet, och om första stoppet nu är satt till 3m.
+        boolean firstStopIsLastStop = false;
+        if(config.lastStopDoubleInterval && Deco_Stop_Depth <= (2 * config.decoStopInterval) && Deco_Stop_Depth > 0)
+        {
+            Deco_Stop_Depth = 2 * config.decoStopInterval;
+            firstStopIsLastStop = true;
+//System.out.println("first stop is last stop.");            
+        }
+        
+        
+        //if we have done a series of decompression stops earlier we need to adjust the max allowed gradient factor
+        if(currentDive.gradientFactorSlope != 0.0)
+        {
+            Currently_Max_Allowed_Gradient_Factor = (Deco_Stop_Depth - config.decoStopInterval) * currentDive.gradientFactorSlope + config.gradientFactorSurfacing;
+        }
+        //Kolla nu om det faktiskt går att sätta första stoppet ett stopp-intervall grundare, eftersom de snabbaste vävnaderna vädrar ut gas på vägen till första stoppet
+        // och därmed höjer deco-ceiling. DecoPlanner 3 får ju i praktiken denna effekten eftersom de utvärderar 3m i taget och ser om gradient factor överskrids vid varje 3m-intervall
+        //Kolla bara detta om detta faktiskt är första dekompressionen detta dyk. Om vi redan har gjort manuella stop vill vi skippa detta för att inte skippa ett stopp och få förvirrande tabeller.
+        //Men, om vi redan är i deko så vill vi inte förlänga ett stopp som vi redan gjort, så kolla om vi föreslås att stanna på djupet vi är på.
+        if(!firstStopIsLastStop && Deco_Stop_Depth > 0) //2022-09-03, lade till kollen && Deco_Stop_Depth > 0
+        {
+            if(currentDive.gradientFactorSlope == 0.0 || Deco_Stop_Depth == starting_depth)
+            {
+                double testDecoDepth = PROJECTED_ASCENT(Starting_Depth, Math.negateExact(config.ascentRate), Deco_Stop_Depth - config.decoStopInterval, config.decoStopInterval);
+                if(testDecoDepth < Deco_Stop_Depth)
+                {
+//System.out.println("japp " + testDecoDepth);
+                    Deco_Stop_Depth = testDecoDepth;
+                    if(currentDive.gradientFactorSlope != 0.0)
+                    {
+                        //And since Deco_Stop_Depth change, we also need to adjust the allowed gradient factor
+                        Currently_Max_Allowed_Gradient_Factor = (Deco_Stop_Depth - config.decoStopInterval) * currentDive.gradientFactorSlope + config.gradientFactorSurfacing;
+                    }
+                }
+            }
+        }
+        /*===============================================================================
+         SET GRADIENT FACTOR SLOPE
+        ===============================================================================*/
+        if(currentDive.gradientFactorSlope == 0.0)
+        {
+            if(Deco_Stop_Depth > 0.0)
+            {
+                currentDive.gradientFactorSlope = (config.gradientFactorSurfacing - config.gradientFactorFirstStop)/(0.0 - Deco_Stop_Depth);
+            }
+        }
+        /*===============================================================================
+         DECO STOP LOOP BLOCK FOR DECOMPRESSION SCHEDULE
+        ===============================================================================*/
+        double Gradient_Factor_Current_Stop;
+        double Gradient_Factor_Next_Stop;
+        double Next_Stop;
+        double decoStopInterval = config.decoStopInterval;
+        DiveSegment ascentSegment;
+        boolean firstStop = true;
+        int stopIteration = 0;
+        //In the following while-loop we will process one ascent-segment and one stop-segment
+        // until we reach the ending_depth.
+        while(true) //loop will run continuously until there is an exit statement
+        {
+            budget.check(++stopIteration, startTime, "deco stop loop");
+            //We start with the ascent-segment leading up to the deco stop            
+            ascentSegment = ascendToStop(Starting_Depth, Deco_Stop_Depth, firstStop);
+           
+            //See if we are done
+            if(Deco_Stop_Depth <= ending_depth) break;
+            
+            //Now deal with the constant-depth deco stop
+            //See if it's time to switch gases or decoStopInterval..
+            switchDecoGas(Deco_Stop_Depth);
+
+            //Now check if we need to change our decoStopInterval
+            /*
+            if(config.metric && Deco_Stop_Depth == 9.0 && config.smallDecoStopIntervalShallow)
+            {
+                decoStopInterval = 1; //1 meter
+            }
+            else if(!config.metric && Deco_Stop_Depth == 30 && config.smallDecoStopIntervalShallow)
+            {
+                decoStopInterval = 1; //1 foot
+            }
+            */
+
+            Gradient_Factor_Current_Stop = Currently_Max_Allowed_Gradient_Factor;
+            
+            //Check if we are at 20' and if this should be the last deco stop
+            if(((Deco_Stop_Depth == 6 && config.metric) || (Deco_Stop_Depth == 20 && !config.metric)) && config.lastStopDoubleInterval)
+            {
+                decoStopInterval = Deco_Stop_Depth;
+            }
+            Next_Stop = Deco_Stop_Depth - decoStopInterval;
+            //Check if Next_Stop is shallower than ending_depth, and if so adjust it
+            if(Next_Stop < ending_depth)
+            {
+                Next_Stop = ending_depth;
+            }
+            Gradient_Factor_Next_Stop = Next_Stop * currentDive.gradientFactorSlope + config.gradientFactorSurfacing;
+            Currently_Max_Allowed_Gradient_Factor = Gradient_Factor_Next_Stop;
+            
+            // DEBUG logging
+            if (debugEnabled && debugLog != null) {
+                debugLog.printf("\n### Calculating stop at %.1fm ###\n", Deco_Stop_Depth);
+                debugLog.printf("Next Stop: %.1f, GF Slope: %.4f\n", Next_Stop, currentDive.gradientFactorSlope);
+                debugLog.printf("GF for next stop: %.3f (set as current GF)\n", Gradient_Factor_Next_Stop);
+            }
+            
+            double stopDuration = DECOMPRESSION_STOP(Deco_Stop_Depth, Deco_Stop_Depth - Next_Stop); 
+            
+            /*===============================================================================
+             This next bit just rounds up the stop time at the first stop to be in
+             whole increments of the minimum stop time (to make for a nice deco table).
+            ===============================================================================*/
+            
+            GAS_LOADINGS_CONSTANT_DEPTH(Deco_Stop_Depth, stopDuration);
+            
+            addDecoStop(Deco_Stop_Depth, stopDuration, ascentSegment, firstStop);
+           
+            firstStop = false; //we have now processed at least one ascent and one deco stop, so the next round is definitely not the first stop.
+            
+            
+
+            /*===============================================================================
+             IF MINIMUM STOP TIME PARAMETER IS A WHOLE NUMBER (i.e. 1 minute) THEN
+             WRITE DECO SCHEDULE USING INTEGER NUMBERS (looks nicer). OTHERWISE, USE
+             DECIMAL NUMBERS.
+             Note: per the request of a noted exploration diver(!), program now allows
+             a minimum stop time of less than one minute so that total ascent time can
+             be minimized on very long dives. In fact, with step size set at 1 fsw or
+             0.2 msw and minimum stop time set at 0.1 minute (6 seconds), a near
+             continuous decompression schedule can be computed.
+            ===============================================================================*/
+/*            if(Math.round(currentMinimumDecoStopDuration) == currentMinimumDecoStopDuration)
+            {
+		WRITE (8,862) Segment_Number, Segment_Time, Run_Time, Mix_Number, Gradient_Factor_Current_Stop, INT(Deco_Stop_Depth), INT(Stop_Time), INT(Run_Time)
+            }
+            else
+            {
+		WRITE (8,863) Segment_Number, Segment_Time, Run_Time, Mix_Number, Gradient_Factor_Current_Stop, Deco_Stop_Depth, Stop_Time, Run_Time
+            }
+*/          Starting_Depth = (int)Math.round(Deco_Stop_Depth);
+            Deco_Stop_Depth = Next_Stop;
+//            Last_Run_Time = Run_Time;
+        } //80 end of deco stop loop block
+        
+        if(ending_depth == 0)
+        {
+            addSurfaceSegment();
+        }
+
+//        body.setCurrentDive(currentDive);
+        
+        
+        /*===============================================================================
+         PROCESSING OF DIVE COMPLETE. READ INPUT FILE TO DETERMINE IF THERE IS A
+         REPETITIVE DIVE. IF NONE, THEN EXIT REPETITIVE LOOP.
+        ===============================================================================*/
+/*		READ (7,*) Repetitive_Dive_Flag
+        IF (Repetitive_Dive_Flag .EQ. 0) THEN
+        EXIT //exit repetitive dive loop at Line 330
+        /*===============================================================================
+         IF THERE IS A REPETITIVE DIVE, COMPUTE GAS LOADINGS (OFF-GASSING) DURING
+         SURFACE INTERVAL TIME. RE-INITIALIZE SELECTED VARIABLES AND RETURN TO
+         START OF REPETITIVE LOOP AT LINE 30.
+        ===============================================================================*/
+/*		ELSE IF (Repetitive_Dive_Flag .EQ. 1) THEN
+        READ (7,*) Surface_Interval_Time
+        CALL GAS_LOADINGS_SURFACE_INTERVAL (Surface_Interval_Time)
+        Run_Time = 0.0
+        Segment_Number = 0
+        Gradient_Factor = Gradient_Factor_Lo
+        Running_CNS = 0.0
+        Running_OTU = 0.0
+        WRITE (8,880)
+        WRITE (8,890)
+        WRITE (8,813)
+        WRITE (13,880)
+        WRITE (13,890)
+        WRITE (13,813)
+        CYCLE //Return to start of repetitive loop to process another dive
+        /*===============================================================================
+         WRITE ERROR MESSAGE AND TERMINATE PROGRAM IF THERE IS AN ERROR IN THE
+         INPUT FILE FOR THE REPETITIVE DIVE FLAG
+        ===============================================================================*/
+/*		ELSE
+        CALL SYSTEMQQ (OS_Command)
+        WRITE (*,908)
+        WRITE (*,900)
+        STOP 'PROGRAM TERMINATED'
+        END IF
+                        */
+    }
+
+    /**
+     * The first stop the gradient factors ask for is deeper than where off-gassing starts.
+     */
+    private void addFirstStopConflictWarning(int starting_depth, double Depth_Start_of_Deco_Zone, double Deco_Ceiling_Depth, double Deco_Stop_Depth)
+    {
+        String message;
+        if(currentDive.isPartOfTables)
+        {
+            message = "For " + starting_depth + (config.metric ? " m" : " ft") + " / " + currentDive.tablesBottomTime + " minutes :\nOff-gassing starts at " + Util.roundToOneDecimal(Depth_Start_of_Deco_Zone) + (config.metric ? " m" : " ft") + ", while the chosen Gradient Factor\nresults in an initial deco ceiling of " + Util.roundToTwoDecimals(Deco_Ceiling_Depth) + (config.metric ? " m" : " ft") + ",\nwhich requires a first stop at " + Deco_Stop_Depth + (config.metric ? " m" : " ft") + ".\nPlease increase GF Lo and try again.";
+        }
+        else
+        {
+            message = "For ascent from " + starting_depth + (config.metric ? " m" : " ft") + ":\nOff-gassing starts at " + Util.roundToOneDecimal(Depth_Start_of_Deco_Zone) + (config.metric ? " m" : " ft") + ", while the chosen Gradient Factor\nresults in an initial deco ceiling of " + Util.roundToTwoDecimals(Deco_Ceiling_Depth) + (config.metric ? " m" : " ft") + ",\nwhich requires a first stop at " + Deco_Stop_Depth + (config.metric ? " m" : " ft") + ".\nPlease increase GF Lo and try again.";
+        }
+        warnings.add(new PlanWarning(PlanWarning.FIRST_STOP_CONFLICT, "First stop conflict", "Please raise your GF Lo", message));
+    }
+
+    /**
+     * Ascends from Starting_Depth to the next deco stop and adds the ascent segment.
+     * @return the ascent segment
+     */
+    private DiveSegment ascendToStop(int Starting_Depth, double Deco_Stop_Depth, boolean firstStop)
+    {
+        GAS_LOADINGS_ASCENT_DESCENT(Starting_Depth, Deco_Stop_Depth, config.ascentRate);
+//System.out.println(" Row 1472: About to call updateHighestMvaluePercentageAndGradientFactor with Deco_Stop_Depth: " + Deco_Stop_Depth + " and surface pressure: " + currentDive.surfacePressure);            
+        updateHighestMvaluePercentageAndGradientFactor(Deco_Stop_Depth + currentDive.surfacePressure);
+        DIVEDATA_ASCENT_DESCENT(Starting_Depth, Deco_Stop_Depth, config.ascentRate, config.RMV_During_Deco);
+
+        // Skapa nu ett ascent-diveSegment och lägg till
+        DiveSegment ascentSegment = new DiveSegment();
+        ascentSegment.segmentType = DiveSegment.ASCENT;
+        ascentSegment.startDepth = currentDive.currentDepth;
+        ascentSegment.startRunTime = currentDive.currentRunTime;
+        ascentSegment.duration = (Deco_Stop_Depth - Starting_Depth) / Math.negateExact(config.ascentRate);
+        ascentSegment.endDepth = Deco_Stop_Depth;
+        ascentSegment.gasID = currentDive.activeGasID;
+        ascentSegment.oxygenFraction = currentDive.diveSegments.get(currentDive.diveSegments.size() - 1).oxygenFraction; //same gas as on the previous segment
+        ascentSegment.heliumFraction = currentDive.diveSegments.get(currentDive.diveSegments.size() - 1).heliumFraction;
+        ascentSegment.endRunTime = ascentSegment.startRunTime + ascentSegment.duration;
+        ascentSegment.nitrogenCompartmentPressuresAtEndOfDuration = nitrogenCompartmentPressure.clone();
+        ascentSegment.heliumCompartmentPressuresAtEndOfDuration = heliumCompartmentPressure.clone();
+        //Calculate the gas volume used during this segment
+        double averageAmbientPressureATA = ((Starting_Depth + Deco_Stop_Depth)/2 + currentDive.surfacePressure)/config.Depth_Per_ATM;
+        ascentSegment.gasVolumeUsedDuringSegment = config.RMV_During_Deco * averageAmbientPressureATA * ascentSegment.duration;
+        //Add the segment
+        currentDive.diveSegments.add(ascentSegment);
+        //Update the current depth and runtime
+        currentDive.currentDepth = Deco_Stop_Depth;
+        currentDive.currentRunTime = ascentSegment.endRunTime;
+        currentDive.totalAscentDuration += ascentSegment.duration;
+        //Don't include the first ascent segment in the total deco time.
+        if(!firstStop)
+        {
+            currentDive.totalDecoDuration += ascentSegment.duration;
+        }
+//System.out.println("adding ascent, " + ascentSegment.duration + " minutes. " + ascentSegment.startDepth + " to " + ascentSegment.endDepth);
+        return ascentSegment;
+    }
+
+    /**
+     * Loops through all gases and switches to the best deco gas for this stop, if any.
+     */
+    private void switchDecoGas(double Deco_Stop_Depth)
+    {
+        Gas decoGas;
+        Gas currentGas = currentDive.getCurrentGas(); //added in version 4.6.3
+        //Loop through all gases and see if we need to switch to any of them
+        
+//System.out.println("At deco depth: " + Deco_Stop_Depth + " Going to check if we need to switch to a new deco gas. Currently active gasID = " + currentDive.activeGasID + " (BuhlmannDeco.java, rad 1534)");            
+        for(int gasID=0; gasID<currentDive.gases.size(); gasID++)
+        {
+            decoGas = currentDive.gases.get(gasID);
+//System.out.println("  Checking " + decoGas.getGasText() + " gasID=" + gasID + " switchDepth: " + decoGas.switchDepth + " Gas type=" + decoGas.gasType + " (BuhlmannDeco.java, rad 1538)");                
+            //Check that
+            //1) Current depth is less or equal to the switchdepth of the gas we're now checking
+            //2) The switchdepth of the gas we're now checking is less/shallower than the switchdepth of the gas we're currently using
+            //3) The gas we're checking is a deco gas
+            //4) The gas we're now checking is not the one we're already using
+            if(Deco_Stop_Depth <= decoGas.switchDepth && decoGas.gasType == Gas.DECO_GAS && currentDive.activeGasID != gasID)
+            {                    
+                //Now we have to check that, IF we are on a deco gas already, make sure the switch depth of the new gas is less than the one we are currently on
+                if(currentGas.gasType == Gas.DIVE_GAS || (currentGas.gasType == Gas.DECO_GAS && decoGas.switchDepth < currentGas.switchDepth))
+                {
+//System.out.println("Switching to this gas. gasID = " + gasID);
+                    //switch to this deco gas, which is open circuit also if we were on the loop
+                    currentDive.activeGasID = gasID;
+                    loopSetPoint = 0.0;
+                    //check if we need to change the minimumStopTime along with this gas
+                    if(decoGas.minimumDecoStopTime > 0)
+                    {
+                        currentMinimumDecoStopDuration = decoGas.minimumDecoStopTime;
+                    }
+                    else
+                    {
+                        //If this deco gas has not defined a minimum stop time, we use the default minimum time, from Settings.
+                        currentMinimumDecoStopDuration = Math.round(config.Minimum_Deco_Stop_Time);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the deco stop to both the deco table and the dive segments.
+     */
+    private void addDecoStop(double Deco_Stop_Depth, double stopDuration, DiveSegment ascentSegment, boolean firstStop)
+    {
+        //Now create the visual deco segment
+        DecoTableSegment decoSegment = DIVEDATA_CONSTANT_DEPTH(Deco_Stop_Depth, config.RMV_During_Deco, stopDuration);
+
+//System.out.println(" Row 1565: About to call updateHighestMvaluePercentageAndGradientFactor with Deco_Stop_Depth: " + Deco_Stop_Depth + " and surface pressure: " + currentDive.surfacePressure);                        
+        updateHighestMvaluePercentageAndGradientFactor(Deco_Stop_Depth + currentDive.surfacePressure); //jag gör detta EFTER att gradient-factor sätts på decoSegment, eftersom vi vill se gradientFactor i början av segmentet (när man anländer till ett stopp)
+//            decoSegment.setGradientFactor(Util.roundToOneDecimal(Gradient_Factor_Current_Stop*100));
+        //Add the gas-volume used at the travel-segment before this deco stop
+        decoSegment.setGasVolumeUsedDuringSegment(Double.parseDouble(decoSegment.getGasVolumeUsedDuringSegment()) + ascentSegment.gasVolumeUsedDuringSegment);
+        if(firstStop)
+        {
+            //We won't report the EXACT times for the first stop, since the DECOMPRESSION_STOP-function adjusted the stopDuration to end up on a whole 
+            // multiplier of the Minimum_Deco_Stop_Time. 
+            //So for the first deco stop we set endRunTime to follow the real schedule, but we adjust the startRunTime based on the Minimum_Deco_Stop_Time
+            decoSegment.setEndRunTime(ascentSegment.endRunTime + stopDuration);
+            //Now adjust the stopDuration, just to make for a nice-looking (rounded values) table
+            double adjustedStopDuration;
+            //BUT, ONLY IF it's NOT already a whole number
+            if(stopDuration % 1 == 0)
+            {
+                adjustedStopDuration = stopDuration;
+            }
+            else
+            {
+                adjustedStopDuration = Math.round((stopDuration/currentMinimumDecoStopDuration) + 0.5) * currentMinimumDecoStopDuration;
+            }
+            //we don't include the ascent-time in the first deco stop duration
+            decoSegment.setStartRunTime(ascentSegment.endRunTime + stopDuration - adjustedStopDuration);
+            decoSegment.setDuration(Util.roundToOneDecimal(adjustedStopDuration));
+        }
+        else
+        {
+            decoSegment.setStartRunTime(ascentSegment.startRunTime); //start runtime of the ascent-segment leading up to this deco stop.
+            decoSegment.setDuration(Util.roundToOneDecimal(stopDuration + ascentSegment.duration)); //the deco stop's duration, plus the ascent-segment's duration
+            decoSegment.setEndRunTime(ascentSegment.endRunTime + stopDuration);
+        }
+        
+        decoPlan.add(decoSegment);
+        
+        //now create a diveSegment for this decoStop..
+        DiveSegment stopSegment = new DiveSegment();
+        stopSegment.segmentType = DiveSegment.CONSTANT_DEPTH;
+        stopSegment.startDepth = Deco_Stop_Depth;
+        stopSegment.startRunTime = ascentSegment.endRunTime;
+        stopSegment.duration = stopDuration;
+        stopSegment.endDepth = stopSegment.startDepth;
+        stopSegment.gasID = currentDive.activeGasID;
+        stopSegment.oxygenFraction = currentDive.gases.get(currentDive.activeGasID).oxygenFraction;
+        stopSegment.heliumFraction = currentDive.gases.get(currentDive.activeGasID).heliumFraction;
+        stopSegment.nitrogenFraction = 1 - stopSegment.oxygenFraction - stopSegment.heliumFraction;
+        stopSegment.endRunTime = stopSegment.startRunTime + stopDuration;
+        stopSegment.nitrogenCompartmentPressuresAtEndOfDuration = nitrogenCompartmentPressure.clone();
+        stopSegment.heliumCompartmentPressuresAtEndOfDuration = heliumCompartmentPressure.clone();
+        //Calculate the gas volume used during this segment
+        double averageAmbientPressureATA = (Deco_Stop_Depth + currentDive.surfacePressure)/config.Depth_Per_ATM;
+        stopSegment.gasVolumeUsedDuringSegment = config.RMV_During_Deco * averageAmbientPressureATA * stopDuration;
+        //Add the segment
+        currentDive.diveSegments.add(stopSegment);
+        //Update the current depth and runtime
+        currentDive.currentDepth = Deco_Stop_Depth;
+        currentDive.currentRunTime = stopSegment.endRunTime;
+        currentDive.totalDecoDuration += stopSegment.duration;
+        currentDive.totalAscentDuration += stopSegment.duration;
+//System.out.println("adding stop, " + stopSegment.duration + " minutes. " + stopSegment.startDepth + " to " + stopSegment.endDepth);            
+    }
+
+    /**
+     * The last row of the deco table, when we have reached the surface.
+     */
+    private void addSurfaceSegment()
+    {
+        //Now create the visual segment for the surface
+        DecoTableSegment decoSegment = DIVEDATA_CONSTANT_DEPTH(0, config.RMV_During_Deco, 0);
+        decoSegment.setGradientFactor(Util.roundToOneDecimal((currentDive.highestCurrentGradientFactor*100)+0.5)); //we need to round up, since we will never arrive at the exact "GF Hi", since we force the deco times to be multipliers of a "minimum stop time"
+        decoSegment.setEndRunTime(0);
+        decoSegment.setStartRunTime(Math.round((currentDive.currentRunTime/currentMinimumDecoStopDuration) + 0.5) * currentMinimumDecoStopDuration);
+        decoSegment.setUserDefined(true);
+        decoPlan.add(decoSegment);
+        currentDive.currentRunTime = Double.parseDouble(decoSegment.getStartRunTime());
+    }
+	
+    private double PROJECTED_ASCENT(double Starting_Depth, double Rate, double Deco_Stop_Depth, double Step_Size)
+    {
+        /*===============================================================================
+         SUBROUTINE PROJECTED_ASCENT
+         Purpose: This subprogram performs a simulated ascent outside of the main
+         program to ensure that a deco ceiling will not be violated due to unusual
+         gas loading during ascent (on-gassing). If the deco ceiling is violated,
+         the stop depth will be adjusted deeper by the step size until a safe
+         ascent can be made.
+        ===============================================================================*/
+        /*===============================================================================
+         ARGUMENTS
+        ===============================================================================*/
+        //REAL Starting_Depth, Rate, Step_Size !input
+        //REAL Deco_Stop_Depth !input and output
+        /*===============================================================================
+         LOCAL VARIABLES
+        ===============================================================================*/
+        //INTEGER I !loop counter
+        double Initial_Inspired_He_Pressure, Initial_Inspired_N2_Pressure;
+        double Helium_Rate, Nitrogen_Rate;
+        double Starting_Ambient_Pressure;
+        double New_Ambient_Pressure;
+        //double SCHREINER_EQUATION !function subprogram
+        /*===============================================================================
+         LOCAL ARRAYS
+        ===============================================================================*/
+        //in projectedAscentViolatesCeiling
+        /*===============================================================================
+         GLOBAL CONSTANTS IN NAMED COMMON BLOCKS
+        ===============================================================================*/
+        //REAL Water_Vapor_Pressure
+        //COMMON /Block_8/ Water_Vapor_Pressure
+        /*===============================================================================
+         GLOBAL VARIABLES IN NAMED COMMON BLOCKS
+        ===============================================================================*/
+        /*INTEGER Mix_Number
+        COMMON /Block_9/ Mix_Number
+        REAL Barometric_Pressure
+        COMMON /Block_18/ Barometric_Pressure
+        REAL Gradient_Factor
+        COMMON /Block_37/ Gradient_Factor */
+        /*===============================================================================
+         GLOBAL ARRAYS IN NAMED COMMON BLOCKS
+        ===============================================================================*/
+        /* REAL Helium_Time_Constant(16)
+        COMMON /Block_1A/ Helium_Time_Constant
+        REAL Nitrogen_Time_Constant(16)
+        COMMON /Block_1B/ Nitrogen_Time_Constant
+        REAL Helium_Pressure(16), Nitrogen_Pressure(16) !input
+        COMMON /Block_3/ Helium_Pressure, Nitrogen_Pressure
+        REAL Fraction_Helium(10), Fraction_Nitrogen(10)
+        COMMON /Block_5/ Fraction_Helium, Fraction_Nitrogen
+        REAL Coefficient_AHE(16), Coefficient_BHE(16)
+        REAL Coefficient_AN2(16), Coefficient_BN2(16)
+        COMMON /Block_35/ Coefficient_AHE, Coefficient_BHE, Coefficient_AN2, Coefficient_BN2 */
+        /*===============================================================================
+         CALCULATIONS
+        ===============================================================================*/
+        New_Ambient_Pressure = Deco_Stop_Depth + surfacePressure;
+        Starting_Ambient_Pressure = Starting_Depth + surfacePressure;
+        Initial_Inspired_He_Pressure = inspiredGasPressure(Starting_Ambient_Pressure, config.waterVaporPressure)*inspiredHeliumFraction();
+        Initial_Inspired_N2_Pressure = inspiredGasPressure(Starting_Ambient_Pressure, config.waterVaporPressure)*inspiredNitrogenFraction();
+        Helium_Rate = Rate * inspiredHeliumFraction();
+        Nitrogen_Rate = Rate * inspiredNitrogenFraction();
+        System.arraycopy(heliumCompartmentPressure, 0, projectedInitialHeliumPressure, 0, 16);
+        System.arraycopy(nitrogenCompartmentPressure, 0, projectedInitialNitrogenPressure, 0, 16);
+        //A deeper stop isn't always safer: the fast helium compartments get less time to off-gas on the way up, so the
+        //first safe stop can't be found by bisection. On the loop, one step deeper at a time.
+        if(onLoop())
+        {
+            boolean loop;
+            int iteration = 0;
+            do{
+                budget.check(++iteration, startTime, "projected ascent");
+                loop = false;
+                if(projectedAscentViolatesCeiling(Starting_Ambient_Pressure, New_Ambient_Pressure, Rate, Initial_Inspired_He_Pressure, Initial_Inspired_N2_Pressure, Helium_Rate, Nitrogen_Rate))
+                {
+                    New_Ambient_Pressure = New_Ambient_Pressure + Step_Size;
+                    Deco_Stop_Depth = Deco_Stop_Depth + Step_Size;
+                    loop = true; //GOTO 665
+                }
+            }while(loop);
+            return Deco_Stop_Depth;
+        }
+
+        //On open circuit the stops that a compartment is surely over the limit at are skipped, see ProjectedAscentSearch.
+        //The stops in between are still stepped through, so the depths add up as in the loop above.
+        projectedAscentSearch.setAscent(Starting_Ambient_Pressure, New_Ambient_Pressure, Step_Size, Rate, Initial_Inspired_He_Pressure, Helium_Rate,
+                Initial_Inspired_N2_Pressure, Nitrogen_Rate, Currently_Max_Allowed_Gradient_Factor);
+        projectedAscentSearch.setCompartments(kHe, kN2, He_a, He_b, N2_a, N2_b, projectedInitialHeliumPressure, projectedInitialNitrogenPressure);
+        int Step = 0;
+        budget.check(1, startTime, "projected ascent");
+        while(projectedAscentViolatesCeiling(Starting_Ambient_Pressure, New_Ambient_Pressure, Rate, Initial_Inspired_He_Pressure, Initial_Inspired_N2_Pressure, Helium_Rate, Nitrogen_Rate))
+        {
+            int Next_Step = projectedAscentSearch.nextStop(Step + 1, budget.maxIterations - 1);
+            budget.check(Next_Step + 1, startTime, "projected ascent");
+            for(; Step < Next_Step; Step++)
+            {
+                New_Ambient_Pressure = New_Ambient_Pressure + Step_Size;
+                Deco_Stop_Depth = Deco_Stop_Depth + Step_Size;
+            }
+        }
+        return Deco_Stop_Depth;
+    }
+
+    /**
+     * One try of PROJECTED_ASCENT, from the compartments saved in projectedInitialHeliumPressure and
+     * projectedInitialNitrogenPressure.
+     * @return true if the gas loading of any compartment is above the allowed one on arrival at the stop
+     */
+    private boolean projectedAscentViolatesCeiling(double Starting_Ambient_Pressure, double Ending_Ambient_Pressure, double Rate,
+            double Initial_Inspired_He_Pressure, double Initial_Inspired_N2_Pressure, double Helium_Rate, double Nitrogen_Rate)
+    {
+        double[] Initial_Helium_Pressure = projectedInitialHeliumPressure;
+        double[] Initial_Nitrogen_Pressure = projectedInitialNitrogenPressure;
+        double[] Temp_Gas_Loading = projectedGasLoading;
+        double[] Allowable_Gas_Loading = projectedAllowableGasLoading;
+        double[] Loop_Helium_Pressure = projectedLoopHeliumPressure;
+        double[] Loop_Nitrogen_Pressure = projectedLoopNitrogenPressure;
+        double Temp_Helium_Pressure, Temp_Nitrogen_Pressure;
+        double Coefficient_A, Coefficient_B;
+        double Segment_Time = (Ending_Ambient_Pressure - Starting_Ambient_Pressure)/Rate;
+        if(onLoop())
+        {
+            //the inspired pressures are not linear all the way, see loadLoopAscentDescent
+            System.arraycopy(Initial_Helium_Pressure, 0, Loop_Helium_Pressure, 0, 16);
+            System.arraycopy(Initial_Nitrogen_Pressure, 0, Loop_Nitrogen_Pressure, 0, 16);
+            loadLoopAscentDescent(Loop_Nitrogen_Pressure, Loop_Helium_Pressure, Starting_Ambient_Pressure, Rate, Segment_Time);
+        }
+        for(int i=0;i<16;i++) //DO 670 I = 1,16
+        {
+            if(onLoop())
+            {
+                Temp_Helium_Pressure = Loop_Helium_Pressure[i];
+                Temp_Nitrogen_Pressure = Loop_Nitrogen_Pressure[i];
+            }
+            else
+            {
+                Temp_Helium_Pressure = schreinerEquation(Initial_Inspired_He_Pressure, Helium_Rate, Segment_Time, kHe[i], Initial_Helium_Pressure[i]);
+                Temp_Nitrogen_Pressure = schreinerEquation(Initial_Inspired_N2_Pressure, Nitrogen_Rate, Segment_Time, kN2[i], Initial_Nitrogen_Pressure[i]);
+            }
+            Temp_Gas_Loading[i] = Temp_Helium_Pressure + Temp_Nitrogen_Pressure;
+            Coefficient_A = (Temp_Helium_Pressure*He_a[i] + Temp_Nitrogen_Pressure*N2_a[i])/ (Temp_Helium_Pressure+Temp_Nitrogen_Pressure);
+            Coefficient_B = (Temp_Helium_Pressure*He_b[i] + Temp_Nitrogen_Pressure*N2_b[i])/ (Temp_Helium_Pressure+Temp_Nitrogen_Pressure);
+            Allowable_Gas_Loading[i] = Ending_Ambient_Pressure * (Currently_Max_Allowed_Gradient_Factor/Coefficient_B - Currently_Max_Allowed_Gradient_Factor + 1.0) + Currently_Max_Allowed_Gradient_Factor*Coefficient_A;
+        } //670 CONTINUE
+        for(int i=0;i<16;i++) // DO 671 I = 1,16
+        {
+            if(Temp_Gas_Loading[i] > Allowable_Gas_Loading[i])
+            {
+                return true;
+            }
+        } //671 CONTINUE
+        return false;
+    }
+	
+//===============================================================================
+// SUBROUTINE GAS_LOADINGS_ASCENT_DESCENT
+// Purpose: This subprogram applies the Schreiner equation to update the
+// gas loadings (partial pressures of helium and nitrogen) in the half-time
+// compartments due to a linear ascent or descent segment at a constant rate.
+//===============================================================================
+public void GAS_LOADINGS_ASCENT_DESCENT(double Starting_Depth, double Ending_Depth, double Rate)
+{
+    //Just make sure that Rate has the correct sign. negative on ascent and positive on descent.
+    if((Ending_Depth < Starting_Depth && Rate > 0) || (Ending_Depth > Starting_Depth && Rate < 0))
+    {
+        Rate = -Rate;
+    }
+    
+    double Segment_Time = (Ending_Depth - Starting_Depth)/Rate;
+    double Starting_Ambient_Pressure = Starting_Depth + surfacePressure;
+    if(onLoop())
+    {
+        loadLoopAscentDescent(nitrogenCompartmentPressure, heliumCompartmentPressure, Starting_Ambient_Pressure, Rate, Segment_Time);
+        return;
+    }
+    double Initial_Inspired_He_Pressure = (Starting_Ambient_Pressure - config.waterVaporPressure)*currentDive.getCurrentHeliumFraction();
+    double Initial_Inspired_N2_Pressure = (Starting_Ambient_Pressure - config.waterVaporPressure)*currentDive.getCurrentNitrogenFraction();
+    double Helium_Rate = Rate * currentDive.getCurrentHeliumFraction();
+    double Nitrogen_Rate = Rate * currentDive.getCurrentNitrogenFraction();
+    kernel.loadAscentDescent(nitrogenCompartmentPressure, heliumCompartmentPressure, Initial_Inspired_N2_Pressure, Nitrogen_Rate, Initial_Inspired_He_Pressure, Helium_Rate, Segment_Time);
+}
+
+//===============================================================================
+// SUBROUTINE GAS_LOADINGS_CONSTANT_DEPTH
+// Purpose: This subprogram applies the Haldane equation to update the
+// gas loadings (partial pressures of helium and nitrogen) in the half-time
+// compartments for a segment at constant depth.
+//===============================================================================
+public void GAS_LOADINGS_CONSTANT_DEPTH (double Depth, double Segment_Time)
+{
+    double Ambient_Pressure = Depth + currentDive.surfacePressure;
+    double Inspired_Helium_Pressure = inspiredGasPressure(Ambient_Pressure, currentDive.waterVaporPressure)*inspiredHeliumFraction();
+    double Inspired_Nitrogen_Pressure = inspiredGasPressure(Ambient_Pressure, currentDive.waterVaporPressure)*inspiredNitrogenFraction();
+    kernel.loadConstantDepth(nitrogenCompartmentPressure, heliumCompartmentPressure, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure, Segment_Time);
+}
+
+/**
+ * @return true on a CCR segment or an SCR loop, where the inspired fractions are not the current gas's
+ */
+private boolean onLoop()
+{
+    return loopSetPoint > 0 || config.scrLoop != null;
+}
+
+/**
+ * GAS_LOADINGS_ASCENT_DESCENT on the loop. On CCR the inspired inert gas pressure is linear down to where the
+ * setpoint can't be held, on a passive SCR it isn't linear at all.
+ */
+private void loadLoopAscentDescent(double[] nitrogenPressures, double[] heliumPressures, double Starting_Ambient_Pressure, double Rate, double Segment_Time)
+{
+    if(loopSetPoint > 0)
+    {
+        kernel.loadClosedCircuitAscentDescent(nitrogenPressures, heliumPressures, Starting_Ambient_Pressure - config.waterVaporPressure - loopSetPoint*config.Depth_Per_ATM,
+                Rate, inspiredNitrogenFraction(), inspiredHeliumFraction(), Segment_Time);
+    }
+    else
+    {
+        kernel.loadVaryingAscentDescent(nitrogenPressures, heliumPressures, loopInertPressure, Starting_Ambient_Pressure, Rate,
+                inspiredNitrogenFraction(), inspiredHeliumFraction(), Segment_Time, SCR_TOLERANCE_ATA*config.Depth_Per_ATM);
+    }
+}
+
+/**
+ * Uses the oxygen consumption and minute volume of the dive or the deco on an SCR loop.
+ */
+private void setScrPhase(boolean deco)
+{
+    if(config.scrLoop != null)
+    {
+        scrOxygenConsumption = config.scrLoop.getOxygenConsumption(deco);
+        scrMinuteVolume = deco ? config.RMV_During_Deco : config.RMV_During_Dive;
+    }
+}
+
+/**
+ * @return the oxygen fraction in the SCR loop, supplied with the current gas
+ */
+private double scrOxygenFraction(double Ambient_Pressure_ATA)
+{
+    return config.scrLoop.oxygenFraction(currentDive.getCurrentOxygenFraction(), Ambient_Pressure_ATA, scrOxygenConsumption, scrMinuteVolume);
+}
+
+/**
+ * @return the pressure the inspired fractions apply to: ambient pressure minus water vapor on open circuit, and
+ * also minus the setpoint on the loop. On the loop it is never below 0, shallower than that the loop is all oxygen.
+ * On an SCR loop it is the inspired inert gas pressure.
+ */
+private double inspiredGasPressure(double Ambient_Pressure, double Water_Vapor_Pressure)
+{
+    if(loopSetPoint > 0)
+    {
+        return Math.max(0.0, Ambient_Pressure - Water_Vapor_Pressure - loopSetPoint*config.Depth_Per_ATM);
+    }
+    if(config.scrLoop != null)
+    {
+        return (Ambient_Pressure - Water_Vapor_Pressure)*(1.0 - scrOxygenFraction(Ambient_Pressure/config.Depth_Per_ATM));
+    }
+    return Ambient_Pressure - Water_Vapor_Pressure;
+}
+
+/**
+ * @return the change of inspiredGasPressure per minute at an ascent or descent rate. On a passive SCR loop
+ * this is the average on an ascent from Starting_Ambient_Pressure to the surface.
+ */
+private double inspiredGasRate(double Starting_Ambient_Pressure, int Rate)
+{
+    if(loopSetPoint == 0 && config.scrLoop != null && !config.scrLoop.isLinear() && Starting_Ambient_Pressure > surfacePressure)
+    {
+        return Rate*(inspiredGasPressure(Starting_Ambient_Pressure, config.waterVaporPressure) - inspiredGasPressure(surfacePressure, config.waterVaporPressure))
+                /(Starting_Ambient_Pressure - surfacePressure);
+    }
+    if(loopSetPoint == 0 && config.scrLoop != null)
+    {
+        return Rate*(1.0 - scrOxygenFraction(Starting_Ambient_Pressure/config.Depth_Per_ATM));
+    }
+    return Rate;
+}
+
+/**
+ * @return the helium fraction of the current gas on open circuit. On the loop, the diluent's helium part of its inert gas.
+ */
+private double inspiredHeliumFraction()
+{
+    if(onLoop())
+    {
+        double Inert_Fraction = currentDive.getCurrentHeliumFraction() + currentDive.getCurrentNitrogenFraction();
+        return Inert_Fraction > 0 ? currentDive.getCurrentHeliumFraction()/Inert_Fraction : 0.0;
+    }
+    return currentDive.getCurrentHeliumFraction();
+}
+
+/**
+ * @return the nitrogen fraction of the current gas on open circuit. On the loop, the diluent's nitrogen part of its inert gas.
+ */
+private double inspiredNitrogenFraction()
+{
+    if(onLoop())
+    {
+        double Inert_Fraction = currentDive.getCurrentHeliumFraction() + currentDive.getCurrentNitrogenFraction();
+        return Inert_Fraction > 0 ? currentDive.getCurrentNitrogenFraction()/Inert_Fraction : 0.0;
+    }
+    return currentDive.getCurrentNitrogenFraction();
+}
+
+/**
+ * @param Ambient_Pressure_ATA
+ * @return the inspired pO2 in ATA, the setpoint on the loop unless the ambient pressure is lower
+ */
+private double inspiredOxygenPressure(double Ambient_Pressure_ATA)
+{
+    if(loopSetPoint > 0)
+    {
+        return Math.min(loopSetPoint, Ambient_Pressure_ATA);
+    }
+    if(config.scrLoop != null)
+    {
+        return Ambient_Pressure_ATA * scrOxygenFraction(Ambient_Pressure_ATA);
+    }
+    return Ambient_Pressure_ATA * currentDive.getCurrentOxygenFraction();
+}
+
+
+
+
+    public void performSurfaceInterval(double[] nitrogenTissuePressures, double[] heliumTissuePressures, int minutes)
+    {
+        nitrogenCompartmentPressure = nitrogenTissuePressures.clone();
+        heliumCompartmentPressure = heliumTissuePressures.clone();       
+        kernel.offGasAtSurface(nitrogenCompartmentPressure, heliumCompartmentPressure, (currentDive.surfacePressure - currentDive.waterVaporPressure)*0.79, minutes);
+    }
+        
+    public double[] getNitrogenCompartmentPressures()
+    {
+        return nitrogenCompartmentPressure;
+    }
+    public double[] getHeliumCompartmentPressures()
+    {
+        return heliumCompartmentPressure;
+    }
+
+    /**
+     * @return the CNS toxicity, as a fraction, at the end of the last calculation or program
+     */
+    public double getCNStoxicityPercentage()
+    {
+        return CNStoxicityPercentage;
+    }
+
+    /**
+     * @return the OTUs at the end of the last calculation or program
+     */
+    public double getOTUbuildup()
+    {
+        return OTUbuildup;
+    }
+
+    /**
+     * Runs a compiled PlanProgram: the gas loadings and oxygen exposure of its segments, with the rates, surface pressure,
+     * water vapor pressure and model of theConfig. No deco stops are added, see PlanProgram.
+     * Afterwards the tissues are in getNitrogenCompartmentPressures and getHeliumCompartmentPressures, and the oxygen
+     * exposure in getCNStoxicityPercentage and getOTUbuildup.
+     * @param program
+     * @param theConfig the settings to run with. Settings is not read. A scrLoop in it is not used, the segments are loaded on open circuit, or at their CCR setpoint with closedCircuitSetPoints.
+     * @return the deco ceiling depth at the end of the program, at the first stop gradient factor. Negative if there is no ceiling.
+     */
+    public double runProgram(PlanProgram program, PlannerConfig theConfig)
+    {
+        config = theConfig;
+        loadModelValues();
+
+        double[] nitrogen = program.initialNitrogenPressures.clone();
+        double[] helium = program.initialHeliumPressures.clone();
+        double CNS = program.initialCNS;
+        double OTU = program.initialOTU;
+        double Surface_Pressure = config.surfacePressure;
+        double Water_Vapor_Pressure = config.waterVaporPressure;
+
+        for(int op=0; op<program.length; op++)
+        {
+            double Starting_Depth = program.startDepths[op];
+            double Ending_Depth = program.endDepths[op];
+            double oxygenFraction = program.oxygenFractions[op];
+            double heliumFraction = program.heliumFractions[op];
+            double nitrogenFraction = program.nitrogenFractions[op];
+            double Set_Point = config.closedCircuitSetPoints ? program.setPoints[op] : 0.0;
+            double Loop_Pressure = 0.0; //the setpoint in depth units, subtracted from the inspired pressure on the loop
+            if(Set_Point > 0)
+            {
+                //the diluent's inert gas
+                double Inert_Fraction = heliumFraction + nitrogenFraction;
+                heliumFraction = Inert_Fraction > 0 ? heliumFraction/Inert_Fraction : 0.0;
+                nitrogenFraction = Inert_Fraction > 0 ? nitrogenFraction/Inert_Fraction : 0.0;
+                Loop_Pressure = Set_Point*config.Depth_Per_ATM;
+            }
+            if(program.opcodes[op] == DiveSegment.CONSTANT_DEPTH)
+            {
+                //GAS_LOADINGS_CONSTANT_DEPTH and DIVEDATA_CONSTANT_DEPTH
+                double Segment_Time = program.durations[op];
+                double Ambient_Pressure = Starting_Depth + Surface_Pressure;
+                double Inspired_Pressure = Set_Point > 0 ? Math.max(0.0, Ambient_Pressure - Water_Vapor_Pressure - Loop_Pressure) : Ambient_Pressure - Water_Vapor_Pressure;
+                kernel.loadConstantDepth(nitrogen, helium, Inspired_Pressure*nitrogenFraction, Inspired_Pressure*heliumFraction, Segment_Time);
+                double PO2 = (Starting_Depth + Surface_Pressure)/config.Depth_Per_ATM * oxygenFraction;
+                if(Set_Point > 0)
+                {
+                    PO2 = Math.min(Set_Point, (Starting_Depth + Surface_Pressure)/config.Depth_Per_ATM);
+                }
+                CNS += OxygenExposure.constantDepthCNS(PO2, Segment_Time);
+                OTU += OxygenExposure.constantDepthOTU(PO2, Segment_Time);
+            }
+            else
+            {
+                //GAS_LOADINGS_ASCENT_DESCENT and DIVEDATA_ASCENT_DESCENT, negative rate on ascent
+                double Rate = program.opcodes[op] == DiveSegment.ASCENT ? config.ascentRate : config.descentRate;
+                if((Ending_Depth < Starting_Depth && Rate > 0) || (Ending_Depth > Starting_Depth && Rate < 0))
+                {
+                    Rate = -Rate;
+                }
+                double Segment_Time = (Ending_Depth - Starting_Depth)/Rate;
+                double Starting_Ambient_Pressure = Starting_Depth + Surface_Pressure;
+                double startingPO2 = (Starting_Depth + Surface_Pressure)/config.Depth_Per_ATM*oxygenFraction;
+                double endingPO2 = (Ending_Depth + Surface_Pressure)/config.Depth_Per_ATM*oxygenFraction;
+                if(Set_Point > 0)
+                {
+                    kernel.loadClosedCircuitAscentDescent(nitrogen, helium, Starting_Ambient_Pressure - Water_Vapor_Pressure - Loop_Pressure, Rate, nitrogenFraction, heliumFraction, Segment_Time);
+                    startingPO2 = Math.min(Set_Point, (Starting_Depth + Surface_Pressure)/config.Depth_Per_ATM);
+                    endingPO2 = Math.min(Set_Point, (Ending_Depth + Surface_Pressure)/config.Depth_Per_ATM);
+                }
+                else
+                {
+                    kernel.loadAscentDescent(nitrogen, helium, (Starting_Ambient_Pressure - Water_Vapor_Pressure)*nitrogenFraction, Rate*nitrogenFraction,
+                            (Starting_Ambient_Pressure - Water_Vapor_Pressure)*heliumFraction, Rate*heliumFraction, Segment_Time);
+                }
+                CNS += OxygenExposure.ascentDescentCNS(startingPO2, endingPO2, Math.abs(Segment_Time));
+                OTU += OxygenExposure.ascentDescentOTU(startingPO2, endingPO2, Math.abs(Segment_Time));
+            }
+        }
+
+        nitrogenCompartmentPressure = nitrogen;
+        heliumCompartmentPressure = helium;
+        CNStoxicityPercentage = CNS;
+        OTUbuildup = OTU;
+        return leadingCeiling.toleratedAmbientPressure(nitrogen, helium, config.gradientFactorFirstStop) - Surface_Pressure;
+    }
+
+        
+        
+        
+    /*===============================================================================
+     SUBROUTINE DIVEDATA_ASCENT_DESCENT
+    =============================================================================== */
+    private void DIVEDATA_ASCENT_DESCENT(double Starting_Depth, double Ending_Depth, double Rate, double Respiratory_Minute_Volume)
+    {
+        double Segment_Time = (Ending_Depth - Starting_Depth)/Rate;
+        if(Segment_Time < 0) //in case Rate is erronously negative or positive
+        {
+            Segment_Time = Math.abs(Segment_Time);
+        }
+        double startingPressureATA = (Starting_Depth + surfacePressure)/config.Depth_Per_ATM; //TODO: NOAA's oxygen-exposure tables är baserade på ATA..  Men Metric använder Bar.. 
+        double endingPressureATA = (Ending_Depth + surfacePressure)/config.Depth_Per_ATM;
+        CNStoxicityPercentage += OxygenExposure.ascentDescentCNS(inspiredOxygenPressure(startingPressureATA), inspiredOxygenPressure(endingPressureATA), Segment_Time);
+        OTUbuildup += OxygenExposure.ascentDescentOTU(inspiredOxygenPressure(startingPressureATA), inspiredOxygenPressure(endingPressureATA), Segment_Time);
+        
+//System.out.println("SUMCNS: " + SUMCNS + " max PO2: " + MAXPO2 + " at depth: " + Ending_Depth + " endingPressureATA: " + endingPressureATA + " Current oxygen fraction: " + currentDive.getCurrentOxygenFraction());        
+        
+        
+        //WRITE (13,100) Segment_Number, Segment_Time, Run_Time, Mix_Number, Respiratory_Minute_Volume, SEGVOL, MAXD, MAXPO2, SUMCNS, OTU, ENDN2, ENDNO2
+      
+        
+        //100 FORMAT (I3,3X,F5.1,1X,F6.1,1X,'|',3X,I2,3X,'|',F5.2,1X,F7.1,1X,F6.0,2X,F4.2,1X,2P,F7.1,'%',0P,F7.1,2X,F6.0,2X,F6.0)
+/*        if(MAXPO2 > 1.6061)
+        {
+            //System.out.println("PO2 exceeds 1.6 in segment " + Segment_Number);
+        }
+        if(MAXPO2 > 1.82)
+        {
+            //System.out.println("PO2 exceeds 1.82 in segment " + Segment_Number);
+        } */
+    }
+
+    /*===============================================================================
+     SUBROUTINE DIVEDATA_CONSTANT_DEPTH
+    ===============================================================================*/
+    private DecoTableSegment DIVEDATA_CONSTANT_DEPTH(double Depth, double Respiratory_Minute_Volume, double Segment_Time)
+    {
+        double Ambient_Pressure_ATA = (Depth + config.surfacePressure)/config.Depth_Per_ATM;
+        double Segment_Volume = Respiratory_Minute_Volume * Ambient_Pressure_ATA * Segment_Time;
+        double PO2 = inspiredOxygenPressure(Ambient_Pressure_ATA);
+        CNStoxicityPercentage += OxygenExposure.constantDepthCNS(PO2, Segment_Time);
+        OTUbuildup += OxygenExposure.constantDepthOTU(PO2, Segment_Time);
+//System.out.println(" - CNStoxicityPercentage: " + CNStoxicityPercentage + " SUMCNS: " + SUMCNS + " OTUbuildup: " + OTUbuildup + " OTU: " + OTU);
+        //WRITE (13,100) Segment_Number, Segment_Time, Run_Time, Mix_Number, Respiratory_Minute_Volume, Segment_Volume, MAXD, MAXPO2, SUMCNS, OTU, ENDN2, ENDNO2
+        DecoTableSegment decoSegment = new DecoTableSegment();
+        decoSegment.setDepth(Depth);
+        decoSegment.setDuration(Util.roundToOneDecimal(Segment_Time));
+        decoSegment.setEndRunTime(currentDive.currentRunTime);
+        decoSegment.setStartRunTime(currentDive.currentRunTime - Segment_Time);
+        decoSegment.setGasVolumeUsedDuringSegment(Segment_Volume);
+        decoSegment.setPO2(Util.roundToTwoDecimals(PO2));
+        decoSegment.setHeliumPercentage(Math.round(currentDive.getCurrentHeliumFraction() * 100));
+        decoSegment.setOxygenPercentage(Math.round(currentDive.getCurrentOxygenFraction() * 100));
+        decoSegment.setCNSatEndOfSegment(CNStoxicityPercentage);
+        decoSegment.setOTUatEndOfSegment(OTUbuildup);
+        decoSegment.setMvaluePercent(Util.roundToOneDecimal(currentDive.highestCurrentMvalueFraction*100));
+        decoSegment.setGradientFactor(Util.roundToOneDecimal(currentDive.highestCurrentGradientFactor*100));
+
+        return decoSegment;
+   }
+	
+    /*===============================================================================
+     SUBROUTINE DECOMPRESSION_STOP
+     Purpose: This subprogram calculates the required time at each
+     decompression stop.
+    ===============================================================================*/
+    private double DECOMPRESSION_STOP(double Deco_Stop_Depth, double Step_Size)
+    {        
+        /*===============================================================================
+         LOCAL VARIABLES
+        ===============================================================================*/
+        double Segment_Time;
+        double Ambient_Pressure;
+        double Inspired_Helium_Pressure, Inspired_Nitrogen_Pressure;
+        double Last_Run_Time;
+        double Deco_Ceiling_Depth, Next_Stop;
+        double Round_Up_Operation, Temp_Segment_Time, Time_Counter;
+        double Allowable_Gas_Loading;
+        double Coefficient_A, Coefficient_B;
+        double Initial_Helium_Pressure = 0;
+        double Initial_Nitrogen_Pressure = 0;
+
+        //save the compartment values and reset them at the end of this method
+        stopSavePoint.save(nitrogenCompartmentPressure, heliumCompartmentPressure);
+        
+        // DEBUG logging
+        if (debugEnabled && debugLog != null) {
+            debugLog.printf("\n=== DECOMPRESSION_STOP START ===\n");
+            debugLog.printf("Stop Depth: %.1f, Step Size: %.1f\n", Deco_Stop_Depth, Step_Size);
+            debugLog.printf("Current GF: %.3f\n", Currently_Max_Allowed_Gradient_Factor);
+            debugLog.printf("Current Runtime: %.2f\n", currentDive.currentRunTime);
+            debugLog.printf("Gas: O2=%.1f%% He=%.1f%%\n", 
+                currentDive.getCurrentOxygenFraction() * 100, 
+                currentDive.getCurrentHeliumFraction() * 100);
+        }
+        
+
+        /*===============================================================================
+         CALCULATIONS
+        ===============================================================================*/
+        Last_Run_Time = currentDive.currentRunTime;
+//System.out.print("Now at stop depth: " + Deco_Stop_Depth + " runtime: " + Last_Run_Time);        
+        //Här rundar vi upp så run_time slutar på en hel minut (eller vad minimum_deco_stop_time nu är) när vi avslutar detta dekostoppet.
+        //Round_Up_Operation = Math.round((Last_Run_Time/currentMinimumDecoStopDuration) + 0.5) * currentMinimumDecoStopDuration;
+        Round_Up_Operation = Math.floor(Last_Run_Time) + currentMinimumDecoStopDuration; //ändrade till detta istället för raden ovan i.o.m. v4.1.1.
+//System.out.println(" Round-up-operation: " + Round_Up_Operation);
+        Segment_Time = Round_Up_Operation - Last_Run_Time;
+        Temp_Segment_Time = Segment_Time;
+        Ambient_Pressure = Deco_Stop_Depth + surfacePressure;
+        Next_Stop = Deco_Stop_Depth - Step_Size; 
+        Inspired_Helium_Pressure = inspiredGasPressure(Ambient_Pressure, currentDive.waterVaporPressure)*inspiredHeliumFraction();
+        Inspired_Nitrogen_Pressure = inspiredGasPressure(Ambient_Pressure, currentDive.waterVaporPressure)*inspiredNitrogenFraction();
+        /*===============================================================================
+         Check to make sure that program won't lock up if unable to decompress
+         to the next stop. If so, write error message and terminate program.
+        ===============================================================================*/
+        boolean offGassingGradientTooSmall = false;
+        for(int I=0;I<16;I++)
+        {
+            if((Inspired_Helium_Pressure + Inspired_Nitrogen_Pressure) > 0.0)
+            {
+                Coefficient_A = (Inspired_Helium_Pressure*He_a[I] + Inspired_Nitrogen_Pressure*N2_a[I])/ (Inspired_Helium_Pressure + Inspired_Nitrogen_Pressure);
+                Coefficient_B = (Inspired_Helium_Pressure*He_b[I] + Inspired_Nitrogen_Pressure*N2_b[I])/ (Inspired_Helium_Pressure + Inspired_Nitrogen_Pressure);
+                Allowable_Gas_Loading = (Next_Stop + surfacePressure) * (Currently_Max_Allowed_Gradient_Factor/Coefficient_B - Currently_Max_Allowed_Gradient_Factor + 1.0) + Currently_Max_Allowed_Gradient_Factor*Coefficient_A;
+                if((Inspired_Helium_Pressure + Inspired_Nitrogen_Pressure) > Allowable_Gas_Loading)
+                {
+                    //The ceiling is calculated with the tissue's own a/b-values, so this doesn't always mean we are stuck.
+                    //But if the stop then runs out of iterations, this is the reason, and the exception below tells the user.
+                    if (debugEnabled && debugLog != null) {
+                        debugLog.printf("Off-gassing gradient is too small in compartment %d at the %.1f stop\n", I + 1, Deco_Stop_Depth);
+                    }
+                    offGassingGradientTooSmall = true;
+                }
+            }
+        }
+        double Solved_Stop_Time = offGassingGradientTooSmall ? -1.0 : solveStopTime(Next_Stop, Segment_Time, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure);
+        if(Solved_Stop_Time >= 0 && !stopTimeVerification)
+        {
+            budget.check(1, startTime, "deco stop");
+            if (debugEnabled && debugLog != null) {
+                debugLog.printf("=== DECOMPRESSION_STOP END ===\n");
+                debugLog.printf("Returning solved stop time: %.2f min\n", Solved_Stop_Time);
+                debugLog.flush();
+            }
+            return Solved_Stop_Time;
+        }
+
+        //700 DO 720 I = 1,16
+        boolean do_loop;
+        int iteration = 0;
+        do{
+            do_loop = false;
+            iteration++;
+            if(offGassingGradientTooSmall && iteration > budget.maxIterations)
+            {
+                throw new DecoCalculationException(DecoCalculationException.OFF_GASSING_GRADIENT_TOO_SMALL, "Off-gassing gradient is too small to decompress at the " + Deco_Stop_Depth + (config.metric ? " m" : " ft") + " stop. Please reduce step size or increase oxygen fraction.");
+            }
+            budget.check(iteration, startTime, "deco stop");
+            if(Segment_Time == currentMinimumDecoStopDuration)
+            {
+                //all steps after the first one, with the uptake factors cached in the kernel
+                kernel.loadConstantDepthStep(nitrogenCompartmentPressure, heliumCompartmentPressure, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure, currentMinimumDecoStopDuration);
+            }
+            else
+            {
+                for(int I=0;I<16;I++)
+                {
+                    Initial_Helium_Pressure = heliumCompartmentPressure[I]; //PHe[I];
+                    Initial_Nitrogen_Pressure = nitrogenCompartmentPressure[I]; //PN2[I];
+                    heliumCompartmentPressure[I] = haldaneEquation(Initial_Helium_Pressure, Inspired_Helium_Pressure, kHe[I], Segment_Time); //PHe[I] = 
+                    nitrogenCompartmentPressure[I] = haldaneEquation(Initial_Nitrogen_Pressure, Inspired_Nitrogen_Pressure, kN2[I], Segment_Time); //PN2[I] = 
+                } //720 CONTINUE
+            }
+            //Det är lite fusk i DecoPlanner 3, för att de gör en uppstigning och kollar sen så att det är okej,
+            // istället för att kolla så att det är okej att göra uppstigningen. Bör bli samma, men blir inte det av nån anledning. Det blir något kortare deko som DecoPlanner gör det.
+            //spara undan vävnadstrycken först
+            //<DecoPlanner hack> Detta bör jag kunna ta bort..
+/*            double[] temp2_nitrogenCompartments = nitrogenCompartmentPressure.clone();
+            double[] temp2_heliumCompartments = heliumCompartmentPressure.clone();
+            GAS_LOADINGS_ASCENT_DESCENT(Deco_Stop_Depth, Next_Stop, Math.negateExact(config.ascentRate)); */
+            Deco_Ceiling_Depth = CALC_DECO_CEILING();  // denna rad är inte del av <DecoPlanner hack>
+// System.out.println("After " + Temp_Segment_Time + " minutes at depth " + Deco_Stop_Depth + ", ceiling is now " + Deco_Ceiling_Depth);
+            //återställ nu vävnadstrycken
+/*            nitrogenCompartmentPressure = temp2_nitrogenCompartments.clone();
+            heliumCompartmentPressure = temp2_heliumCompartments.clone(); */
+            //</DecoPlanner hack>
+            
+            // DEBUG logging
+            if (debugEnabled && debugLog != null) {
+                debugLog.printf("  Iteration %d: Segment_Time=%.2f, Temp_Segment_Time=%.2f\n", 
+                    iteration, Segment_Time, Temp_Segment_Time);
+                debugLog.printf("    Ceiling=%.3f, Rounded=%.2f, Next_Stop=%.1f\n", 
+                    Deco_Ceiling_Depth, Util.roundToTwoDecimals(Deco_Ceiling_Depth), Next_Stop);
+                // Log first 3 compartments
+                for (int i = 0; i < 3; i++) {
+                    debugLog.printf("    Comp %d: N2=%.3f, He=%.3f, Total=%.3f\n", 
+                        i+1, nitrogenCompartmentPressure[i], heliumCompartmentPressure[i],
+                        nitrogenCompartmentPressure[i] + heliumCompartmentPressure[i]);
+                }
+            }
+            
+            //if(Util.roundToOneDecimal(Deco_Ceiling_Depth) > Next_Stop)
+//System.out.println("After " + Temp_Segment_Time + " minutes at depth " + Deco_Stop_Depth + ", ceiling is now " + Deco_Ceiling_Depth);
+            if(Util.roundToTwoDecimals(Deco_Ceiling_Depth) > Next_Stop)
+            {
+//System.out.println("After " + Temp_Segment_Time + " minutes at depth " + Deco_Stop_Depth + ", ceiling is now " + Deco_Ceiling_Depth);                
+                Segment_Time = currentMinimumDecoStopDuration;
+                Time_Counter = Temp_Segment_Time;
+                Temp_Segment_Time = Time_Counter + currentMinimumDecoStopDuration;
+                do_loop = true; //GOTO 700
+                
+                if (debugEnabled && debugLog != null) {
+                    debugLog.printf("    Need more time - continuing iterations\n");
+                }
+            }
+        }while(do_loop);
+        
+        //Now reset the compartment values, since we changed them in this method
+        stopSavePoint.restore(nitrogenCompartmentPressure, heliumCompartmentPressure);
+        if(Solved_Stop_Time >= 0 && Solved_Stop_Time != Temp_Segment_Time)
+        {
+            stopTimeMismatches++;
+        }
+
+        // DEBUG logging
+        if (debugEnabled && debugLog != null) {
+            debugLog.printf("=== DECOMPRESSION_STOP END ===\n");
+            debugLog.printf("Total iterations: %d\n", iteration);
+            if(Solved_Stop_Time >= 0)
+            {
+                debugLog.printf("Solved stop time: %.2f min\n", Solved_Stop_Time);
+            }
+            debugLog.printf("Returning stop time: %.2f min\n", Temp_Segment_Time);
+            debugLog.flush();
+        }
+
+        return Temp_Segment_Time;
+    }
+
+    /**
+     * The stop time of DECOMPRESSION_STOP without stepping through the stop. At constant depth every compartment
+     * follows the Haldane equation, so the time when its tolerated ambient pressure, at the current gradient factor,
+     * gets shallow enough for the next stop can be solved per compartment. With only one inert gas in the compartment
+     * and in the gas breathed the a- and b-values don't change and it is a logarithm. With both gases the tolerated
+     * pressure only falls at the stop when the compartment holds helium and nitrogen in the ratio of the gas breathed,
+     * then the time is found with the bisection method, as in CALC_START_OF_DECO_ZONE. Any other mix can rise again
+     * as the helium leaves before the nitrogen, and is left to the loop. The last compartment
+     * sets the stop time, which is rounded up to the steps of the loop, and the steps around it are checked with
+     * the test of the loop, Util.roundToTwoDecimals of the ceiling.
+     * The compartment pressures are not changed.
+     * @param Next_Stop
+     * @param First_Step the first step of the loop, up to a whole currentMinimumDecoStopDuration of run time
+     * @param Inspired_Nitrogen_Pressure
+     * @param Inspired_Helium_Pressure
+     * @return the stop time, as the loop returns it, or -1 if it can't be solved and the loop must step through the stop
+     */
+    private double solveStopTime(double Next_Stop, double First_Step, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure)
+    {
+        double Gradient_Factor = Currently_Max_Allowed_Gradient_Factor;
+        //the rounded ceiling is at Next_Stop or shallower when the ceiling is shallower than this
+        double Cleared_Ambient_Pressure = Next_Stop + 0.005 + currentDive.surfacePressure;
+        double Last_Time = 0.0;
+        for(int i=0; i<16; i++)
+        {
+            double Compartment_Time = compartmentStopTime(i, Cleared_Ambient_Pressure, Gradient_Factor, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure);
+            if(Compartment_Time < 0)
+            {
+                return -1.0;
+            }
+            Last_Time = Math.max(Last_Time, Compartment_Time);
+        }
+
+        int Steps = (int)Math.max(0.0, Math.ceil((Last_Time - First_Step)/currentMinimumDecoStopDuration));
+        while(!stopCleared(Next_Stop, stepTime(First_Step, Steps), Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure))
+        {
+            Steps++;
+            if(Steps >= budget.maxIterations)
+            {
+                return -1.0;
+            }
+        }
+        while(Steps > 0 && stopCleared(Next_Stop, stepTime(First_Step, Steps - 1), Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure))
+        {
+            Steps--;
+        }
+        return stepTime(First_Step, Steps);
+    }
+
+    /**
+     * @return the time when a compartment's tolerated ambient pressure is below Cleared_Ambient_Pressure, 0 if it is
+     * already, or -1 if it doesn't get there or may not only fall
+     */
+    private double compartmentStopTime(int i, double Cleared_Ambient_Pressure, double Gradient_Factor, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure)
+    {
+        double Initial_Nitrogen_Pressure = nitrogenCompartmentPressure[i];
+        double Initial_Helium_Pressure = heliumCompartmentPressure[i];
+        boolean Nitrogen_Only = Initial_Helium_Pressure == 0.0 && Inspired_Helium_Pressure == 0.0;
+        boolean Helium_Only = Initial_Nitrogen_Pressure == 0.0 && Inspired_Nitrogen_Pressure == 0.0;
+        if(Nitrogen_Only || Helium_Only)
+        {
+            //(P - a*GF)/(GF/b - GF + 1) = Cleared_Ambient_Pressure, solved for P
+            double Coefficient_A = Nitrogen_Only ? N2_a[i] : He_a[i];
+            double Coefficient_B = Nitrogen_Only ? N2_b[i] : He_b[i];
+            double Time_Constant = Nitrogen_Only ? kN2[i] : kHe[i];
+            double Initial_Pressure = Nitrogen_Only ? Initial_Nitrogen_Pressure : Initial_Helium_Pressure;
+            double Inspired_Pressure = Nitrogen_Only ? Inspired_Nitrogen_Pressure : Inspired_Helium_Pressure;
+            double Allowed_Pressure = Cleared_Ambient_Pressure*(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0) + Coefficient_A*Gradient_Factor;
+            if(Initial_Pressure <= Allowed_Pressure)
+            {
+                return 0.0;
+            }
+            if(Inspired_Pressure >= Allowed_Pressure)
+            {
+                return -1.0;
+            }
+            //P(t) = Pi + (P0 - Pi)e^-kt
+            return Math.log((Initial_Pressure - Inspired_Pressure)/(Allowed_Pressure - Inspired_Pressure))/Time_Constant;
+        }
+        if(Initial_Helium_Pressure*Inspired_Nitrogen_Pressure != Initial_Nitrogen_Pressure*Inspired_Helium_Pressure)
+        {
+            //not the ratio of the gas breathed, the walk from the solved time assumes the ceiling only falls
+            return -1.0;
+        }
+
+        if(loadingOverCleared(i, 0.0, Cleared_Ambient_Pressure, Gradient_Factor, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure) <= 0.0)
+        {
+            return 0.0;
+        }
+        //find a time where the compartment is below, then bisect between 0 and it
+        double High_Bound = currentMinimumDecoStopDuration;
+        while(loadingOverCleared(i, High_Bound, Cleared_Ambient_Pressure, Gradient_Factor, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure) > 0.0)
+        {
+            High_Bound *= 2.0;
+            if(High_Bound > (double)budget.maxIterations*currentMinimumDecoStopDuration)
+            {
+                return -1.0;
+            }
+        }
+        double Low_Bound = 0.0;
+        for(int j=1; j<=budget.maxRootFinderIterations && High_Bound - Low_Bound >= 0.001; j++)
+        {
+            double Mid_Range_Time = (Low_Bound + High_Bound)*0.5;
+            if(loadingOverCleared(i, Mid_Range_Time, Cleared_Ambient_Pressure, Gradient_Factor, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure) > 0.0)
+            {
+                Low_Bound = Mid_Range_Time;
+            }
+            else
+            {
+                High_Bound = Mid_Range_Time;
+            }
+        }
+        return High_Bound;
+    }
+
+    /**
+     * @return how much the gas loading of a compartment after Segment_Time at the stop is over what it may be for the
+     * tolerated ambient pressure to be Cleared_Ambient_Pressure, negative when it is under
+     */
+    private double loadingOverCleared(int i, double Segment_Time, double Cleared_Ambient_Pressure, double Gradient_Factor, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure)
+    {
+        double PHe = haldaneEquation(heliumCompartmentPressure[i], Inspired_Helium_Pressure, kHe[i], Segment_Time);
+        double PN2 = haldaneEquation(nitrogenCompartmentPressure[i], Inspired_Nitrogen_Pressure, kN2[i], Segment_Time);
+        double inertGasPressure = PHe + PN2;
+        double Coefficient_A = (PHe*He_a[i] + PN2*N2_a[i])/ inertGasPressure;
+        double Coefficient_B = (PHe*He_b[i] + PN2*N2_b[i])/ inertGasPressure;
+        return inertGasPressure - Coefficient_A*Gradient_Factor - Cleared_Ambient_Pressure*(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0);
+    }
+
+    /**
+     * @return the stop time after the first step and a number of steps, added up as the loop does it
+     */
+    private double stepTime(double First_Step, int Steps)
+    {
+        double Stop_Time = First_Step;
+        for(int step=0; step<Steps; step++)
+        {
+            Stop_Time += currentMinimumDecoStopDuration;
+        }
+        return Stop_Time;
+    }
+
+    /**
+     * The test of the loop in DECOMPRESSION_STOP, with the tissues after Segment_Time at the stop.
+     * @return true if the rounded ceiling is at Next_Stop or shallower
+     */
+    private boolean stopCleared(double Next_Stop, double Segment_Time, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure)
+    {
+        for(int i=0; i<16; i++)
+        {
+            solvedHeliumPressure[i] = haldaneEquation(heliumCompartmentPressure[i], Inspired_Helium_Pressure, kHe[i], Segment_Time);
+            solvedNitrogenPressure[i] = haldaneEquation(nitrogenCompartmentPressure[i], Inspired_Nitrogen_Pressure, kN2[i], Segment_Time);
+        }
+        double Deco_Ceiling_Depth = leadingCeiling.toleratedAmbientPressure(solvedNitrogenPressure, solvedHeliumPressure, Currently_Max_Allowed_Gradient_Factor) - currentDive.surfacePressure;
+        return Util.roundToTwoDecimals(Deco_Ceiling_Depth) <= Next_Stop;
+    }
+    
+    // Debug logging methods
+    private void logDebugSettings() {
+        if (!debugEnabled || debugLog == null) return;
+        
+        debugLog.println("=== SETTINGS ===");
+        debugLog.println("Metric: " + config.metric);
+        debugLog.println("Model: " + config.buhlmannModel.getName());
+        debugLog.println("Descent Rate: " + config.descentRate + " m/min");
+        debugLog.println("Ascent Rate: " + config.ascentRate + " m/min");
+        debugLog.println("Deco Stop Interval: " + config.decoStopInterval + " m");
+        debugLog.println("Last Stop 6m: " + config.lastStopDoubleInterval);
+        debugLog.println("Gradient Factor Low: " + (config.gradientFactorFirstStop * 100) + "%");
+        debugLog.println("Gradient Factor High: " + (config.gradientFactorSurfacing * 100) + "%");
+        debugLog.println("Surface Pressure: " + config.surfacePressure + " msw");
+        debugLog.println("Water Vapor Pressure: " + config.waterVaporPressure + " msw");
+        debugLog.println("Minimum Deco Stop Time: " + config.Minimum_Deco_Stop_Time + " min");
+        debugLog.println();
+        
+        // Log gases
+        debugLog.println("=== GASES ===");
+        if (currentDive != null && currentDive.gases != null) {
+            for (int i = 0; i < currentDive.gases.size(); i++) {
+                Gas gas = currentDive.gases.get(i);
+                debugLog.printf("Gas %d: %s (O2=%.1f%%, He=%.1f%%, Type=%d, Switch=%dm)\n",
+                    i, gas.getGasText(), gas.oxygenFraction * 100, gas.heliumFraction * 100,
+                    gas.gasType, gas.switchDepth);
+            }
+        }
+        debugLog.println();
+    }
+    
+    private void logDebug(String message) {
+        if (!debugEnabled || debugLog == null) return;
+        debugLog.println("[" + timeFormat.format(new Date()) + "] " + message);
+        debugLog.flush();
+    }
+    
+    private void logTissues(String phase) {
+        if (!debugEnabled || debugLog == null) return;
+        
+        debugLog.println("=== TISSUE COMPARTMENTS (" + phase + ") ===");
+        debugLog.println("Runtime: " + currentDive.currentRunTime + " min, Depth: " + currentDive.currentDepth + "m");
+        debugLog.println("Comp#  N2_Press  He_Press  Total    N2_a     He_a     N2_b     He_b");
+        for (int i = 0; i < 16; i++) {
+            debugLog.printf("%2d    %8.4f  %8.4f  %8.4f  %7.4f  %7.4f  %7.4f  %7.4f\n",
+                i+1, nitrogenCompartmentPressure[i], heliumCompartmentPressure[i], 
+                nitrogenCompartmentPressure[i] + heliumCompartmentPressure[i],
+                N2_a[i], He_a[i], N2_b[i], He_b[i]);
+        }
+        debugLog.println();
+    }
+    
+    private void logSegment(DiveSegment segment) {
+        if (!debugEnabled || debugLog == null || segment == null) return;
+        
+        try {
+            debugLog.printf("SEGMENT: %s from %.1fm to %.1fm, Duration: %.2f min, Gas: O2=%.1f%% He=%.1f%%, Runtime: %.2f-%.2f\n",
+                segment.segmentType, segment.startDepth, segment.endDepth, segment.duration,
+                segment.oxygenFraction * 100, segment.heliumFraction * 100,
+                segment.startRunTime, segment.endRunTime);
+        } catch (Exception e) {
+            debugLog.println("Error logging segment: " + e.getMessage());
+        }
+    }
+    
+    private void logDecoStop(DecoTableSegment stop) {
+        if (!debugEnabled || debugLog == null || stop == null) return;
+        
+        try {
+            debugLog.printf("DECO STOP: %.0fm for %.1f min (Runtime: %.1f-%.1f)\n",
+                stop.getDepth(), stop.getDuration(),
+                stop.getStartRunTime(), stop.getEndRunTime());
+        } catch (Exception e) {
+            debugLog.println("Error logging deco stop: " + e.getMessage());
+        }
+    }
+    
+    private void closeDebugLog() {
+        if (debugLog != null) {
+            debugLog.println("=== END OF DEBUG LOG ===");
+            debugLog.close();
+            debugLog = null;
+        }
+    }
+}
\ No newline at end of file
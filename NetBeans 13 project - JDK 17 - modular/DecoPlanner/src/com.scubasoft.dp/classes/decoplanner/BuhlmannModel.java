@@ -0,0 +1,231 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+import java.util.List;
+
+/**
+ * The parameters of one ZH-L16 variant: half-times, a- and b-values, and everything BuhlmannEngine
+ * calculates from them once instead of for every plan. That is the time constants (in a DecoKernel) and the
+ * a-values scaled to msw and fsw.
+ *
+ * A model is immutable, so the same model can be used by any number of engines and threads, and a ZH-L16B plan
+ * and a ZH-L16C plan can run at the same time. A plan selects its model through PlannerConfig.buhlmannModel.
+ *
+ * ZHL16A, ZHL16B and ZHL16C are the models DecoPlanner knows by name. Variants, like the 4 minute first
+ * compartment of the original ZH-L16, are made with withCompartment.
+ */
+public final class BuhlmannModel implements CompartmentModel
+{
+    private static final double[] NITROGEN_HALF_TIMES = {5, 8, 12.5, 18.5, 27, 38.3, 54.3, 77, 109, 146, 187, 239, 305, 390, 498, 635}; //4 and 306 minutes are the standard ones for compartment 1 and 13
+    private static final double[] HELIUM_HALF_TIMES = {1.88, 3.02, 4.72, 6.99, 10.21, 14.48, 20.53, 29.11, 41.20, 55.19, 70.69, 90.34, 115.29, 147.42, 188.24, 240.03};
+
+    // a- and b-values in bar, compartment 1b (5 minutes) first
+    // a = intercept at zero ambient pressure
+    // b = reciprocal of slope of m-value line
+    private static final double[] N2_A_ZHL16A = {1.1696, 1.0, 0.8618, 0.7562, 0.6667, 0.5933, 0.5282, 0.4701, 0.4187, 0.3798, 0.3497, 0.3223, 0.2971, 0.2737, 0.2523, 0.2327};
+    private static final double[] N2_A_ZHL16B = {1.1696, 1.0, 0.8618, 0.7562, 0.6667, 0.56, 0.4947, 0.45, 0.4187, 0.3798, 0.3497, 0.3223, 0.285, 0.2737, 0.2523, 0.2327};
+    private static final double[] N2_A_ZHL16C = {1.1696, 1.0, 0.8618, 0.7562, 0.62, 0.5043, 0.441, 0.4, 0.375, 0.35, 0.3295, 0.3065, 0.2835, 0.261, 0.248, 0.2327};
+    private static final double[] N2_B = {0.5578, 0.6514, 0.7222, 0.7825, 0.8126, 0.8434, 0.8693, 0.891, 0.9092, 0.9222, 0.9319, 0.9403, 0.9477, 0.9544, 0.9602, 0.9653};
+    private static final double[] HE_A = {1.6189, 1.383, 1.1919, 1.0458, 0.922, 0.8205, 0.7305, 0.6502, 0.595, 0.5545, 0.5333, 0.5189, 0.5181, 0.5176, 0.5172, 0.5119};
+    private static final double[] HE_B = {0.477, 0.5747, 0.6527, 0.7223, 0.7582, 0.7957, 0.8279, 0.8553, 0.8757, 0.8903, 0.8997, 0.9073, 0.9122, 0.9171, 0.9217, 0.9267};
+
+    //msw and fsw per bar
+    private static final double METRIC_SCALE = 10;
+    private static final double IMPERIAL_SCALE = 32.5684678;
+
+    public static final BuhlmannModel ZHL16A = new BuhlmannModel("ZH-L16A", NITROGEN_HALF_TIMES, HELIUM_HALF_TIMES, N2_A_ZHL16A, N2_B, HE_A, HE_B);
+    public static final BuhlmannModel ZHL16B = new BuhlmannModel("ZH-L16B", NITROGEN_HALF_TIMES, HELIUM_HALF_TIMES, N2_A_ZHL16B, N2_B, HE_A, HE_B);
+    public static final BuhlmannModel ZHL16C = new BuhlmannModel("ZH-L16C", NITROGEN_HALF_TIMES, HELIUM_HALF_TIMES, N2_A_ZHL16C, N2_B, HE_A, HE_B);
+
+    private static final List<BuhlmannModel> REGISTRY = List.of(ZHL16A, ZHL16B, ZHL16C);
+
+    private final String name;
+    private final double[] nitrogenHalfTimes;
+    private final double[] heliumHalfTimes;
+    private final double[] N2_a_Bar;
+    private final double[] N2_b;
+    private final double[] He_a_Bar;
+    private final double[] He_b;
+
+    //calculated once for the model
+    private final DecoKernel kernel;
+    private final double[] N2_a_Metric;
+    private final double[] He_a_Metric;
+    private final double[] N2_a_Imperial;
+    private final double[] He_a_Imperial;
+
+    private BuhlmannModel(String name, double[] nitrogenHalfTimes, double[] heliumHalfTimes, double[] N2_a_Bar, double[] N2_b, double[] He_a_Bar, double[] He_b)
+    {
+        //the engines and Dive have room for 16 compartments
+        if(nitrogenHalfTimes.length != 16 || heliumHalfTimes.length != 16 || N2_a_Bar.length != 16 || N2_b.length != 16
+                || He_a_Bar.length != 16 || He_b.length != 16)
+        {
+            throw new IllegalArgumentException(name + " must have values for 16 compartments");
+        }
+        this.name = name;
+        this.nitrogenHalfTimes = nitrogenHalfTimes.clone();
+        this.heliumHalfTimes = heliumHalfTimes.clone();
+        this.N2_a_Bar = N2_a_Bar.clone();
+        this.N2_b = N2_b.clone();
+        this.He_a_Bar = He_a_Bar.clone();
+        this.He_b = He_b.clone();
+
+        kernel = new DecoKernel(this);
+        N2_a_Metric = scale(N2_a_Bar, METRIC_SCALE);
+        He_a_Metric = scale(He_a_Bar, METRIC_SCALE);
+        N2_a_Imperial = scale(N2_a_Bar, IMPERIAL_SCALE);
+        He_a_Imperial = scale(He_a_Bar, IMPERIAL_SCALE);
+    }
+
+    private static double[] scale(double[] values, double factor)
+    {
+        double[] scaled = new double[values.length];
+        for(int cpt=0; cpt<values.length; cpt++)
+        {
+            scaled[cpt] = values[cpt] * factor;
+        }
+        return scaled;
+    }
+
+    /**
+     * @return ZH-L16A, ZH-L16B and ZH-L16C
+     */
+    public static List<BuhlmannModel> getModels()
+    {
+        return REGISTRY;
+    }
+
+    /**
+     * @param name for example "ZH-L16C"
+     * @return the registered model with that name, or null if there is none
+     */
+    public static BuhlmannModel forName(String name)
+    {
+        for(BuhlmannModel model : REGISTRY)
+        {
+            if(model.name.equalsIgnoreCase(name))
+            {
+                return model;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param ZHL_C as in Settings.ZHL_C
+     * @return ZH-L16C or ZH-L16B
+     */
+    public static BuhlmannModel fromSettings(boolean ZHL_C)
+    {
+        return ZHL_C ? ZHL16C : ZHL16B;
+    }
+
+    /**
+     * A variant of this model with other values for one compartment, for example
+     * ZHL16C.withCompartment("ZH-L16C 4 min", 0, 4.0, 1.51, 1.2599, 0.5050, 1.7424, 0.4245)
+     * for the 4 minute first compartment.
+     * @param name of the new model
+     * @param compartment index, 0 to 15
+     * @param nitrogenHalfTime in minutes
+     * @param heliumHalfTime in minutes
+     * @param N2_a_Bar nitrogen a-value in bar
+     * @param N2_b nitrogen b-value
+     * @param He_a_Bar helium a-value in bar
+     * @param He_b helium b-value
+     * @return a new model, this model is not changed
+     */
+    public BuhlmannModel withCompartment(String name, int compartment, double nitrogenHalfTime, double heliumHalfTime, double N2_a_Bar, double N2_b, double He_a_Bar, double He_b)
+    {
+        double[] newNitrogenHalfTimes = nitrogenHalfTimes.clone();
+        double[] newHeliumHalfTimes = heliumHalfTimes.clone();
+        double[] newN2_a = this.N2_a_Bar.clone();
+        double[] newN2_b = this.N2_b.clone();
+        double[] newHe_a = this.He_a_Bar.clone();
+        double[] newHe_b = this.He_b.clone();
+        newNitrogenHalfTimes[compartment] = nitrogenHalfTime;
+        newHeliumHalfTimes[compartment] = heliumHalfTime;
+        newN2_a[compartment] = N2_a_Bar;
+        newN2_b[compartment] = N2_b;
+        newHe_a[compartment] = He_a_Bar;
+        newHe_b[compartment] = He_b;
+        return new BuhlmannModel(name, newNitrogenHalfTimes, newHeliumHalfTimes, newN2_a, newN2_b, newHe_a, newHe_b);
+    }
+
+    /**
+     * A model with all values given, for models that are not a variant of a registered one.
+     * The arrays must have 16 values each, and are copied.
+     * @return a new model
+     */
+    public static BuhlmannModel custom(String name, double[] nitrogenHalfTimes, double[] heliumHalfTimes, double[] N2_a_Bar, double[] N2_b, double[] He_a_Bar, double[] He_b)
+    {
+        return new BuhlmannModel(name, nitrogenHalfTimes, heliumHalfTimes, N2_a_Bar, N2_b, He_a_Bar, He_b);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public double[] getNitrogenHalfTimes()
+    {
+        return nitrogenHalfTimes.clone();
+    }
+
+    @Override
+    public double[] getHeliumHalfTimes()
+    {
+        return heliumHalfTimes.clone();
+    }
+
+    /**
+     * @return the gas loading calculations for this model's half-times. The kernel is immutable and shared.
+     */
+    public DecoKernel getKernel()
+    {
+        return kernel;
+    }
+
+    /**
+     * @param metric true for msw, false for fsw
+     * @return a copy of the nitrogen a-values in the given unit
+     */
+    public double[] getNitrogenA(boolean metric)
+    {
+        return (metric ? N2_a_Metric : N2_a_Imperial).clone();
+    }
+
+    /**
+     * @param metric true for msw, false for fsw
+     * @return a copy of the helium a-values in the given unit
+     */
+    public double[] getHeliumA(boolean metric)
+    {
+        return (metric ? He_a_Metric : He_a_Imperial).clone();
+    }
+
+    /**
+     * @return a copy of the nitrogen b-values
+     */
+    public double[] getNitrogenB()
+    {
+        return N2_b.clone();
+    }
+
+    /**
+     * @return a copy of the helium b-values
+     */
+    public double[] getHeliumB()
+    {
+        return He_b.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The 16 half-time compartments that a DecoKernel calculates gas loadings for.
+ *
+ * Only the half-times are part of the model, since that is all the tissue and oxygen
+ * calculations need. Model specific values are in the implementations, like the a- and
+ * b-values of a BuhlmannModel, or stay with the engine that uses them, like the VPM critical radii.
+ */
+public interface CompartmentModel
+{
+    /**
+     * @return the nitrogen half-times in minutes, one per compartment
+     */
+    double[] getNitrogenHalfTimes();
+
+    /**
+     * @return the helium half-times in minutes, one per compartment
+     */
+    double[] getHeliumHalfTimes();
+
+    /**
+     * @param nitrogenHalfTimes in minutes, copied
+     * @param heliumHalfTimes in minutes, copied
+     * @return a model with the given half-times
+     */
+    static CompartmentModel of(double[] nitrogenHalfTimes, double[] heliumHalfTimes)
+    {
+        if(nitrogenHalfTimes.length != heliumHalfTimes.length)
+        {
+            throw new IllegalArgumentException("Nitrogen and helium half-times must be given for the same compartments");
+        }
+        final double[] nitrogen = nitrogenHalfTimes.clone();
+        final double[] helium = heliumHalfTimes.clone();
+        return new CompartmentModel()
+        {
+            @Override
+            public double[] getNitrogenHalfTimes()
+            {
+                return nitrogen.clone();
+            }
+
+            @Override
+            public double[] getHeliumHalfTimes()
+            {
+                return helium.clone();
+            }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * Thrown by BuhlmannEngine and VPMEngine when a dive can't be calculated, or the calculation was stopped.
+ * The reason tells what happened, so a batch caller can handle each case, and the message is meant for the user.
+ */
+public class DecoCalculationException extends RuntimeException
+{
+    /** The first stop is deeper than where off-gassing starts. */
+    public static final int STEP_SIZE_TOO_LARGE = 1;
+    /** The inspired gas is too close to the allowed pressure at the next stop, so the diver can never leave this stop. */
+    public static final int OFF_GASSING_GRADIENT_TOO_SMALL = 2;
+    /** A loop ran more iterations than PlanBudget.maxIterations. */
+    public static final int ITERATION_LIMIT = 3;
+    /** The calculation took longer than PlanBudget.maxMillis. */
+    public static final int TIME_LIMIT = 4;
+    /** The thread running the calculation was interrupted. */
+    public static final int CANCELLED = 5;
+    /** A root search found no root within its bounds, or did not converge within PlanBudget.maxRootFinderIterations. */
+    public static final int ROOT_NOT_FOUND = 6;
+
+    public final int reason;
+
+    public DecoCalculationException(int reason, String message)
+    {
+        super(message);
+        this.reason = reason;
+    }
+}
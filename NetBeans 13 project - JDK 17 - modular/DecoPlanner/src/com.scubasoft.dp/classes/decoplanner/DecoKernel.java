@@ -0,0 +1,617 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The tissue calculations shared by BuhlmannEngine, VPMEngine and the alignment CLIs:
+ * the Schreiner and Haldane equations applied to all compartments, surface interval
+ * off-gassing and the Bühlmann and VPM deco ceilings.
+ *
+ * A kernel holds the time constants of one CompartmentModel and nothing else, so one
+ * instance can be shared by any number of threads. Compartment pressures are passed in
+ * and updated in place, and inspired pressures are calculated by the caller, so every
+ * caller keeps its own water vapor pressure and gas handling. The uptake factors of the fixed deco
+ * stop steps are cached in the kernel, see loadConstantDepthStep.
+ *
+ * The gas loadings, the Bühlmann and VPM ceilings and the per compartment VPM-B bubble calculations (nuclear
+ * regeneration, initial and critical volume gradients, surface phase volume time) can be done by an Accelerator
+ * instead of the scalar loops here.
+ * VectorDecoKernel, in src/com.scubasoft.dp/vector, is one that uses the incubating Vector API. It is not part
+ * of the normal build, see its class comment for how to compile it, and it is only used when the JVM is started
+ * with -Ddecoplanner.vectorKernel=true and the jdk.incubator.vector module. Otherwise, or if it can't be loaded,
+ * the scalar loops are used.
+ */
+public final class DecoKernel
+{
+    /**
+     * The calculations an accelerated kernel can take over, with the same arguments as the DecoKernel methods
+     * plus the time constants. The results don't have to be bit-for-bit the same as the scalar loops.
+     */
+    public interface Accelerator
+    {
+        void loadAscentDescent(double[] kN2, double[] kHe, double[] nitrogenPressures, double[] heliumPressures, double Initial_Inspired_N2_Pressure, double Nitrogen_Rate, double Initial_Inspired_He_Pressure, double Helium_Rate, double Segment_Time);
+
+        void loadConstantDepth(double[] kN2, double[] kHe, double[] nitrogenPressures, double[] heliumPressures, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure, double Segment_Time);
+
+        double buhlmannToleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double[] N2_a, double[] N2_b, double[] He_a, double[] He_b, double Gradient_Factor);
+
+        float buhlmannToleratedAmbientPressure(float[] nitrogenPressures, float[] heliumPressures, float[] N2_a, float[] N2_b, float[] He_a, float[] He_b, float Gradient_Factor);
+
+        double vpmToleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double[] Deco_Gradient_N2, double[] Deco_Gradient_He, double Constant_Pressure_Other_Gases);
+
+        void regenerateNuclei(double[] Max_Crushing_Pressure, double[] Adjusted_Critical_Radius, double[] Regenerated_Radius, double[] Adjusted_Crushing_Pressure, double Regeneration_Factor, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM);
+
+        void initialAllowableGradients(double[] Regenerated_Radius, double[] Initial_Allowable_Gradient, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM);
+
+        void criticalVolumeGradients(double[] Adjusted_Crushing_Pressure, double[] Initial_Allowable_Gradient, double[] Phase_Volume_Time, double[] Allowable_Gradient, double Parameter_Lambda_Pascals, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM);
+
+        void surfacePhaseVolumeTimes(double[] kN2, double[] kHe, double[] nitrogenPressures, double[] heliumPressures, double Surface_Inspired_N2_Pressure, double[] Surface_Phase_Volume_Time);
+    }
+
+    private static final Accelerator ACCELERATOR = loadAccelerator();
+
+    private final double[] kN2; // k = ln2 / half-time
+    private final double[] kHe;
+
+    //1 - e^-kt for the step lengths used so far, nitrogen compartments first, then helium
+    private final ConcurrentHashMap<Integer, double[]> stepUptakes = new ConcurrentHashMap<>();
+
+    //the decay of the minute by minute parts of offGasAtSurface, calculated the first time it is used
+    private volatile SurfaceDecay surfaceDecay;
+
+    /**
+     * The product of the per minute decay factors e^-(multiplier*k) of the first 45 minutes and of the 1 to 3 hour
+     * part of a surface interval, for each number of minutes, so a surface interval of any length is at most four
+     * Haldane steps. The slowed down elimination changes every minute, but the inspired pressure doesn't, so the
+     * minutes can be multiplied together.
+     */
+    private static final class SurfaceDecay
+    {
+        final double[][] firstMinutes = new double[46][]; //offGas1, nitrogen compartments first, then helium
+        final double[][] slowHours = new double[121][]; //offGas3
+
+        SurfaceDecay(double[] kN2, double[] kHe)
+        {
+            fill(firstMinutes, kN2, kHe, 0.9, -0.005555);
+            fill(slowHours, kN2, kHe, 0.65, 0.0020833);
+        }
+
+        //the loops in DecoPlanner include both the first and the last minute, so n minutes are n + 1 steps
+        private static void fill(double[][] table, double[] kN2, double[] kHe, double multiplier, double change)
+        {
+            int compartments = kN2.length;
+            double[] product = new double[2*compartments];
+            Arrays.fill(product, 1.0);
+            for(int vCount = 0; vCount < table.length; vCount++)
+            {
+                for(int i=0; i<compartments; i++)
+                {
+                    product[i] *= Math.exp(-(multiplier + change * vCount) * kN2[i]);
+                    product[compartments + i] *= Math.exp(-(multiplier + change * vCount) * kHe[i]);
+                }
+                table[vCount] = product.clone();
+            }
+        }
+    }
+
+    public DecoKernel(CompartmentModel model)
+    {
+        double[] nitrogenHalfTimes = model.getNitrogenHalfTimes();
+        double[] heliumHalfTimes = model.getHeliumHalfTimes();
+        kN2 = new double[nitrogenHalfTimes.length];
+        kHe = new double[heliumHalfTimes.length];
+        for(int cpt=0; cpt<kN2.length; cpt++)
+        {
+            kN2[cpt] = Math.log(2) / nitrogenHalfTimes[cpt];
+            kHe[cpt] = Math.log(2) / heliumHalfTimes[cpt];
+        }
+    }
+
+    private static Accelerator loadAccelerator()
+    {
+        if(!Boolean.getBoolean("decoplanner.vectorKernel") || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            return (Accelerator)Class.forName("decoplanner.VectorDecoKernel").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | LinkageError | ClassCastException e)
+        {
+            System.err.println("DecoKernel: VectorDecoKernel could not be loaded, using the scalar kernel. " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of the accelerator in use, or "scalar"
+     */
+    public static String getImplementation()
+    {
+        return ACCELERATOR == null ? "scalar" : ACCELERATOR.toString();
+    }
+
+    /**
+     * @return true if the calculations are done by an accelerator
+     */
+    static boolean isAccelerated()
+    {
+        return ACCELERATOR != null;
+    }
+
+    /**
+     * @return a copy of the nitrogen time constants, k = ln2 / half-time
+     */
+    public double[] getNitrogenTimeConstants()
+    {
+        return kN2.clone();
+    }
+
+    /**
+     * @return a copy of the helium time constants, k = ln2 / half-time
+     */
+    public double[] getHeliumTimeConstants()
+    {
+        return kHe.clone();
+    }
+
+    /**
+     * For ascents and descents at a constant rate. For ascents, a negative rate must be used.
+     */
+    public static double schreinerEquation(double Initial_Inspired_Gas_Pressure, double Rate_Change_Insp_Gas_Pressure, double Interval_Time, double Gas_Time_Constant, double Initial_Gas_Pressure)
+    {
+        // P = Pi0 + R(t - 1/k) - (Pi0 - P0 - (R/k))e^-kt
+        return Initial_Inspired_Gas_Pressure + Rate_Change_Insp_Gas_Pressure*(Interval_Time - 1.0/Gas_Time_Constant) - (Initial_Inspired_Gas_Pressure - Initial_Gas_Pressure - Rate_Change_Insp_Gas_Pressure/Gas_Time_Constant)*Math.exp(-Gas_Time_Constant*Interval_Time);
+    }
+
+    /**
+     * For intervals at constant depth, where the inspired gas pressure does not change.
+     */
+    public static double haldaneEquation(double Initial_Compartment_Pressure, double Inspired_Gas_Pressure, double Time_Constant, double Segment_Time)
+    {
+        // Pt (t) = Palv0 + (Pt0 − Palv0)e^−kt
+        return Initial_Compartment_Pressure + (Inspired_Gas_Pressure - Initial_Compartment_Pressure)*(1.0 - Math.exp(-Time_Constant*Segment_Time));
+    }
+
+    /**
+     * GAS_LOADINGS_ASCENT_DESCENT: the Schreiner equation for all compartments.
+     * @param Initial_Inspired_N2_Pressure at the start of the segment
+     * @param Nitrogen_Rate change of inspired nitrogen pressure per minute, negative on ascent
+     * @param Initial_Inspired_He_Pressure at the start of the segment
+     * @param Helium_Rate change of inspired helium pressure per minute, negative on ascent
+     */
+    public void loadAscentDescent(double[] nitrogenPressures, double[] heliumPressures, double Initial_Inspired_N2_Pressure, double Nitrogen_Rate, double Initial_Inspired_He_Pressure, double Helium_Rate, double Segment_Time)
+    {
+        if(ACCELERATOR != null)
+        {
+            ACCELERATOR.loadAscentDescent(kN2, kHe, nitrogenPressures, heliumPressures, Initial_Inspired_N2_Pressure, Nitrogen_Rate, Initial_Inspired_He_Pressure, Helium_Rate, Segment_Time);
+            return;
+        }
+        for(int i=0; i<kN2.length; i++)
+        {
+            heliumPressures[i] = schreinerEquation(Initial_Inspired_He_Pressure, Helium_Rate, Segment_Time, kHe[i], heliumPressures[i]);
+            nitrogenPressures[i] = schreinerEquation(Initial_Inspired_N2_Pressure, Nitrogen_Rate, Segment_Time, kN2[i], nitrogenPressures[i]);
+        }
+    }
+
+    /**
+     * GAS_LOADINGS_CONSTANT_DEPTH: the Haldane equation for all compartments.
+     */
+    public void loadConstantDepth(double[] nitrogenPressures, double[] heliumPressures, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure, double Segment_Time)
+    {
+        if(ACCELERATOR != null)
+        {
+            ACCELERATOR.loadConstantDepth(kN2, kHe, nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, Inspired_Helium_Pressure, Segment_Time);
+            return;
+        }
+        for(int i=0; i<kN2.length; i++)
+        {
+            heliumPressures[i] = haldaneEquation(heliumPressures[i], Inspired_Helium_Pressure, kHe[i], Segment_Time);
+            nitrogenPressures[i] = haldaneEquation(nitrogenPressures[i], Inspired_Nitrogen_Pressure, kN2[i], Segment_Time);
+        }
+    }
+
+    /**
+     * GAS_LOADINGS_CONSTANT_DEPTH for a step of whole minutes, like the minimum deco stop time. The same as
+     * loadConstantDepth with that Segment_Time, but 1 - e^-kt is only calculated the first time a step length is
+     * used, so the steps of a deco stop are multiply-adds.
+     * @param Step_Time in minutes
+     */
+    public void loadConstantDepthStep(double[] nitrogenPressures, double[] heliumPressures, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure, int Step_Time)
+    {
+        double[] uptake = stepUptakes.get(Step_Time);
+        if(uptake == null) //only the first time, the method reference is an allocation on every call
+        {
+            uptake = stepUptakes.computeIfAbsent(Step_Time, this::calculateStepUptake);
+        }
+        int compartments = kN2.length;
+        for(int i=0; i<compartments; i++)
+        {
+            heliumPressures[i] = heliumPressures[i] + (Inspired_Helium_Pressure - heliumPressures[i])*uptake[compartments + i];
+            nitrogenPressures[i] = nitrogenPressures[i] + (Inspired_Nitrogen_Pressure - nitrogenPressures[i])*uptake[i];
+        }
+    }
+
+    private double[] calculateStepUptake(int Step_Time)
+    {
+        double[] uptake = new double[kN2.length + kHe.length];
+        for(int i=0; i<kN2.length; i++)
+        {
+            uptake[i] = 1.0 - Math.exp(-kN2[i]*Step_Time);
+            uptake[kN2.length + i] = 1.0 - Math.exp(-kHe[i]*Step_Time);
+        }
+        return uptake;
+    }
+
+    /**
+     * GAS_LOADINGS_ASCENT_DESCENT on a closed circuit loop at a constant pO2 setpoint. The inspired inert gas
+     * pressure is the ambient pressure minus water vapor and setpoint, so it changes at the ascent or descent rate
+     * like on open circuit, and the Schreiner equation is still exact. Shallower than where the loop can hold the
+     * setpoint there is no inert gas to breathe, so a segment that crosses that depth is loaded in two parts.
+     * @param Initial_Inspired_Inert_Pressure ambient pressure - water vapor - setpoint at the start of the segment, negative if the setpoint can't be held there
+     * @param Rate change of ambient pressure per minute, negative on ascent
+     * @param Nitrogen_Share part of the inert gas that is nitrogen, N2/(N2 + He) of the diluent
+     * @param Helium_Share part of the inert gas that is helium
+     */
+    public void loadClosedCircuitAscentDescent(double[] nitrogenPressures, double[] heliumPressures, double Initial_Inspired_Inert_Pressure, double Rate, double Nitrogen_Share, double Helium_Share, double Segment_Time)
+    {
+        double Final_Inspired_Inert_Pressure = Initial_Inspired_Inert_Pressure + Rate*Segment_Time;
+        if(Initial_Inspired_Inert_Pressure >= 0.0 && Final_Inspired_Inert_Pressure >= 0.0)
+        {
+            loadAscentDescent(nitrogenPressures, heliumPressures, Initial_Inspired_Inert_Pressure*Nitrogen_Share, Rate*Nitrogen_Share,
+                    Initial_Inspired_Inert_Pressure*Helium_Share, Rate*Helium_Share, Segment_Time);
+        }
+        else if(Initial_Inspired_Inert_Pressure <= 0.0 && Final_Inspired_Inert_Pressure <= 0.0)
+        {
+            loadConstantDepth(nitrogenPressures, heliumPressures, 0.0, 0.0, Segment_Time);
+        }
+        else
+        {
+            //the time where the inspired inert gas pressure is zero
+            double Crossing_Time = -Initial_Inspired_Inert_Pressure/Rate;
+            if(Initial_Inspired_Inert_Pressure > 0.0)
+            {
+                loadAscentDescent(nitrogenPressures, heliumPressures, Initial_Inspired_Inert_Pressure*Nitrogen_Share, Rate*Nitrogen_Share,
+                        Initial_Inspired_Inert_Pressure*Helium_Share, Rate*Helium_Share, Crossing_Time);
+                loadConstantDepth(nitrogenPressures, heliumPressures, 0.0, 0.0, Segment_Time - Crossing_Time);
+            }
+            else
+            {
+                loadConstantDepth(nitrogenPressures, heliumPressures, 0.0, 0.0, Crossing_Time);
+                loadAscentDescent(nitrogenPressures, heliumPressures, 0.0, Rate*Nitrogen_Share, 0.0, Rate*Helium_Share, Segment_Time - Crossing_Time);
+            }
+        }
+    }
+
+    /**
+     * GAS_LOADINGS_ASCENT_DESCENT for a breathing loop where the inspired inert gas pressure is not linear in depth,
+     * like a passive semi-closed rebreather. The segment is loaded in steps, each with the Schreiner equation for the
+     * straight line between the inspired pressures at its ends. A step is accepted when the inspired pressure in the
+     * middle of it is within Tolerance of that line. Since a compartment can't move further from the exact result
+     * than its inspired pressure does, that is also about how far off the compartments can be, for the whole segment.
+     * The step is doubled after an accepted step that was well within Tolerance and halved when a step is
+     * rejected, so the parts where the inspired pressure is nearly linear take few steps.
+     * @param Inspired_Inert_Pressure inspired helium + nitrogen pressure for an ambient pressure, never below 0
+     * @param Rate change of ambient pressure per minute, negative on ascent
+     * @param Nitrogen_Share part of the inert gas that is nitrogen
+     * @param Helium_Share part of the inert gas that is helium
+     * @param Tolerance largest accepted error in the inspired pressure, in the units of the ambient pressure
+     * @return the number of steps used
+     */
+    public int loadVaryingAscentDescent(double[] nitrogenPressures, double[] heliumPressures, DoubleUnaryOperator Inspired_Inert_Pressure, double Starting_Ambient_Pressure, double Rate, double Nitrogen_Share, double Helium_Share, double Segment_Time, double Tolerance)
+    {
+        //a step is never shorter than this, in minutes, so a kink in the inspired pressure can't make the steps endless
+        final double Minimum_Step = Segment_Time/65536.0;
+        double Elapsed_Time = 0.0;
+        double Step = Segment_Time;
+        double Ambient_Pressure = Starting_Ambient_Pressure;
+        double Initial_Inspired_Pressure = Inspired_Inert_Pressure.applyAsDouble(Ambient_Pressure);
+        int steps = 0;
+        while(Elapsed_Time < Segment_Time)
+        {
+            double Interval_Time = Math.min(Step, Segment_Time - Elapsed_Time);
+            double Final_Inspired_Pressure = Inspired_Inert_Pressure.applyAsDouble(Ambient_Pressure + Rate*Interval_Time);
+            double Midpoint_Inspired_Pressure = Inspired_Inert_Pressure.applyAsDouble(Ambient_Pressure + Rate*Interval_Time*0.5);
+            double Error = Math.abs(Midpoint_Inspired_Pressure - (Initial_Inspired_Pressure + Final_Inspired_Pressure)*0.5);
+            if(Error > Tolerance && Interval_Time > Minimum_Step)
+            {
+                Step = Interval_Time*0.5;
+                continue;
+            }
+            double Inspired_Rate = (Final_Inspired_Pressure - Initial_Inspired_Pressure)/Interval_Time;
+            loadAscentDescent(nitrogenPressures, heliumPressures, Initial_Inspired_Pressure*Nitrogen_Share, Inspired_Rate*Nitrogen_Share,
+                    Initial_Inspired_Pressure*Helium_Share, Inspired_Rate*Helium_Share, Interval_Time);
+            steps++;
+            Elapsed_Time += Interval_Time;
+            Ambient_Pressure += Rate*Interval_Time;
+            Initial_Inspired_Pressure = Final_Inspired_Pressure;
+            if(Error < Tolerance*0.25)
+            {
+                Step = Interval_Time*2.0;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Off-gassing at the surface, breathing air, with the slowed down elimination that
+     * DecoPlanner uses for the first three hours of a surface interval.
+     * @param Inspired_Nitrogen_Pressure of air at the surface
+     * @param minutes length of the surface interval
+     */
+    public void offGasAtSurface(double[] nitrogenPressures, double[] heliumPressures, double Inspired_Nitrogen_Pressure, int minutes)
+    {
+        if(minutes <= 45)
+        {
+            offGas1(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, minutes);
+        }
+        else if(minutes > 45 && minutes <= 60)
+        {
+            offGas1(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, 45);
+            offGas2(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, minutes - 45);
+        }
+        else if(minutes > 60 && minutes <= 180)
+        {
+            offGas1(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, 45);
+            offGas2(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, 15);
+            offGas3(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, minutes - 60);
+        }
+        else
+        {
+            offGas1(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, 45);
+            offGas2(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, 15);
+            offGas3(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, 120);
+            offGas4(nitrogenPressures, heliumPressures, Inspired_Nitrogen_Pressure, minutes - 180);
+        }
+    }
+
+    //the first 45 minutes, elimination going from 90% down to 65% of normal, one minute at a time
+    private void offGas1(double[] nitrogenPressures, double[] heliumPressures, double vInspN2, int pTime)
+    {
+        if(pTime >= 0)
+        {
+            offGasMinutes(getSurfaceDecay().firstMinutes[pTime], nitrogenPressures, heliumPressures, vInspN2);
+        }
+    }
+
+    //45 to 60 minutes, at 65%
+    private void offGas2(double[] nitrogenPressures, double[] heliumPressures, double vInspN2, int pTime)
+    {
+        for(int vLoop = 0; vLoop<kN2.length; vLoop++)
+        {
+            nitrogenPressures[vLoop] = haldaneEquation(nitrogenPressures[vLoop], vInspN2, 0.65 * kN2[vLoop], pTime);
+            heliumPressures[vLoop] = haldaneEquation(heliumPressures[vLoop], 0, 0.65 * kHe[vLoop], pTime);
+        }
+    }
+
+    //1 to 3 hours, going back up from 65% to 90%, one minute at a time
+    private void offGas3(double[] nitrogenPressures, double[] heliumPressures, double vInspN2, int pTime)
+    {
+        offGasMinutes(getSurfaceDecay().slowHours[pTime], nitrogenPressures, heliumPressures, vInspN2);
+    }
+
+    //all the minutes in one Haldane step, P = Pi + (P0 - Pi) * product of the minutes' decay factors
+    private void offGasMinutes(double[] decay, double[] nitrogenPressures, double[] heliumPressures, double vInspN2)
+    {
+        for(int vLoop = 0; vLoop<kN2.length; vLoop++)
+        {
+            nitrogenPressures[vLoop] = nitrogenPressures[vLoop] + (vInspN2 - nitrogenPressures[vLoop])*(1.0 - decay[vLoop]);
+            heliumPressures[vLoop] = heliumPressures[vLoop] + (0 - heliumPressures[vLoop])*(1.0 - decay[kN2.length + vLoop]);
+        }
+    }
+
+    private SurfaceDecay getSurfaceDecay()
+    {
+        SurfaceDecay decay = surfaceDecay;
+        if(decay == null)
+        {
+            //two threads may both calculate it, they get the same values
+            decay = new SurfaceDecay(kN2, kHe);
+            surfaceDecay = decay;
+        }
+        return decay;
+    }
+
+    //after 3 hours, at 90%
+    private void offGas4(double[] nitrogenPressures, double[] heliumPressures, double vInspN2, int pTime)
+    {
+        for(int vLoop = 0; vLoop<kN2.length; vLoop++)
+        {
+            nitrogenPressures[vLoop] = haldaneEquation(nitrogenPressures[vLoop], vInspN2, 0.9 * kN2[vLoop], pTime);
+            heliumPressures[vLoop] = haldaneEquation(heliumPressures[vLoop], 0, 0.9 * kHe[vLoop], pTime);
+        }
+    }
+
+    /**
+     * The Bühlmann part of CALC_DECO_CEILING: the M-values modified by a gradient factor.
+     * The deco ceiling depth is the returned pressure minus the surface pressure, and it can
+     * be negative. That is needed to decompress to the last stop at zero depth.
+     * @return the highest tolerated ambient pressure across all compartments, never below zero
+     */
+    public static double buhlmannToleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double[] N2_a, double[] N2_b, double[] He_a, double[] He_b, double Gradient_Factor)
+    {
+        if(ACCELERATOR != null)
+        {
+            return ACCELERATOR.buhlmannToleratedAmbientPressure(nitrogenPressures, heliumPressures, N2_a, N2_b, He_a, He_b, Gradient_Factor);
+        }
+        double highest = 0.0;
+        for(int cpt=0; cpt<nitrogenPressures.length; cpt++)
+        {
+            double PHe = heliumPressures[cpt];
+            double PN2 = nitrogenPressures[cpt];
+            double inertGasPressure = PHe + PN2;
+            double Coefficient_A = (PHe*He_a[cpt] + PN2*N2_a[cpt])/ inertGasPressure;
+            double Coefficient_B = (PHe*He_b[cpt] + PN2*N2_b[cpt])/ inertGasPressure;
+            //mValue = (ambientPressure / b) + a, solved for the ambient pressure at the gradient factor
+            double Tolerated_Ambient_Pressure = (inertGasPressure - Coefficient_A*Gradient_Factor)/(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0);
+            //a tolerated ambient pressure below zero is the same as zero
+            highest = Math.max(highest, Tolerated_Ambient_Pressure);
+        }
+        return highest;
+    }
+
+    /**
+     * buhlmannToleratedAmbientPressure in float, for the float schedules of TableBatch.
+     * @return the highest tolerated ambient pressure across all compartments, never below zero
+     */
+    public static float buhlmannToleratedAmbientPressure(float[] nitrogenPressures, float[] heliumPressures, float[] N2_a, float[] N2_b, float[] He_a, float[] He_b, float Gradient_Factor)
+    {
+        if(ACCELERATOR != null)
+        {
+            return ACCELERATOR.buhlmannToleratedAmbientPressure(nitrogenPressures, heliumPressures, N2_a, N2_b, He_a, He_b, Gradient_Factor);
+        }
+        float highest = 0.0f;
+        for(int cpt=0; cpt<nitrogenPressures.length; cpt++)
+        {
+            float PHe = heliumPressures[cpt];
+            float PN2 = nitrogenPressures[cpt];
+            float inertGasPressure = PHe + PN2;
+            float Coefficient_A = (PHe*He_a[cpt] + PN2*N2_a[cpt])/ inertGasPressure;
+            float Coefficient_B = (PHe*He_b[cpt] + PN2*N2_b[cpt])/ inertGasPressure;
+            float Tolerated_Ambient_Pressure = (inertGasPressure - Coefficient_A*Gradient_Factor)/(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0f);
+            highest = Math.max(highest, Tolerated_Ambient_Pressure);
+        }
+        return highest;
+    }
+
+    /**
+     * The VPM part of CALC_DECO_CEILING: the deco gradients weighted by the helium and
+     * nitrogen in each compartment. An empty compartment, after long oxygen breathing,
+     * uses the smaller of the two gradients. The deco ceiling depth is the returned pressure
+     * minus the surface pressure.
+     * @return the highest tolerated ambient pressure across all compartments, never below zero
+     */
+    public static double vpmToleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double[] Deco_Gradient_N2, double[] Deco_Gradient_He, double Constant_Pressure_Other_Gases)
+    {
+        if(ACCELERATOR != null)
+        {
+            return ACCELERATOR.vpmToleratedAmbientPressure(nitrogenPressures, heliumPressures, Deco_Gradient_N2, Deco_Gradient_He, Constant_Pressure_Other_Gases);
+        }
+        double highest = 0.0;
+        for(int i=0; i<nitrogenPressures.length; i++)
+        {
+            double Gas_Loading = heliumPressures[i] + nitrogenPressures[i];
+            double Tolerated_Ambient_Pressure;
+            if(Gas_Loading > 0.0)
+            {
+                double Weighted_Allowable_Gradient = (Deco_Gradient_He[i]* heliumPressures[i] + Deco_Gradient_N2[i]* nitrogenPressures[i]) / Gas_Loading;
+                Tolerated_Ambient_Pressure = (Gas_Loading + Constant_Pressure_Other_Gases) - Weighted_Allowable_Gradient;
+            }
+            else
+            {
+                Tolerated_Ambient_Pressure = Constant_Pressure_Other_Gases - Math.min(Deco_Gradient_He[i], Deco_Gradient_N2[i]);
+            }
+            highest = Math.max(highest, Tolerated_Ambient_Pressure);
+        }
+        return highest;
+    }
+
+    /**
+     * NUCLEAR_REGENERATION for one gas: the radius each nucleus is crushed to, how far it has grown back over the
+     * dive time, and the crushing pressure that would have given the regenerated radius without regeneration.
+     * @param Max_Crushing_Pressure in the diving pressure units
+     * @param Adjusted_Critical_Radius in meters
+     * @param Regenerated_Radius output, in meters
+     * @param Adjusted_Crushing_Pressure output, in the diving pressure units
+     * @param Regeneration_Factor e^(-dive time / regeneration time constant)
+     */
+    public static void regenerateNuclei(double[] Max_Crushing_Pressure, double[] Adjusted_Critical_Radius, double[] Regenerated_Radius, double[] Adjusted_Crushing_Pressure, double Regeneration_Factor, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM)
+    {
+        if(ACCELERATOR != null)
+        {
+            ACCELERATOR.regenerateNuclei(Max_Crushing_Pressure, Adjusted_Critical_Radius, Regenerated_Radius, Adjusted_Crushing_Pressure, Regeneration_Factor, Surface_Tension_Gamma, Skin_Compression_GammaC, Depth_Per_ATM);
+            return;
+        }
+        for(int i=0; i<Max_Crushing_Pressure.length; i++)
+        {
+            double Crushing_Pressure_Pascals = (Max_Crushing_Pressure[i]/Depth_Per_ATM) * 101325.0;
+            double Ending_Radius = 1.0/(Crushing_Pressure_Pascals/(2.0*(Skin_Compression_GammaC - Surface_Tension_Gamma)) + 1.0/Adjusted_Critical_Radius[i]);
+            Regenerated_Radius[i] = Adjusted_Critical_Radius[i] + (Ending_Radius - Adjusted_Critical_Radius[i]) * Regeneration_Factor;
+            double Crush_Pressure_Adjust_Ratio = (Ending_Radius*(Adjusted_Critical_Radius[i] - Regenerated_Radius[i])) / (Regenerated_Radius[i] * (Adjusted_Critical_Radius[i] - Ending_Radius));
+            double Adj_Crush_Pressure_Pascals = Crushing_Pressure_Pascals * Crush_Pressure_Adjust_Ratio;
+            Adjusted_Crushing_Pressure[i] = (Adj_Crush_Pressure_Pascals / 101325.0) * Depth_Per_ATM;
+        }
+    }
+
+    /**
+     * CALC_INITIAL_ALLOWABLE_GRADIENT for one gas, from the regenerated radii.
+     * @param Regenerated_Radius in meters
+     * @param Initial_Allowable_Gradient output, in the diving pressure units
+     */
+    public static void initialAllowableGradients(double[] Regenerated_Radius, double[] Initial_Allowable_Gradient, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM)
+    {
+        if(ACCELERATOR != null)
+        {
+            ACCELERATOR.initialAllowableGradients(Regenerated_Radius, Initial_Allowable_Gradient, Surface_Tension_Gamma, Skin_Compression_GammaC, Depth_Per_ATM);
+            return;
+        }
+        for(int i=0; i<Regenerated_Radius.length; i++)
+        {
+            double Initial_Allowable_Grad_Pa = ((2.0*Surface_Tension_Gamma*(Skin_Compression_GammaC - Surface_Tension_Gamma)) / (Regenerated_Radius[i]*Skin_Compression_GammaC));
+            Initial_Allowable_Gradient[i] = (Initial_Allowable_Grad_Pa / 101325.0) * Depth_Per_ATM;
+        }
+    }
+
+    /**
+     * The quadratic of CRITICAL_VOLUME for one gas: the gradients relaxed by the critical volume algorithm.
+     * @param Phase_Volume_Time deco plus surface phase volume time of each compartment, in minutes
+     * @param Allowable_Gradient output, in the diving pressure units
+     * @param Parameter_Lambda_Pascals lambda in Pascal minutes
+     */
+    public static void criticalVolumeGradients(double[] Adjusted_Crushing_Pressure, double[] Initial_Allowable_Gradient, double[] Phase_Volume_Time, double[] Allowable_Gradient, double Parameter_Lambda_Pascals, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM)
+    {
+        if(ACCELERATOR != null)
+        {
+            ACCELERATOR.criticalVolumeGradients(Adjusted_Crushing_Pressure, Initial_Allowable_Gradient, Phase_Volume_Time, Allowable_Gradient, Parameter_Lambda_Pascals, Surface_Tension_Gamma, Skin_Compression_GammaC, Depth_Per_ATM);
+            return;
+        }
+        for(int i=0; i<Adjusted_Crushing_Pressure.length; i++)
+        {
+            double Adj_Crush_Pressure_Pascals = (Adjusted_Crushing_Pressure[i]/Depth_Per_ATM) * 101325.0;
+            double Initial_Allowable_Grad_Pa = (Initial_Allowable_Gradient[i]/Depth_Per_ATM) * 101325.0;
+            double B = Initial_Allowable_Grad_Pa + (Parameter_Lambda_Pascals*Surface_Tension_Gamma)/ (Skin_Compression_GammaC*Phase_Volume_Time[i]);
+            double C = (Surface_Tension_Gamma*(Surface_Tension_Gamma*(Parameter_Lambda_Pascals*Adj_Crush_Pressure_Pascals)))/(Skin_Compression_GammaC*(Skin_Compression_GammaC*Phase_Volume_Time[i]));
+            double New_Allowable_Grad_Pascals = (B + Math.sqrt(Math.pow(B,2) - 4.0*C))/2.0;
+            Allowable_Gradient[i] = (New_Allowable_Grad_Pascals/101325.0)*Depth_Per_ATM;
+        }
+    }
+
+    /**
+     * CALC_SURFACE_PHASE_VOLUME_TIME: the integral of the supersaturation gradient over the surface interval,
+     * breathing air, divided by the gradient at surfacing.
+     * @param Surface_Inspired_N2_Pressure of air at the surface
+     * @param Surface_Phase_Volume_Time output, in minutes
+     */
+    public void surfacePhaseVolumeTimes(double[] nitrogenPressures, double[] heliumPressures, double Surface_Inspired_N2_Pressure, double[] Surface_Phase_Volume_Time)
+    {
+        if(ACCELERATOR != null)
+        {
+            ACCELERATOR.surfacePhaseVolumeTimes(kN2, kHe, nitrogenPressures, heliumPressures, Surface_Inspired_N2_Pressure, Surface_Phase_Volume_Time);
+            return;
+        }
+        for(int i=0; i<kN2.length; i++)
+        {
+            if(nitrogenPressures[i] > Surface_Inspired_N2_Pressure)
+            {
+                Surface_Phase_Volume_Time[i] = (heliumPressures[i]/kHe[i] + (nitrogenPressures[i]-Surface_Inspired_N2_Pressure) / kN2[i]) /(heliumPressures[i] + nitrogenPressures[i] - Surface_Inspired_N2_Pressure);
+            }
+            else if((nitrogenPressures[i] <= Surface_Inspired_N2_Pressure) && (heliumPressures[i]+nitrogenPressures[i] >= Surface_Inspired_N2_Pressure))
+            {
+                double Decay_Time_to_Zero_Gradient = 1.0/(kN2[i]-kHe[i]) * Math.log((Surface_Inspired_N2_Pressure - nitrogenPressures[i])/heliumPressures[i]);
+                double Integral_Gradient_x_Time = heliumPressures[i]/kHe[i]*(1.0-Math.exp(-kHe[i]*Decay_Time_to_Zero_Gradient))+(nitrogenPressures[i]-Surface_Inspired_N2_Pressure)/kN2[i]*(1.0-Math.exp(-kN2[i]*Decay_Time_to_Zero_Gradient));
+                Surface_Phase_Volume_Time[i] = Integral_Gradient_x_Time/(heliumPressures[i] + nitrogenPressures[i] - Surface_Inspired_N2_Pressure);
+            }
+            else
+            {
+                Surface_Phase_Volume_Time[i] = 0.0;
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The root search of CALC_START_OF_DECO_ZONE: for one compartment, the time into an ascent at a constant rate
+ * when the gas tension equals the ambient pressure. Used by both engines.
+ *
+ * The engines bisected the whole ascent down to 0.001 minutes, with two Schreiner equations per halving. Here the
+ * root is found with Newton's method on the derivative of the Schreiner equation, kept inside a bracket that is
+ * bisected when a step would leave it. The halvings of the bisection are then replayed against that root, so the
+ * same time as before comes out. The function is only evaluated for a halving that lands within ROOT_WINDOW of the
+ * root, where the side of the root can't be told from the position alone.
+ * The replay takes the tension to cross the ambient pressure once during the ascent. That is only sure when the
+ * compartment and the gas breathed hold a single inert gas, or helium and nitrogen in the same ratio. Other
+ * compartments get the bisection of the engines, and can always lead.
+ *
+ * A search belongs to one engine and is not thread safe.
+ */
+final class DecoZoneSearch
+{
+    private static final double TOLERANCE = 0.001; //minutes, where the bisection stops
+    private static final double ROOT_TOLERANCE = 1.0E-10; //minutes, where Newton's method stops
+    private static final double ROOT_WINDOW = 1.0E-7; //minutes
+
+    private final boolean zeroIsBelow; //VPM moves the low end of the bisection also when the function is exactly 0
+
+    private double Starting_Ambient_Pressure;
+    private double Rate;
+    private double Initial_Inspired_He_Pressure;
+    private double Helium_Rate;
+    private double Initial_Inspired_N2_Pressure;
+    private double Nitrogen_Rate;
+    private double Other_Gases;
+
+    private double kHe;
+    private double kN2;
+    private double Initial_Helium_Pressure;
+    private double Initial_Nitrogen_Pressure;
+
+    private double derivative; //of the function, at the time of the last functionAndDerivative
+    private boolean exceededIterations;
+
+    /**
+     * @param zeroIsBelow true if a time where the tension equals the ambient pressure counts as below it
+     */
+    DecoZoneSearch(boolean zeroIsBelow)
+    {
+        this.zeroIsBelow = zeroIsBelow;
+    }
+
+    /**
+     * The ascent, the same for all compartments.
+     * @param Rate change of ambient pressure per minute, negative
+     * @param Other_Gases constant pressure of other gases in the compartments, 0 for Bühlmann
+     */
+    void setAscent(double Starting_Ambient_Pressure, double Rate, double Initial_Inspired_He_Pressure, double Helium_Rate,
+            double Initial_Inspired_N2_Pressure, double Nitrogen_Rate, double Other_Gases)
+    {
+        this.Starting_Ambient_Pressure = Starting_Ambient_Pressure;
+        this.Rate = Rate;
+        this.Initial_Inspired_He_Pressure = Initial_Inspired_He_Pressure;
+        this.Helium_Rate = Helium_Rate;
+        this.Initial_Inspired_N2_Pressure = Initial_Inspired_N2_Pressure;
+        this.Nitrogen_Rate = Nitrogen_Rate;
+        this.Other_Gases = Other_Gases;
+    }
+
+    void setCompartment(double kHe, double Initial_Helium_Pressure, double kN2, double Initial_Nitrogen_Pressure)
+    {
+        this.kHe = kHe;
+        this.Initial_Helium_Pressure = Initial_Helium_Pressure;
+        this.kN2 = kN2;
+        this.Initial_Nitrogen_Pressure = Initial_Nitrogen_Pressure;
+    }
+
+    /**
+     * The leading compartment is the one that reaches the ambient pressure first. A compartment that is still below
+     * it at the leader's time gets a later time from the bisection, so it doesn't need to be searched.
+     * @param Leading_Time the time of the leading compartment so far
+     * @return false if the compartment can't get an earlier time than the leader
+     */
+    boolean canLead(double Leading_Time)
+    {
+        return !crossesOnce() || !(function(Leading_Time) < 0.0);
+    }
+
+    /**
+     * @param Function_at_Low_Bound the tension minus the ambient pressure at Low_Bound
+     * @param Max_Iterations of the bisection
+     * @return the time the bisection of the engines finds for the compartment
+     */
+    double time(double Low_Bound, double High_Bound, double Function_at_Low_Bound, int Max_Iterations)
+    {
+        if(Function_at_Low_Bound >= 0.0 || !crossesOnce())
+        {
+            return bisect(Low_Bound, High_Bound, Function_at_Low_Bound, Max_Iterations);
+        }
+        //Newton's method, with the root kept between Low and High
+        double Low = Low_Bound;
+        double High = High_Bound;
+        double Time = Low_Bound;
+        double Root = Double.NaN;
+        for(int j=1; j<=Max_Iterations; j++)
+        {
+            double Function_at_Time = functionAndDerivative(Time);
+            if(Function_at_Time == 0.0)
+            {
+                Root = Time;
+                break;
+            }
+            if(Function_at_Time < 0.0)
+            {
+                Low = Time;
+            }
+            else
+            {
+                High = Time;
+            }
+            double Next_Time = Time - Function_at_Time/derivative;
+            if(!(Next_Time > Low && Next_Time < High))
+            {
+                Next_Time = 0.5*(Low + High);
+            }
+            if(Math.abs(Next_Time - Time) < ROOT_TOLERANCE)
+            {
+                Root = Next_Time;
+                break;
+            }
+            Time = Next_Time;
+        }
+        if(Double.isNaN(Root))
+        {
+            return bisect(Low_Bound, High_Bound, Function_at_Low_Bound, Max_Iterations);
+        }
+
+        //the bisection, with the side of the root taken from its position
+        double Time_to_Start_of_Deco_Zone = Low_Bound;
+        double Differential_Change = High_Bound - Low_Bound;
+        exceededIterations = true;
+        for(int j=1; j<=Max_Iterations; j++)
+        {
+            Differential_Change = Differential_Change*0.5;
+            double Mid_Range_Time = Time_to_Start_of_Deco_Zone + Differential_Change;
+            double Function_at_Mid_Range;
+            if(Math.abs(Mid_Range_Time - Root) <= ROOT_WINDOW)
+            {
+                Function_at_Mid_Range = function(Mid_Range_Time);
+            }
+            else
+            {
+                Function_at_Mid_Range = Mid_Range_Time < Root ? -1.0 : 1.0;
+            }
+            if(isBelow(Function_at_Mid_Range))
+            {
+                Time_to_Start_of_Deco_Zone = Mid_Range_Time;
+            }
+            if((Math.abs(Differential_Change) < TOLERANCE) || (Function_at_Mid_Range == 0.0))
+            {
+                exceededIterations = false;
+                break;
+            }
+        }
+        return Time_to_Start_of_Deco_Zone;
+    }
+
+    /**
+     * @return true if the last search didn't reach the tolerance within the iterations
+     */
+    boolean exceededIterations()
+    {
+        return exceededIterations;
+    }
+
+    /**
+     * The bisection as the engines did it.
+     */
+    private double bisect(double Low_Bound, double High_Bound, double Function_at_Low_Bound, int Max_Iterations)
+    {
+        double Time_to_Start_of_Deco_Zone, Differential_Change;
+        if(Function_at_Low_Bound < 0.0)
+        {
+            Time_to_Start_of_Deco_Zone = Low_Bound;
+            Differential_Change = High_Bound - Low_Bound;
+        }
+        else
+        {
+            Time_to_Start_of_Deco_Zone = High_Bound;
+            Differential_Change = Low_Bound - High_Bound;
+        }
+        exceededIterations = true;
+        for(int j=1; j<=Max_Iterations; j++)
+        {
+            Differential_Change = Differential_Change*0.5;
+            double Mid_Range_Time = Time_to_Start_of_Deco_Zone + Differential_Change;
+            double Function_at_Mid_Range = function(Mid_Range_Time);
+            if(isBelow(Function_at_Mid_Range))
+            {
+                Time_to_Start_of_Deco_Zone = Mid_Range_Time;
+            }
+            if((Math.abs(Differential_Change) < TOLERANCE) || (Function_at_Mid_Range == 0.0))
+            {
+                exceededIterations = false;
+                break;
+            }
+        }
+        return Time_to_Start_of_Deco_Zone;
+    }
+
+    /**
+     * @return true if the compartment and the gas breathed hold one inert gas, or both in the same ratio
+     */
+    private boolean crossesOnce()
+    {
+        boolean Nitrogen_Only = Initial_Helium_Pressure == 0.0 && Initial_Inspired_He_Pressure == 0.0 && Helium_Rate == 0.0;
+        boolean Helium_Only = Initial_Nitrogen_Pressure == 0.0 && Initial_Inspired_N2_Pressure == 0.0 && Nitrogen_Rate == 0.0;
+        return Nitrogen_Only || Helium_Only
+                || (Initial_Helium_Pressure*Initial_Inspired_N2_Pressure == Initial_Nitrogen_Pressure*Initial_Inspired_He_Pressure
+                && Helium_Rate*Initial_Inspired_N2_Pressure == Nitrogen_Rate*Initial_Inspired_He_Pressure);
+    }
+
+    private boolean isBelow(double Function_Value)
+    {
+        return Function_Value < 0.0 || (zeroIsBelow && Function_Value == 0.0);
+    }
+
+    /**
+     * @return the tension minus the ambient pressure, calculated as the bisection of the engines did
+     */
+    private double function(double Time)
+    {
+        double Helium_Pressure = DecoKernel.schreinerEquation(Initial_Inspired_He_Pressure, Helium_Rate, Time, kHe, Initial_Helium_Pressure);
+        double Nitrogen_Pressure = DecoKernel.schreinerEquation(Initial_Inspired_N2_Pressure, Nitrogen_Rate, Time, kN2, Initial_Nitrogen_Pressure);
+        return Helium_Pressure + Nitrogen_Pressure + Other_Gases - (Starting_Ambient_Pressure + Rate*Time);
+    }
+
+    /**
+     * @return the tension minus the ambient pressure, and sets derivative to its change per minute:
+     * dP/dt = R + k(Pi0 - P0 - R/k)e^-kt for each gas, minus the ascent rate
+     */
+    private double functionAndDerivative(double Time)
+    {
+        double Helium_Decay = Math.exp(-kHe*Time);
+        double Nitrogen_Decay = Math.exp(-kN2*Time);
+        double Helium_Gradient = Initial_Inspired_He_Pressure - Initial_Helium_Pressure - Helium_Rate/kHe;
+        double Nitrogen_Gradient = Initial_Inspired_N2_Pressure - Initial_Nitrogen_Pressure - Nitrogen_Rate/kN2;
+        double Helium_Pressure = Initial_Inspired_He_Pressure + Helium_Rate*(Time - 1.0/kHe) - Helium_Gradient*Helium_Decay;
+        double Nitrogen_Pressure = Initial_Inspired_N2_Pressure + Nitrogen_Rate*(Time - 1.0/kN2) - Nitrogen_Gradient*Nitrogen_Decay;
+        derivative = Helium_Rate + kHe*Helium_Gradient*Helium_Decay + Nitrogen_Rate + kN2*Nitrogen_Gradient*Nitrogen_Decay - Rate;
+        return Helium_Pressure + Nitrogen_Pressure + Other_Gases - (Starting_Ambient_Pressure + Rate*Time);
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The Bühlmann model as a dive computer runs it: one depth sample per fixed tick, for example every 2 seconds,
+ * for replaying dive logs and for testing dive computer firmware against the planner.
+ *
+ * The depth is taken to change linearly between two samples, so every tick is the Schreiner equation of
+ * GAS_LOADINGS_ASCENT_DESCENT. For a fixed tick length e^-kt and the rate term only depend on the compartment,
+ * so they are calculated once in the constructor and a tick is a few multiply-adds per compartment. After each
+ * tick the ceiling, the current gradient factor and the gradient factor at the surface are updated.
+ *
+ * The ceiling is calculated at the gradient factor for the current depth, on the line from GF low at the deepest
+ * GF low ceiling so far to GF high at the surface, the way CalculateOpenCircuitDeco moves the gradient factor between
+ * its stops. The gradient factors are calculated as in updateHighestMvaluePercentageAndGradientFactor.
+ *
+ * A kernel holds the state of one diver and is not thread safe. Nothing is allocated after the constructor.
+ */
+public final class DiveComputerKernel
+{
+    private final double tickMinutes;
+    private final double surfacePressure;
+    private final double waterVaporPressure;
+    private final double gradientFactorLow;
+    private final double gradientFactorHigh;
+
+    private final double[] N2_a;
+    private final double[] N2_b;
+    private final double[] He_a;
+    private final double[] He_b;
+
+    //per tick: e^-kt, and (t - (1 - e^-kt)/k)/t, the part of the change in inspired pressure that reaches the compartment
+    private final double[] nitrogenDecay;
+    private final double[] heliumDecay;
+    private final double[] nitrogenRateFactor;
+    private final double[] heliumRateFactor;
+
+    private final double[] nitrogenPressures = new double[TissueState.COMPARTMENTS];
+    private final double[] heliumPressures = new double[TissueState.COMPARTMENTS];
+
+    private double depth;
+    private double heliumFraction;
+    private double nitrogenFraction;
+    private double gradientFactorLowDepth; //the deepest ceiling at GF low so far
+    private double ceiling;
+    private double gradientFactor;
+    private double surfacingGradientFactor;
+    private long ticks;
+
+    /**
+     * @param config for the model, units, surface and water vapor pressure and the gradient factors
+     * @param tickSeconds time between two samples
+     */
+    public DiveComputerKernel(PlannerConfig config, double tickSeconds)
+    {
+        if(tickSeconds <= 0)
+        {
+            throw new IllegalArgumentException("The tick must be longer than 0 seconds");
+        }
+        tickMinutes = tickSeconds/60.0;
+        surfacePressure = config.surfacePressure;
+        waterVaporPressure = config.waterVaporPressure;
+        gradientFactorLow = config.gradientFactorFirstStop;
+        gradientFactorHigh = config.gradientFactorSurfacing;
+
+        BuhlmannModel model = config.buhlmannModel;
+        N2_a = model.getNitrogenA(config.metric);
+        N2_b = model.getNitrogenB();
+        He_a = model.getHeliumA(config.metric);
+        He_b = model.getHeliumB();
+
+        double[] kN2 = model.getKernel().getNitrogenTimeConstants();
+        double[] kHe = model.getKernel().getHeliumTimeConstants();
+        nitrogenDecay = new double[TissueState.COMPARTMENTS];
+        heliumDecay = new double[TissueState.COMPARTMENTS];
+        nitrogenRateFactor = new double[TissueState.COMPARTMENTS];
+        heliumRateFactor = new double[TissueState.COMPARTMENTS];
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            nitrogenDecay[i] = Math.exp(-kN2[i]*tickMinutes);
+            heliumDecay[i] = Math.exp(-kHe[i]*tickMinutes);
+            nitrogenRateFactor[i] = (tickMinutes - (1.0 - nitrogenDecay[i])/kN2[i])/tickMinutes;
+            heliumRateFactor[i] = (tickMinutes - (1.0 - heliumDecay[i])/kHe[i])/tickMinutes;
+        }
+        reset(config.surfaceN2Saturation);
+    }
+
+    /**
+     * Starts a new dive at the surface, with all compartments saturated at the given nitrogen pressure, on air.
+     */
+    public void reset(double surfaceN2Saturation)
+    {
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            nitrogenPressures[i] = surfaceN2Saturation;
+            heliumPressures[i] = 0.0;
+        }
+        startDive();
+    }
+
+    /**
+     * Starts a new dive at the surface, on air, with the tissues of a state, e.g. after a surface interval.
+     */
+    public void reset(TissueState tissues)
+    {
+        tissues.restore(nitrogenPressures, heliumPressures);
+        startDive();
+    }
+
+    private void startDive()
+    {
+        depth = 0.0;
+        heliumFraction = 0.0;
+        nitrogenFraction = 0.79;
+        gradientFactorLowDepth = 0.0;
+        ticks = 0;
+        updateLimits();
+    }
+
+    /**
+     * Switches gas. The new gas is breathed from the next tick.
+     */
+    public void setGas(double heliumFraction, double nitrogenFraction)
+    {
+        this.heliumFraction = heliumFraction;
+        this.nitrogenFraction = nitrogenFraction;
+    }
+
+    /**
+     * Loads the tissues for one tick, from the depth of the last sample to this one, and updates the ceiling and
+     * the gradient factors.
+     * @param newDepth the depth of this sample
+     */
+    public void tick(double newDepth)
+    {
+        double Initial_Inspired_Pressure = depth + surfacePressure - waterVaporPressure;
+        double Inspired_Pressure_Change = newDepth - depth;
+        double Initial_Inspired_N2_Pressure = Initial_Inspired_Pressure*nitrogenFraction;
+        double Initial_Inspired_He_Pressure = Initial_Inspired_Pressure*heliumFraction;
+        double Nitrogen_Change = Inspired_Pressure_Change*nitrogenFraction;
+        double Helium_Change = Inspired_Pressure_Change*heliumFraction;
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            //the Schreiner equation, P0*e^-kt + Pi0*(1 - e^-kt) + R*(t - (1 - e^-kt)/k)
+            nitrogenPressures[i] = Initial_Inspired_N2_Pressure + (nitrogenPressures[i] - Initial_Inspired_N2_Pressure)*nitrogenDecay[i] + Nitrogen_Change*nitrogenRateFactor[i];
+            heliumPressures[i] = Initial_Inspired_He_Pressure + (heliumPressures[i] - Initial_Inspired_He_Pressure)*heliumDecay[i] + Helium_Change*heliumRateFactor[i];
+        }
+        depth = newDepth;
+        ticks++;
+        updateLimits();
+    }
+
+    private void updateLimits()
+    {
+        double Ambient_Pressure = depth + surfacePressure;
+        double Gradient_Factor_Now = gradientFactorLow;
+        if(gradientFactorLowDepth > 0.0 && depth < gradientFactorLowDepth)
+        {
+            Gradient_Factor_Now = gradientFactorHigh + (gradientFactorLow - gradientFactorHigh)*depth/gradientFactorLowDepth;
+        }
+
+        //The four values are the highest of a quotient over the compartments. With a = A/L and b = B/L, where L is the
+        //gas loading, both the numerators and the (positive) denominators can be written without a division, so the
+        //quotients are compared by cross multiplying and only the highest ones are divided.
+        double Tolerated_At_Low = 0.0, Tolerated_At_Low_Divisor = 1.0;
+        double Tolerated_Now = 0.0, Tolerated_Now_Divisor = 1.0;
+        double Gradient = -1.0, Gradient_Divisor = 1.0;
+        double Surfacing_Gradient = -1.0, Surfacing_Gradient_Divisor = 1.0;
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            double L = heliumPressures[i] + nitrogenPressures[i];
+            double A = heliumPressures[i]*He_a[i] + nitrogenPressures[i]*N2_a[i];
+            double B = heliumPressures[i]*He_b[i] + nitrogenPressures[i]*N2_b[i];
+            double LL = L*L;
+            double LB = L*B;
+
+            //tolerated ambient pressure: (L - a*GF)/(GF/b - GF + 1) = B*(L*L - GF*A) / (GF*L*L + (1 - GF)*L*B)
+            double Numerator = B*(LL - gradientFactorLow*A);
+            double Divisor = gradientFactorLow*LL + (1.0 - gradientFactorLow)*LB;
+            if(Numerator*Tolerated_At_Low_Divisor > Tolerated_At_Low*Divisor)
+            {
+                Tolerated_At_Low = Numerator;
+                Tolerated_At_Low_Divisor = Divisor;
+            }
+            Numerator = B*(LL - Gradient_Factor_Now*A);
+            Divisor = Gradient_Factor_Now*LL + (1.0 - Gradient_Factor_Now)*LB;
+            if(Numerator*Tolerated_Now_Divisor > Tolerated_Now*Divisor)
+            {
+                Tolerated_Now = Numerator;
+                Tolerated_Now_Divisor = Divisor;
+            }
+
+            // GF: (TotalCmpPressure(He+N2) - ambientPressure) / (M-value - ambientPressure)
+            //   = (L - P)*L*B / (P*L*L + A*B - P*L*B)
+            Numerator = (L - Ambient_Pressure)*LB;
+            Divisor = Ambient_Pressure*LL + A*B - Ambient_Pressure*LB;
+            if(Numerator*Gradient_Divisor > Gradient*Divisor)
+            {
+                Gradient = Numerator;
+                Gradient_Divisor = Divisor;
+            }
+            Numerator = (L - surfacePressure)*LB;
+            Divisor = surfacePressure*LL + A*B - surfacePressure*LB;
+            if(Numerator*Surfacing_Gradient_Divisor > Surfacing_Gradient*Divisor)
+            {
+                Surfacing_Gradient = Numerator;
+                Surfacing_Gradient_Divisor = Divisor;
+            }
+        }
+        gradientFactorLowDepth = Math.max(gradientFactorLowDepth, Tolerated_At_Low/Tolerated_At_Low_Divisor - surfacePressure);
+        ceiling = Math.max(0.0, Tolerated_Now/Tolerated_Now_Divisor - surfacePressure);
+        gradientFactor = Gradient/Gradient_Divisor;
+        surfacingGradientFactor = Surfacing_Gradient/Surfacing_Gradient_Divisor;
+    }
+
+    /**
+     * @return the depth of the last sample
+     */
+    public double getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return the ceiling depth after the last tick, 0 if the diver can go to the surface
+     */
+    public double getCeiling()
+    {
+        return ceiling;
+    }
+
+    /**
+     * @return the highest gradient factor of the compartments at the current depth, as a fraction
+     */
+    public double getGradientFactor()
+    {
+        return gradientFactor;
+    }
+
+    /**
+     * @return the highest gradient factor the compartments would have at the surface, as a fraction
+     */
+    public double getSurfacingGradientFactor()
+    {
+        return surfacingGradientFactor;
+    }
+
+    /**
+     * @return the number of ticks since the last reset
+     */
+    public long getTicks()
+    {
+        return ticks;
+    }
+
+    /**
+     * @return the elapsed dive time in minutes since the last reset
+     */
+    public double getRunTime()
+    {
+        return ticks*tickMinutes;
+    }
+
+    /**
+     * Copies the compartment pressures into a state, without allocating.
+     */
+    public void saveTissues(TissueState tissues)
+    {
+        tissues.save(nitrogenPressures, heliumPressures);
+    }
+}
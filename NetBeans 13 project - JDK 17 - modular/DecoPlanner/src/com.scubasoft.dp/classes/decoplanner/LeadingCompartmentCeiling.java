@@ -0,0 +1,140 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * DecoKernel.buhlmannToleratedAmbientPressure that only calculates the compartments that can lead.
+ *
+ * The tolerated ambient pressure of a compartment, (P - a*GF)/(GF/b - GF + 1), is at most
+ * (P - a_min*GF)/(GF/b_max - GF + 1), where a_min is the lower a and b_max the higher b of the two gases, since the
+ * a and b of a compartment are averages of them weighted by the gas pressures. The bound only takes the total
+ * inert gas pressure, a subtraction and a multiplication per compartment. The compartment that led the last time
+ * is calculated first, and the others are skipped when their bound is below the highest tolerated pressure so far.
+ * At a stop only one or two compartments lead, so the a and b coefficients and the divisions of most compartments
+ * are skipped. The skipped compartments are counted.
+ *
+ * A compartment is only skipped with a margin, so the result is the same as buhlmannToleratedAmbientPressure to
+ * the last bit. With a DecoKernel accelerator, all compartments are calculated by the accelerator.
+ *
+ * One per engine, it is not thread safe.
+ */
+final class LeadingCompartmentCeiling
+{
+    private static final double SKIP_MARGIN = 1.0E-9; //far above the rounding errors of the bound
+
+    private double[] N2_a;
+    private double[] N2_b;
+    private double[] He_a;
+    private double[] He_b;
+    private double[] lowestA;
+    private double[] highestB;
+
+    //the bound is (P - boundOffset)*boundFactor, for boundGradientFactor
+    private double[] boundOffset;
+    private double[] boundFactor;
+    private double boundGradientFactor = Double.NaN;
+
+    private int leader;
+    private long skippedCompartments;
+
+    /**
+     * Sets the M-value coefficients of the model, when the model or the units change.
+     */
+    void setCoefficients(double[] N2_a, double[] N2_b, double[] He_a, double[] He_b)
+    {
+        this.N2_a = N2_a;
+        this.N2_b = N2_b;
+        this.He_a = He_a;
+        this.He_b = He_b;
+        lowestA = new double[N2_a.length];
+        highestB = new double[N2_a.length];
+        boundOffset = new double[N2_a.length];
+        boundFactor = new double[N2_a.length];
+        for(int cpt=0; cpt<N2_a.length; cpt++)
+        {
+            lowestA[cpt] = Math.min(N2_a[cpt], He_a[cpt]);
+            highestB[cpt] = Math.max(N2_b[cpt], He_b[cpt]);
+        }
+        boundGradientFactor = Double.NaN;
+        leader = 0;
+    }
+
+    /**
+     * @return the highest tolerated ambient pressure across all compartments, never below zero, as
+     * DecoKernel.buhlmannToleratedAmbientPressure
+     */
+    double toleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double Gradient_Factor)
+    {
+        if(DecoKernel.isAccelerated() || !(Gradient_Factor >= 0.0))
+        {
+            return DecoKernel.buhlmannToleratedAmbientPressure(nitrogenPressures, heliumPressures, N2_a, N2_b, He_a, He_b, Gradient_Factor);
+        }
+        if(Gradient_Factor != boundGradientFactor)
+        {
+            setBounds(Gradient_Factor);
+        }
+        double highest = Math.max(0.0, toleratedAmbientPressure(nitrogenPressures, heliumPressures, Gradient_Factor, leader));
+        int leading = leader;
+        for(int cpt=0; cpt<nitrogenPressures.length; cpt++)
+        {
+            if(cpt == leader)
+            {
+                continue;
+            }
+            double inertGasPressure = heliumPressures[cpt] + nitrogenPressures[cpt];
+            if(inertGasPressure > 0.0 && (inertGasPressure - boundOffset[cpt])*boundFactor[cpt] + SKIP_MARGIN < highest)
+            {
+                skippedCompartments++;
+                continue;
+            }
+            double Tolerated_Ambient_Pressure = toleratedAmbientPressure(nitrogenPressures, heliumPressures, Gradient_Factor, cpt);
+            if(Tolerated_Ambient_Pressure > highest)
+            {
+                leading = cpt;
+            }
+            highest = Math.max(highest, Tolerated_Ambient_Pressure);
+        }
+        leader = leading;
+        return highest;
+    }
+
+    /**
+     * @return the number of compartments skipped since the last reset
+     */
+    long getSkippedCompartments()
+    {
+        return skippedCompartments;
+    }
+
+    void resetSkippedCompartments()
+    {
+        skippedCompartments = 0;
+    }
+
+    private void setBounds(double Gradient_Factor)
+    {
+        for(int cpt=0; cpt<lowestA.length; cpt++)
+        {
+            double Divisor = Gradient_Factor/highestB[cpt] - Gradient_Factor + 1.0;
+            boundOffset[cpt] = lowestA[cpt]*Gradient_Factor;
+            //not a bound if the divisor isn't positive, NaN is never below the highest
+            boundFactor[cpt] = Divisor > 0.0 ? 1.0/Divisor : Double.NaN;
+        }
+        boundGradientFactor = Gradient_Factor;
+    }
+
+    /**
+     * The tolerated ambient pressure of one compartment, calculated as in buhlmannToleratedAmbientPressure.
+     */
+    private double toleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double Gradient_Factor, int cpt)
+    {
+        double PHe = heliumPressures[cpt];
+        double PN2 = nitrogenPressures[cpt];
+        double inertGasPressure = PHe + PN2;
+        double Coefficient_A = (PHe*He_a[cpt] + PN2*N2_a[cpt])/ inertGasPressure;
+        double Coefficient_B = (PHe*He_b[cpt] + PN2*N2_b[cpt])/ inertGasPressure;
+        return (inertGasPressure - Coefficient_A*Gradient_Factor)/(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The oxygen accounting of DIVEDATA_ASCENT_DESCENT and DIVEDATA_CONSTANT_DEPTH:
+ * CNS toxicity from the NOAA single exposure limits, and OTUs, for one segment.
+ *
+ * CNS is returned as a fraction, 1.0 being 100% of the limit.
+ */
+public final class OxygenExposure
+{
+    //Oxygen dose/tolerance constants, index 1 to 10 as in the Fortran original
+    private static final double[] PO2LO = {0, 0.5, 0.6, 0.7, 0.8, 0.9, 1.1, 1.5, 1.6061, 1.62, 1.74};
+    private static final double[] PO2HI = {0, 0.6, 0.7, 0.8, 0.9, 1.1, 1.5, 1.6061, 1.62, 1.74, 1.82};
+    private static final double[] LIMSLP = {0, -1800.0, -1500.0, -1200.0, -900.0, -600.0, -300.0, -750.0, -1250.0, -125.0, -50.0};
+    private static final double[] LIMINT = {0, 1800.0, 1620.0, 1410.0, 1170.0, 900.0, 570.0, 1245.0, 2045.0, 222.5, 92.0};
+
+    private OxygenExposure()
+    {
+    }
+
+    /**
+     * @param PO2 in ATA
+     * @param Segment_Time in minutes
+     * @return the CNS fraction added by the segment
+     */
+    public static double constantDepthCNS(double PO2, double Segment_Time)
+    {
+        if(PO2 <= 0.5)
+        {
+            return 0.0;
+        }
+        if(PO2 > 1.82)
+        {
+            //2021-11-16: This used to add 200% to the "CNS clock" independent of exposure time.
+            //So, instead, let's make it 100% increase per minute. (NOAA says that the limit beyond 1.8 is 1 minute?)
+            return Segment_Time;
+        }
+        double TLIM = 0.0;
+        for(int I=1;I<=10;I++)
+        {
+            if((PO2 > PO2LO[I]) && (PO2 <= PO2HI[I]))
+            {
+                TLIM = LIMSLP[I]*PO2 + LIMINT[I];
+                break;
+            }
+        }
+        return Segment_Time/TLIM;
+    }
+
+    /**
+     * @param PO2 in ATA
+     * @param Segment_Time in minutes
+     * @return the OTUs added by the segment
+     */
+    public static double constantDepthOTU(double PO2, double Segment_Time)
+    {
+        if(PO2 <= 0.5)
+        {
+            return 0.0;
+        }
+        return Segment_Time*Math.pow((0.5/(PO2-0.5)),(-5.0/6.0));
+    }
+
+    /**
+     * @param startingPO2 in ATA, at the start of the segment
+     * @param endingPO2 in ATA, at the end of the segment
+     * @param Segment_Time in minutes
+     * @return the CNS fraction added by the segment
+     */
+    public static double ascentDescentCNS(double startingPO2, double endingPO2, double Segment_Time)
+    {
+        double MAXPO2 = Math.max(startingPO2, endingPO2);
+        double MINPO2 = Math.min(startingPO2, endingPO2);
+        if(MAXPO2 <= 0.5)
+        {
+            return 0.0;
+        }
+        if(MAXPO2 == MINPO2)
+        {
+            //a closed circuit ascent or descent at the setpoint
+            return constantDepthCNS(MAXPO2, Segment_Time);
+        }
+        double LOWPO2 = Math.max(MINPO2, 0.5);
+        double O2TIME = Segment_Time*(MAXPO2 - LOWPO2)/(MAXPO2 - MINPO2);
+        if(MAXPO2 > 1.82)
+        {
+            //2021-11-16: This used to add 200% to the "CNS clock" even if this PO2 is just encountered for seconds during a descent to a gas switch with a better gas.
+            //So, instead, let's make it 20% increase per minute. Just a random number, but perhaps better than 200%.
+            return O2TIME * 0.2;
+        }
+
+        boolean ascending = startingPO2 > endingPO2;
+        double SUMCNS = 0.0;
+        //the PO2 range of each table row that the segment passes through, in the order it is passed.
+        //Only rows 0 to 9 are checked here, as in the original DecoPlanner code.
+        for(int I=0;I<10;I++)
+        {
+            if((MAXPO2 > PO2LO[I]) && (LOWPO2 <= PO2HI[I]))
+            {
+                double high, low;
+                if((MAXPO2 >= PO2HI[I]) && (LOWPO2 < PO2LO[I]))
+                {
+                    high = PO2HI[I];
+                    low = PO2LO[I];
+                }
+                else if((MAXPO2 < PO2HI[I]) && (LOWPO2 <= PO2LO[I]))
+                {
+                    high = MAXPO2;
+                    low = PO2LO[I];
+                }
+                else if((LOWPO2 > PO2LO[I]) && (MAXPO2 >= PO2HI[I]))
+                {
+                    high = PO2HI[I];
+                    low = LOWPO2;
+                }
+                else
+                {
+                    high = MAXPO2;
+                    low = LOWPO2;
+                }
+                double PO2O = ascending ? high : low;
+                double SEGPO2 = ascending ? low - high : high - low;
+                double OTIME = O2TIME*Math.abs(SEGPO2)/(MAXPO2 - LOWPO2);
+                if(OTIME != 0.0)
+                {
+                    double TLIMO = LIMSLP[I]*PO2O + LIMINT[I];
+                    double SLPCON = LIMSLP[I]*(SEGPO2/OTIME);
+                    SUMCNS += 1.0/SLPCON*Math.log(Math.abs(TLIMO + SLPCON*OTIME)) - 1.0/SLPCON*Math.log(Math.abs(TLIMO));
+                }
+            }
+        }
+        return SUMCNS;
+    }
+
+    /**
+     * @param startingPO2 in ATA, at the start of the segment
+     * @param endingPO2 in ATA, at the end of the segment
+     * @param Segment_Time in minutes
+     * @return the OTUs added by the segment
+     */
+    public static double ascentDescentOTU(double startingPO2, double endingPO2, double Segment_Time)
+    {
+        double MAXPO2 = Math.max(startingPO2, endingPO2);
+        double MINPO2 = Math.min(startingPO2, endingPO2);
+        if(MAXPO2 <= 0.5)
+        {
+            return 0.0;
+        }
+        if(MAXPO2 == MINPO2)
+        {
+            return constantDepthOTU(MAXPO2, Segment_Time);
+        }
+        double LOWPO2 = Math.max(MINPO2, 0.5);
+        double O2TIME = Segment_Time*(MAXPO2 - LOWPO2)/(MAXPO2 - MINPO2);
+        if(MAXPO2 > 1.82)
+        {
+            return 3.0/11.0*O2TIME/(MAXPO2-LOWPO2)*(Math.pow((MAXPO2-0.5)/0.5, 11.0/6.0) - Math.pow((LOWPO2-0.5)/0.5, 11.0/6.0));
+        }
+        double IPO2 = (startingPO2 > endingPO2) ? MAXPO2 : LOWPO2;
+        double FPO2 = (startingPO2 > endingPO2) ? LOWPO2 : MAXPO2;
+        return 3.0/11.0*O2TIME/(FPO2-IPO2)*(Math.pow((FPO2-0.5)/0.5, 11.0/6.0) - Math.pow((IPO2-0.5)/0.5, 11.0/6.0));
+    }
+}
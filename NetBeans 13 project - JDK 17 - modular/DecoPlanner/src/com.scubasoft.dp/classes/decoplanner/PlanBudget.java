@@ -0,0 +1,54 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * Limits for how much work one call to CalculateOpenCircuitDeco may do.
+ *
+ * The deco stop loops, the VPM critical volume loop and the projected ascent are checked on every iteration.
+ * When a limit is passed, or the thread is interrupted (e.g. by Future.cancel(true)), the engine throws a
+ * DecoCalculationException instead of running on. A PlanBudget is immutable, so one can be shared by many engines.
+ */
+public final class PlanBudget
+{
+    /** Limits that no normal dive gets near, but that stop an endless loop. */
+    public static final PlanBudget DEFAULT = new PlanBudget(100000, 100, 0);
+
+    /** Max number of iterations in one loop, e.g. minutes at one deco stop. */
+    public final int maxIterations;
+    /** Max number of iterations in the root finders. The original VPM-B and Bühlmann code use 100. */
+    public final int maxRootFinderIterations;
+    /** Max wall clock time for the whole calculation in milliseconds, or 0 for no limit. */
+    public final long maxMillis;
+
+    public PlanBudget(int maxIterations, int maxRootFinderIterations, long maxMillis)
+    {
+        this.maxIterations = maxIterations;
+        this.maxRootFinderIterations = maxRootFinderIterations;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Throws a DecoCalculationException if the thread has been interrupted, or if any limit has been passed.
+     * @param iteration the number of iterations done so far in the loop
+     * @param startTime System.nanoTime() when the calculation started
+     * @param loopName used in the message
+     */
+    public void check(int iteration, long startTime, String loopName)
+    {
+        if(Thread.currentThread().isInterrupted())
+        {
+            throw new DecoCalculationException(DecoCalculationException.CANCELLED, "The calculation was cancelled in the " + loopName + ".");
+        }
+        if(iteration > maxIterations)
+        {
+            throw new DecoCalculationException(DecoCalculationException.ITERATION_LIMIT, "The " + loopName + " did not finish within " + maxIterations + " iterations.");
+        }
+        if(maxMillis > 0 && System.nanoTime() - startTime > maxMillis * 1000000L)
+        {
+            throw new DecoCalculationException(DecoCalculationException.TIME_LIMIT, "The calculation took longer than " + maxMillis + " ms.");
+        }
+    }
+}
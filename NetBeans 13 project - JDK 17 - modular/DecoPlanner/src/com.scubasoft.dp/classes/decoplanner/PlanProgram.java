@@ -0,0 +1,135 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The user defined segments of a Dive, compiled to flat arrays: one opcode per segment (the DiveSegment segment
+ * types), the depths, the constant depth durations and the inspired gas fractions. The gas of each segment is
+ * resolved once, the same way CalculateOpenCircuitDeco does it: a constant depth segment switches to its own gas,
+ * descents and ascents use the gas of the segment before. Closed circuit segments keep their pO2 setpoint. With
+ * PlannerConfig.closedCircuitSetPoints they are loaded with the diluent's helium and nitrogen as BuhlmannEngine does
+ * it on the loop, otherwise at the gas fractions.
+ *
+ * A program is immutable and doesn't refer to the Dive, so it can be run any number of times, from any thread,
+ * with BuhlmannEngine.runProgram and different PlannerConfigs. That is meant for batch work, like comparing
+ * gradient factors or ascent rates for the same profile.
+ *
+ * Running a program only does the gas loadings and oxygen exposure. Ascents are loaded at the configured ascent
+ * rate without any deco stops, and the altitude acclimatization is not applied to the initial tissue pressures.
+ * The deco schedule itself is still planned by CalculateOpenCircuitDeco. The deco gases of the dive are kept for
+ * the table schedules of TableBatch.
+ */
+public final class PlanProgram
+{
+    final int length;
+    final int[] opcodes;
+    final double[] startDepths;
+    final double[] endDepths;
+    final double[] durations; //constant depth segments only, ascent and descent times come from the config rates
+    final double[] oxygenFractions;
+    final double[] heliumFractions;
+    final double[] nitrogenFractions;
+    final double[] setPoints; //pO2 in ATA, 0 on open circuit
+
+    final double[] decoGasSwitchDepths;
+    final double[] decoGasHeliumFractions;
+    final double[] decoGasNitrogenFractions;
+
+    final double[] initialNitrogenPressures;
+    final double[] initialHeliumPressures;
+    final double initialCNS;
+    final double initialOTU;
+
+    private PlanProgram(int length, int decoGases, double[] initialNitrogenPressures, double[] initialHeliumPressures, double initialCNS, double initialOTU)
+    {
+        this.length = length;
+        opcodes = new int[length];
+        startDepths = new double[length];
+        endDepths = new double[length];
+        durations = new double[length];
+        oxygenFractions = new double[length];
+        heliumFractions = new double[length];
+        nitrogenFractions = new double[length];
+        setPoints = new double[length];
+        decoGasSwitchDepths = new double[decoGases];
+        decoGasHeliumFractions = new double[decoGases];
+        decoGasNitrogenFractions = new double[decoGases];
+        this.initialNitrogenPressures = initialNitrogenPressures.clone();
+        this.initialHeliumPressures = initialHeliumPressures.clone();
+        this.initialCNS = initialCNS;
+        this.initialOTU = initialOTU;
+    }
+
+    /**
+     * @param dive with the user defined segments in diveSegments, as before CalculateOpenCircuitDeco. The dive is not changed.
+     * @return the compiled program
+     */
+    public static PlanProgram compile(Dive dive)
+    {
+        int length = 0;
+        for(DiveSegment diveSegment : dive.diveSegments)
+        {
+            if(diveSegment.userDefined)
+            {
+                length++;
+            }
+        }
+
+        int decoGases = 0;
+        for(Gas gas : dive.gases)
+        {
+            if(gas.gasType == Gas.DECO_GAS)
+            {
+                decoGases++;
+            }
+        }
+
+        PlanProgram program = new PlanProgram(length, decoGases, dive.initialNitrogenCompartmentPressure, dive.initialHeliumCompartmentPressure,
+                dive.initialCNStoxicityPercentage, dive.initialOTUbuildup);
+        int activeGasID = 0;
+        int op = 0;
+        for(DiveSegment diveSegment : dive.diveSegments)
+        {
+            if(!diveSegment.userDefined)
+            {
+                continue;
+            }
+            if(diveSegment.segmentType == DiveSegment.CONSTANT_DEPTH)
+            {
+                activeGasID = diveSegment.gasID;
+            }
+            Gas gas = dive.gases.get(activeGasID);
+            program.opcodes[op] = diveSegment.segmentType;
+            program.startDepths[op] = diveSegment.startDepth;
+            program.endDepths[op] = diveSegment.endDepth;
+            program.durations[op] = diveSegment.duration;
+            program.oxygenFractions[op] = gas.oxygenFraction;
+            program.heliumFractions[op] = gas.heliumFraction;
+            program.nitrogenFractions[op] = gas.nitrogenFraction;
+            program.setPoints[op] = Math.max(0.0, diveSegment.pO2SetPoint);
+            op++;
+        }
+        int decoGas = 0;
+        for(Gas gas : dive.gases)
+        {
+            if(gas.gasType == Gas.DECO_GAS)
+            {
+                program.decoGasSwitchDepths[decoGas] = gas.switchDepth;
+                program.decoGasHeliumFractions[decoGas] = gas.heliumFraction;
+                program.decoGasNitrogenFractions[decoGas] = gas.nitrogenFraction;
+                decoGas++;
+            }
+        }
+        return program;
+    }
+
+    /**
+     * @return the number of segments in the program
+     */
+    public int getLength()
+    {
+        return length;
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * A problem found by an engine during a calculation, that the user should be told about.
+ *
+ * The engines have no UI, so instead of showing a dialog they add a PlanWarning to the result,
+ * and BuhlmannDeco/VPMDeco (or a batch caller) decide how to show it.
+ */
+public final class PlanWarning
+{
+    /** The chosen GF Lo gives a first stop deeper than where off-gassing starts. The dive is marked with error. */
+    public static final int FIRST_STOP_CONFLICT = 1;
+
+    public final int type;
+    public final String title;
+    public final String headerText;
+    public final String message;
+
+    public PlanWarning(int type, String title, String headerText, String message)
+    {
+        this.type = type;
+        this.title = title;
+        this.headerText = headerText;
+        this.message = message;
+    }
+
+    @Override
+    public String toString()
+    {
+        return title + ": " + headerText + "\n" + message;
+    }
+}
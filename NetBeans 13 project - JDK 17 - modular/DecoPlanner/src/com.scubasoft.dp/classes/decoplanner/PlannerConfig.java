@@ -0,0 +1,209 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * A frozen copy of the Settings values that the deco engines use.
+ *
+ * BuhlmannEngine and VPMEngine take one of these at the start of CalculateOpenCircuitDeco and only read
+ * from it during the calculation, so a user changing Settings in the middle of a plan, or another thread
+ * planning with other units, altitude or ZH-L16 B/C, can't change the result.
+ * The object is immutable and can be reused for any number of plans.
+ * The field names are the same as in Settings, except buhlmannModel, which replaces Settings.ZHL_C, and scrLoop and
+ * closedCircuitSetPoints, which are not in Settings.
+ */
+public final class PlannerConfig
+{
+    public final boolean metric;
+    public final BuhlmannModel buhlmannModel;
+    public final int decoModel;
+    public final double Depth_Per_ATM;
+    public final double surfacePressure;
+    public final double waterVaporPressure;
+    public final double surfaceN2Saturation;
+
+    public final int ascentRate;
+    public final int descentRate;
+    public final int decoStopInterval;
+    public final int decoStopIntervalShallow;
+    public final int decoStopIntervalChangeDepth;
+    public final boolean smallDecoStopIntervalShallow;
+    public final boolean lastStopDoubleInterval;
+    public final float Minimum_Deco_Stop_Time;
+    public final boolean includeTravelTimeInDiveDuration;
+
+    public final double gradientFactorFirstStop;
+    public final double gradientFactorSurfacing;
+
+    public final double RMV_During_Dive;
+    public final double RMV_During_Deco;
+    public final ScrLoop scrLoop; //null on open circuit. Only used by BuhlmannEngine.CalculateOpenCircuitDeco
+    public final boolean closedCircuitSetPoints; //false loads segments with a pO2 setpoint at their gas fractions, as bailout plans always did
+
+    public final boolean diveAtAltitude;
+    public final int altitude;
+    public final int altitudeAcclimatized;
+    public final boolean acclimatizedAtDiveAltitude;
+    public final double hoursToAltitude;
+    public final double hoursAtAltitudeBeforeDive;
+
+    //VPM variables
+    public final int vpmConservatismSetting;
+    public final double Critical_Radius_N2_Microns;
+    public final double Critical_Radius_He_Microns;
+    public final double Surface_Tension_Gamma;
+    public final double Skin_Compression_GammaC;
+    public final double Regeneration_Time_Constant;
+    public final double Gradient_Onset_of_Imperm_Atm;
+    public final double Crit_Volume_Parameter_Lambda;
+    public final double Pressure_Other_Gases_mmHg;
+    public final boolean Critical_Volume_Algorithm;
+
+    private PlannerConfig()
+    {
+        metric = Settings.metric;
+        buhlmannModel = BuhlmannModel.fromSettings(Settings.ZHL_C);
+        decoModel = Settings.decoModel;
+        Depth_Per_ATM = Settings.Depth_Per_ATM;
+        surfacePressure = Settings.getSurfacePressure();
+        waterVaporPressure = Settings.getWaterVaporPressure();
+        surfaceN2Saturation = Settings.getSurfaceN2Saturation();
+
+        ascentRate = Settings.ascentRate;
+        descentRate = Settings.descentRate;
+        decoStopInterval = Settings.decoStopInterval;
+        decoStopIntervalShallow = Settings.decoStopIntervalShallow;
+        decoStopIntervalChangeDepth = Settings.decoStopIntervalChangeDepth;
+        smallDecoStopIntervalShallow = Settings.smallDecoStopIntervalShallow;
+        lastStopDoubleInterval = Settings.lastStopDoubleInterval;
+        Minimum_Deco_Stop_Time = Settings.Minimum_Deco_Stop_Time;
+        includeTravelTimeInDiveDuration = Settings.includeTravelTimeInDiveDuration;
+
+        gradientFactorFirstStop = Settings.gradientFactorFirstStop;
+        gradientFactorSurfacing = Settings.gradientFactorSurfacing;
+
+        RMV_During_Dive = Settings.RMV_During_Dive;
+        RMV_During_Deco = Settings.RMV_During_Deco;
+        scrLoop = null;
+        closedCircuitSetPoints = false;
+
+        diveAtAltitude = Settings.diveAtAltitude;
+        altitude = Settings.altitude;
+        altitudeAcclimatized = Settings.altitudeAcclimatized;
+        acclimatizedAtDiveAltitude = Settings.acclimatizedAtDiveAltitude;
+        hoursToAltitude = Settings.hoursToAltitude;
+        hoursAtAltitudeBeforeDive = Settings.hoursAtAltitudeBeforeDive;
+
+        vpmConservatismSetting = Settings.vpmConservatismSetting;
+        Critical_Radius_N2_Microns = Settings.Critical_Radius_N2_Microns;
+        Critical_Radius_He_Microns = Settings.Critical_Radius_He_Microns;
+        Surface_Tension_Gamma = Settings.Surface_Tension_Gamma;
+        Skin_Compression_GammaC = Settings.Skin_Compression_GammaC;
+        Regeneration_Time_Constant = Settings.Regeneration_Time_Constant;
+        Gradient_Onset_of_Imperm_Atm = Settings.Gradient_Onset_of_Imperm_Atm;
+        Crit_Volume_Parameter_Lambda = Settings.Crit_Volume_Parameter_Lambda;
+        Pressure_Other_Gases_mmHg = Settings.Pressure_Other_Gases_mmHg;
+        Critical_Volume_Algorithm = Settings.Critical_Volume_Algorithm;
+    }
+
+    private PlannerConfig(PlannerConfig source, BuhlmannModel buhlmannModel, double surfacePressure, double surfaceN2Saturation, ScrLoop scrLoop, boolean closedCircuitSetPoints)
+    {
+        metric = source.metric;
+        this.buhlmannModel = buhlmannModel;
+        decoModel = source.decoModel;
+        Depth_Per_ATM = source.Depth_Per_ATM;
+        this.surfacePressure = surfacePressure;
+        waterVaporPressure = source.waterVaporPressure;
+        this.surfaceN2Saturation = surfaceN2Saturation;
+
+        ascentRate = source.ascentRate;
+        descentRate = source.descentRate;
+        decoStopInterval = source.decoStopInterval;
+        decoStopIntervalShallow = source.decoStopIntervalShallow;
+        decoStopIntervalChangeDepth = source.decoStopIntervalChangeDepth;
+        smallDecoStopIntervalShallow = source.smallDecoStopIntervalShallow;
+        lastStopDoubleInterval = source.lastStopDoubleInterval;
+        Minimum_Deco_Stop_Time = source.Minimum_Deco_Stop_Time;
+        includeTravelTimeInDiveDuration = source.includeTravelTimeInDiveDuration;
+
+        gradientFactorFirstStop = source.gradientFactorFirstStop;
+        gradientFactorSurfacing = source.gradientFactorSurfacing;
+
+        RMV_During_Dive = source.RMV_During_Dive;
+        RMV_During_Deco = source.RMV_During_Deco;
+        this.scrLoop = scrLoop;
+        this.closedCircuitSetPoints = closedCircuitSetPoints;
+
+        diveAtAltitude = source.diveAtAltitude;
+        altitude = source.altitude;
+        altitudeAcclimatized = source.altitudeAcclimatized;
+        acclimatizedAtDiveAltitude = source.acclimatizedAtDiveAltitude;
+        hoursToAltitude = source.hoursToAltitude;
+        hoursAtAltitudeBeforeDive = source.hoursAtAltitudeBeforeDive;
+
+        vpmConservatismSetting = source.vpmConservatismSetting;
+        Critical_Radius_N2_Microns = source.Critical_Radius_N2_Microns;
+        Critical_Radius_He_Microns = source.Critical_Radius_He_Microns;
+        Surface_Tension_Gamma = source.Surface_Tension_Gamma;
+        Skin_Compression_GammaC = source.Skin_Compression_GammaC;
+        Regeneration_Time_Constant = source.Regeneration_Time_Constant;
+        Gradient_Onset_of_Imperm_Atm = source.Gradient_Onset_of_Imperm_Atm;
+        Crit_Volume_Parameter_Lambda = source.Crit_Volume_Parameter_Lambda;
+        Pressure_Other_Gases_mmHg = source.Pressure_Other_Gases_mmHg;
+        Critical_Volume_Algorithm = source.Critical_Volume_Algorithm;
+    }
+
+    /**
+     * Reads all values from Settings, as they are right now.
+     * @return a new PlannerConfig
+     */
+    public static PlannerConfig fromSettings()
+    {
+        return new PlannerConfig();
+    }
+
+    /**
+     * Used for altitude dives, where the surface pressure is calculated at the start of the plan.
+     * @param surfacePressure the surface pressure at the dive site
+     * @param surfaceN2Saturation the N2 pressure of a saturated tissue at that surface pressure
+     * @return a copy of this PlannerConfig with the new surface values
+     */
+    public PlannerConfig withSurfacePressure(double surfacePressure, double surfaceN2Saturation)
+    {
+        return new PlannerConfig(this, buhlmannModel, surfacePressure, surfaceN2Saturation, scrLoop, closedCircuitSetPoints);
+    }
+
+    /**
+     * Plans with another ZH-L16 variant than the one in Settings, without changing Settings.
+     * @param buhlmannModel for example BuhlmannModel.ZHL16C
+     * @return a copy of this PlannerConfig with the new model
+     */
+    public PlannerConfig withBuhlmannModel(BuhlmannModel buhlmannModel)
+    {
+        return new PlannerConfig(this, buhlmannModel, surfacePressure, surfaceN2Saturation, scrLoop, closedCircuitSetPoints);
+    }
+
+    /**
+     * Plans the whole dive on a semi-closed rebreather, supplied with the dive and deco gases.
+     * @param scrLoop the loop, or null for open circuit
+     * @return a copy of this PlannerConfig with the new loop
+     */
+    public PlannerConfig withScrLoop(ScrLoop scrLoop)
+    {
+        return new PlannerConfig(this, buhlmannModel, surfacePressure, surfaceN2Saturation, scrLoop, closedCircuitSetPoints);
+    }
+
+    /**
+     * Loads the segments with a pO2 setpoint as on a closed circuit loop, with the inert gas of the diluent at ambient
+     * pressure minus the setpoint, in BuhlmannEngine.CalculateOpenCircuitDeco and runProgram. Off by default, then
+     * they are loaded at the gas fractions of their gas, as before.
+     * @param closedCircuitSetPoints true to load at the setpoints
+     * @return a copy of this PlannerConfig with the new loading
+     */
+    public PlannerConfig withClosedCircuitSetPoints(boolean closedCircuitSetPoints)
+    {
+        return new PlannerConfig(this, buhlmannModel, surfacePressure, surfaceN2Saturation, scrLoop, closedCircuitSetPoints);
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The stop search of PROJECTED_ASCENT: which of the stops Deco_Stop_Depth, one Step_Size deeper, two steps deeper
+ * and so on, each compartment is over its allowed gas loading on arrival at. Used on open circuit.
+ *
+ * The engine tried one stop at a time. A deeper stop isn't always safer, the fast helium compartments get less time
+ * to off-gas on the way up, so the stops can't be bisected. Instead each compartment is solved on its own, over
+ * ranges of stops: the gas loading of one gas, Pi0 + R(t - 1/k) - (Pi0 - P0 - R/k)e^-kt, is convex or concave in the
+ * ascent time t, so its lowest value over a range of stops is at an end of the range, or where its derivative
+ * R + k(Pi0 - P0 - R/k)e^-kt is zero. The allowed gas loading is at most its value with the higher a, the lower b and
+ * the deepest stop of the range, or the compartment's own a and b when it only holds one inert gas. A range where the
+ * lowest gas loading is above the highest allowed one is over the limit at every stop in it.
+ *
+ * The ranges double in length from the last stop tried until one is not over the limit, and that one is halved down
+ * to its first stop that may be under it. The first stop that no compartment is over the limit at is then tried by
+ * the engine, as before, so the same stop comes out. A range is only skipped with a margin, far above the rounding
+ * errors of the bounds.
+ *
+ * A search belongs to one engine and is not thread safe.
+ */
+final class ProjectedAscentSearch
+{
+    private static final double SKIP_MARGIN = 1.0E-9;
+    private static final int LONGEST_RANGE = 1 << 30;
+
+    private double Starting_Ambient_Pressure;
+    private double First_Ambient_Pressure; //at the first stop tried
+    private double Step_Size;
+    private double Rate;
+    private double Initial_Inspired_He_Pressure;
+    private double Helium_Rate;
+    private double Initial_Inspired_N2_Pressure;
+    private double Nitrogen_Rate;
+    private double Gradient_Factor;
+
+    private double[] kHe;
+    private double[] kN2;
+    private double[] He_a;
+    private double[] He_b;
+    private double[] N2_a;
+    private double[] N2_b;
+    private double[] Initial_Helium_Pressure;
+    private double[] Initial_Nitrogen_Pressure;
+
+    /**
+     * The ascent, the same for all compartments.
+     * @param Rate change of ambient pressure per minute, negative
+     */
+    void setAscent(double Starting_Ambient_Pressure, double First_Ambient_Pressure, double Step_Size, double Rate,
+            double Initial_Inspired_He_Pressure, double Helium_Rate, double Initial_Inspired_N2_Pressure, double Nitrogen_Rate, double Gradient_Factor)
+    {
+        this.Starting_Ambient_Pressure = Starting_Ambient_Pressure;
+        this.First_Ambient_Pressure = First_Ambient_Pressure;
+        this.Step_Size = Step_Size;
+        this.Rate = Rate;
+        this.Initial_Inspired_He_Pressure = Initial_Inspired_He_Pressure;
+        this.Helium_Rate = Helium_Rate;
+        this.Initial_Inspired_N2_Pressure = Initial_Inspired_N2_Pressure;
+        this.Nitrogen_Rate = Nitrogen_Rate;
+        this.Gradient_Factor = Gradient_Factor;
+    }
+
+    /**
+     * The compartments at the start of the ascent, and the model. The arrays are not copied.
+     */
+    void setCompartments(double[] kHe, double[] kN2, double[] He_a, double[] He_b, double[] N2_a, double[] N2_b,
+            double[] Initial_Helium_Pressure, double[] Initial_Nitrogen_Pressure)
+    {
+        this.kHe = kHe;
+        this.kN2 = kN2;
+        this.He_a = He_a;
+        this.He_b = He_b;
+        this.N2_a = N2_a;
+        this.N2_b = N2_b;
+        this.Initial_Helium_Pressure = Initial_Helium_Pressure;
+        this.Initial_Nitrogen_Pressure = Initial_Nitrogen_Pressure;
+    }
+
+    /**
+     * @param First_Step the first stop to look at, in steps deeper than the first stop tried
+     * @param Last_Step the last stop to look at
+     * @return the first stop from First_Step on that no compartment is surely over the limit at, Last_Step + 1 if there is none
+     */
+    int nextStop(int First_Step, int Last_Step)
+    {
+        int Step = First_Step;
+        boolean moved;
+        do{
+            moved = false;
+            for(int cpt=0; cpt<kHe.length && Step <= Last_Step; cpt++)
+            {
+                int Compartment_Step = nextStop(cpt, Step, Last_Step);
+                if(Compartment_Step > Step)
+                {
+                    //the compartments before this one are looked at again from the new stop
+                    Step = Compartment_Step;
+                    moved = true;
+                }
+            }
+        }while(moved && Step <= Last_Step);
+        return Step;
+    }
+
+    /**
+     * @return the first stop from First_Step on that the compartment is not surely over the limit at
+     */
+    private int nextStop(int cpt, int First_Step, int Last_Step)
+    {
+        int Low = First_Step;
+        int Length = 1;
+        while(Low <= Last_Step)
+        {
+            int High = Low + Math.min(Length, Last_Step - Low + 1) - 1;
+            int Step = nextStopInRange(cpt, Low, High);
+            if(Step <= High)
+            {
+                return Step;
+            }
+            Low = High + 1;
+            Length = Math.min(2*Length, LONGEST_RANGE);
+        }
+        return Low;
+    }
+
+    /**
+     * @return the first stop from Low to High that the compartment is not surely over the limit at, High + 1 if there is none
+     */
+    private int nextStopInRange(int cpt, int Low, int High)
+    {
+        if(overLimit(cpt, Low, High))
+        {
+            return High + 1;
+        }
+        if(Low == High)
+        {
+            return Low;
+        }
+        int Middle = (Low + High) >>> 1;
+        int Step = nextStopInRange(cpt, Low, Middle);
+        return Step <= Middle ? Step : nextStopInRange(cpt, Middle + 1, High);
+    }
+
+    /**
+     * @return true if the compartment is over its allowed gas loading at every stop from Low to High
+     */
+    private boolean overLimit(int cpt, int Low, int High)
+    {
+        if(!(Gradient_Factor >= 0.0))
+        {
+            return false;
+        }
+        double Shallowest_Ambient_Pressure = First_Ambient_Pressure + Low*Step_Size;
+        double Deepest_Ambient_Pressure = First_Ambient_Pressure + High*Step_Size;
+        //the shallowest stop has the longest ascent
+        double Shortest_Time = (Deepest_Ambient_Pressure - Starting_Ambient_Pressure)/Rate;
+        double Longest_Time = (Shallowest_Ambient_Pressure - Starting_Ambient_Pressure)/Rate;
+        double Lowest_Helium_Pressure = lowestPressure(Initial_Inspired_He_Pressure, Helium_Rate, kHe[cpt], Initial_Helium_Pressure[cpt], Shortest_Time, Longest_Time);
+        double Lowest_Nitrogen_Pressure = lowestPressure(Initial_Inspired_N2_Pressure, Nitrogen_Rate, kN2[cpt], Initial_Nitrogen_Pressure[cpt], Shortest_Time, Longest_Time);
+        if(!(Lowest_Helium_Pressure >= 0.0 && Lowest_Nitrogen_Pressure >= 0.0))
+        {
+            //a and b are only between the two gases' values when both pressures are positive
+            return false;
+        }
+
+        double Highest_A, Lowest_B;
+        if(Initial_Helium_Pressure[cpt] == 0.0 && Initial_Inspired_He_Pressure == 0.0 && Helium_Rate == 0.0)
+        {
+            Highest_A = N2_a[cpt];
+            Lowest_B = N2_b[cpt];
+        }
+        else if(Initial_Nitrogen_Pressure[cpt] == 0.0 && Initial_Inspired_N2_Pressure == 0.0 && Nitrogen_Rate == 0.0)
+        {
+            Highest_A = He_a[cpt];
+            Lowest_B = He_b[cpt];
+        }
+        else
+        {
+            Highest_A = Math.max(He_a[cpt], N2_a[cpt]);
+            Lowest_B = Math.min(He_b[cpt], N2_b[cpt]);
+        }
+        double Highest_Factor = Gradient_Factor/Lowest_B - Gradient_Factor + 1.0;
+        double Highest_Allowable_Gas_Loading = (Highest_Factor >= 0.0 ? Deepest_Ambient_Pressure : Shallowest_Ambient_Pressure)*Highest_Factor + Gradient_Factor*Highest_A;
+        return Lowest_Helium_Pressure + Lowest_Nitrogen_Pressure > Highest_Allowable_Gas_Loading + SKIP_MARGIN;
+    }
+
+    /**
+     * @return the lowest value of the Schreiner equation for ascent times from Shortest_Time to Longest_Time
+     */
+    private static double lowestPressure(double Initial_Inspired_Gas_Pressure, double Gas_Rate, double k, double Initial_Gas_Pressure, double Shortest_Time, double Longest_Time)
+    {
+        double Lowest = Math.min(DecoKernel.schreinerEquation(Initial_Inspired_Gas_Pressure, Gas_Rate, Shortest_Time, k, Initial_Gas_Pressure),
+                DecoKernel.schreinerEquation(Initial_Inspired_Gas_Pressure, Gas_Rate, Longest_Time, k, Initial_Gas_Pressure));
+        //convex when the gradient is negative, with its lowest point where R + k*Gradient*e^-kt is zero
+        double Gradient = Initial_Inspired_Gas_Pressure - Initial_Gas_Pressure - Gas_Rate/k;
+        if(Gradient < 0.0 && Gas_Rate > 0.0)
+        {
+            double Turning_Time = -Math.log(-Gas_Rate/(k*Gradient))/k;
+            if(Turning_Time > Shortest_Time && Turning_Time < Longest_Time)
+            {
+                Lowest = Math.min(Lowest, DecoKernel.schreinerEquation(Initial_Inspired_Gas_Pressure, Gas_Rate, Turning_Time, k, Initial_Gas_Pressure));
+            }
+        }
+        return Lowest;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * The breathing loop of a semi-closed rebreather, supplied with the gas the plan is on.
+ *
+ * The oxygen fraction in the loop is lower than in the supply gas, since the diver's oxygen consumption is
+ * replaced with supply gas, and it depends on the workload. On an active (constant mass flow) SCR it is the same
+ * at all depths. On a passive SCR, where a part of every exhaled breath is dumped, the oxygen drop is a pressure
+ * (not a fraction), so the loop fraction is lower the shallower the diver is. The inspired inert gas pressure is
+ * then not linear in depth, and BuhlmannEngine loads ascents and descents with DecoKernel.loadVaryingAscentDescent.
+ *
+ * Helium and nitrogen are in the loop in the same ratio as in the supply gas. The oxygen consumption and the
+ * minute volume are given separately for the dive and for the deco, like the RMVs in Settings.
+ * A loop is immutable. A plan uses one through PlannerConfig.withScrLoop.
+ */
+public final class ScrLoop
+{
+    public static final int PASSIVE = 1;
+    public static final int ACTIVE = 2;
+
+    private final int type;
+    private final double dumpRatio; //passive, the part of each exhaled breath that is dumped, e.g. 0.1 for 1:10
+    private final double supplyFlow; //active, liters per minute at the surface
+    private final double oxygenConsumptionDuringDive; //liters per minute at the surface
+    private final double oxygenConsumptionDuringDeco;
+
+    private ScrLoop(int type, double dumpRatio, double supplyFlow, double oxygenConsumptionDuringDive, double oxygenConsumptionDuringDeco)
+    {
+        if(oxygenConsumptionDuringDive < 0 || oxygenConsumptionDuringDeco < 0)
+        {
+            throw new IllegalArgumentException("The oxygen consumption can't be negative");
+        }
+        this.type = type;
+        this.dumpRatio = dumpRatio;
+        this.supplyFlow = supplyFlow;
+        this.oxygenConsumptionDuringDive = oxygenConsumptionDuringDive;
+        this.oxygenConsumptionDuringDeco = oxygenConsumptionDuringDeco;
+    }
+
+    /**
+     * @param dumpRatio part of each exhaled breath that is dumped, between 0 and 1
+     * @param oxygenConsumptionDuringDive liters per minute
+     * @param oxygenConsumptionDuringDeco liters per minute
+     * @return a passive SCR loop
+     */
+    public static ScrLoop passive(double dumpRatio, double oxygenConsumptionDuringDive, double oxygenConsumptionDuringDeco)
+    {
+        if(dumpRatio <= 0 || dumpRatio > 1)
+        {
+            throw new IllegalArgumentException("The dump ratio must be above 0 and at most 1");
+        }
+        return new ScrLoop(PASSIVE, dumpRatio, 0, oxygenConsumptionDuringDive, oxygenConsumptionDuringDeco);
+    }
+
+    /**
+     * @param supplyFlow liters per minute, must be higher than the oxygen consumption
+     * @param oxygenConsumptionDuringDive liters per minute
+     * @param oxygenConsumptionDuringDeco liters per minute
+     * @return an active (constant mass flow) SCR loop
+     */
+    public static ScrLoop active(double supplyFlow, double oxygenConsumptionDuringDive, double oxygenConsumptionDuringDeco)
+    {
+        if(supplyFlow <= Math.max(oxygenConsumptionDuringDive, oxygenConsumptionDuringDeco))
+        {
+            throw new IllegalArgumentException("The supply flow must be higher than the oxygen consumption");
+        }
+        return new ScrLoop(ACTIVE, 0, supplyFlow, oxygenConsumptionDuringDive, oxygenConsumptionDuringDeco);
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    /**
+     * @param deco true for the deco stops and the ascents between them
+     * @return the oxygen consumption in liters per minute
+     */
+    public double getOxygenConsumption(boolean deco)
+    {
+        return deco ? oxygenConsumptionDuringDeco : oxygenConsumptionDuringDive;
+    }
+
+    /**
+     * @return true if the loop oxygen fraction is the same at all depths, so the inspired pressures are linear in depth
+     */
+    public boolean isLinear()
+    {
+        return type == ACTIVE;
+    }
+
+    /**
+     * @param Supply_Oxygen_Fraction of the gas the loop is supplied with
+     * @param Ambient_Pressure_ATA
+     * @param Oxygen_Consumption liters per minute
+     * @param Respiratory_Minute_Volume liters per minute, only used by a passive loop
+     * @return the oxygen fraction in the loop, never below 0
+     */
+    public double oxygenFraction(double Supply_Oxygen_Fraction, double Ambient_Pressure_ATA, double Oxygen_Consumption, double Respiratory_Minute_Volume)
+    {
+        double Loop_Oxygen_Fraction;
+        if(type == ACTIVE)
+        {
+            Loop_Oxygen_Fraction = (supplyFlow*Supply_Oxygen_Fraction - Oxygen_Consumption)/(supplyFlow - Oxygen_Consumption);
+        }
+        else
+        {
+            //the supply replaces the dumped gas and the consumed oxygen: FO2 = FO2s - (1 - FO2s)*VO2/(dump ratio*RMV*Pamb)
+            Loop_Oxygen_Fraction = Supply_Oxygen_Fraction - (1.0 - Supply_Oxygen_Fraction)*Oxygen_Consumption/(dumpRatio*Respiratory_Minute_Volume*Ambient_Pressure_ATA);
+        }
+        return Math.max(0.0, Loop_Oxygen_Fraction);
+    }
+
+    @Override
+    public String toString()
+    {
+        return type == ACTIVE ? "Active SCR " + supplyFlow + " l/min" : "Passive SCR 1:" + Math.round(1.0/dumpRatio);
+    }
+}
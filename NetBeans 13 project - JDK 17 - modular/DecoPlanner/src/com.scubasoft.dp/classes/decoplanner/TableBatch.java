@@ -0,0 +1,563 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+/**
+ * Deco tables for many PlanPrograms with one PlannerConfig, for grids of depths and bottom times where millions of
+ * cells are calculated. For each cell it gives the first stop depth, the total stop time and the run time.
+ *
+ * The program is loaded with BuhlmannEngine.runProgram. The table schedule after it is simpler than the one of
+ * CalculateOpenCircuitDeco: an ascent at the ascent rate to the first stop, the ceiling at GF low rounded up to the
+ * stop interval, and then at every stop steps of Minimum_Deco_Stop_Time until Util.roundToTwoDecimals of the ceiling,
+ * at the gradient factor of the next stop, is no deeper than the next stop, the test of DECOMPRESSION_STOP. A deco
+ * gas is switched to at the first stop at or above its switch depth. The deco is on open circuit, and there are no
+ * projected ascents, shallow stop intervals or last stop at the double interval.
+ *
+ * With setFloatEnabled(true) the schedule is calculated with float tissue pressures and factors, half the size of
+ * the double ones, so twice as many compartments fit in a SIMD register when the JIT vectorizes the loops. Float
+ * and double only differ in rounding. The schedule keeps a bound for the rounding error of the float tissue
+ * pressures, which grows with every step and with the size of the pressures, so it is larger in feet. Each float
+ * ceiling is then checked with the error bound that follows from it. Wherever the bound is enough to change a
+ * rounded stop decision, or the first stop, the cell is calculated again in double, so the results are the same as
+ * with double alone. setVerify(true) calculates every cell both ways and counts the cells that differ.
+ *
+ * A batch is not thread safe; use one per thread.
+ */
+public final class TableBatch
+{
+    //relative rounding error of one float operation, plus that of the double it is compared with
+    private static final double ROUNDING = 0x1.0p-24 + 0x1.0p-53;
+    //roundings per compartment in a stay, an ascent and a ceiling, each at most ROUNDING times the largest value in it
+    private static final double STAY_ERRORS = 5.0;
+    private static final double ASCENT_ERRORS = 9.0;
+    private static final double CEILING_ERRORS = 12.0;
+
+    private final PlannerConfig config;
+    private final BuhlmannEngine engine;
+    private PlanBudget budget = PlanBudget.DEFAULT;
+    private boolean floatEnabled;
+    private boolean verify;
+
+    private final double[] N2_a;
+    private final double[] N2_b;
+    private final double[] He_a;
+    private final double[] He_b;
+    private final float[] N2_a_Float;
+    private final float[] N2_b_Float;
+    private final float[] He_a_Float;
+    private final float[] He_b_Float;
+
+    private final double[] kN2;
+    private final double[] kHe;
+    private final Factors stopFactors; //one stop step at constant depth
+    private final Factors intervalFactors; //the ascent from one stop to the next
+    private final Factors travelFactors; //the ascent to the first stop, calculated for each cell
+
+    private final double[] nitrogenPressures = new double[TissueState.COMPARTMENTS];
+    private final double[] heliumPressures = new double[TissueState.COMPARTMENTS];
+    private final float[] nitrogenPressuresFloat = new float[TissueState.COMPARTMENTS];
+    private final float[] heliumPressuresFloat = new float[TissueState.COMPARTMENTS];
+    private double pressureError; //bound for the difference between a float and the double tissue pressure
+    private double pressureScale; //the largest pressure in the float calculation so far
+    private final double[] highestToleratedPressures = new double[TissueState.COMPARTMENTS];
+    private final double[] toleratedPressureErrors = new double[TissueState.COMPARTMENTS];
+
+    private double[] firstStopDepths = new double[0];
+    private double[] decoTimes = new double[0];
+    private double[] runTimes = new double[0];
+    private boolean[] doublePrecision = new boolean[0];
+    private int fallbacks;
+    private int mismatches;
+
+    //the result of the last schedule
+    private double firstStopDepth;
+    private double decoTime;
+    private double runTime;
+
+    /**
+     * @param config for the model, units, rates, stop interval, minimum stop time and gradient factors
+     */
+    public TableBatch(PlannerConfig config)
+    {
+        if(config.Minimum_Deco_Stop_Time <= 0 || config.decoStopInterval <= 0 || config.ascentRate == 0)
+        {
+            throw new IllegalArgumentException("The minimum stop time, stop interval and ascent rate must be above 0");
+        }
+        this.config = config;
+        engine = new BuhlmannEngine(config);
+        engine.setDebugEnabled(false);
+        engine.setCaptureEnabled(false);
+
+        BuhlmannModel model = config.buhlmannModel;
+        N2_a = model.getNitrogenA(config.metric);
+        N2_b = model.getNitrogenB();
+        He_a = model.getHeliumA(config.metric);
+        He_b = model.getHeliumB();
+        N2_a_Float = toFloat(N2_a);
+        N2_b_Float = toFloat(N2_b);
+        He_a_Float = toFloat(He_a);
+        He_b_Float = toFloat(He_b);
+
+        kN2 = model.getKernel().getNitrogenTimeConstants();
+        kHe = model.getKernel().getHeliumTimeConstants();
+        stopFactors = new Factors();
+        stopFactors.set(kN2, kHe, config.Minimum_Deco_Stop_Time);
+        intervalFactors = new Factors();
+        intervalFactors.set(kN2, kHe, config.decoStopInterval/(double)Math.abs(config.ascentRate));
+        travelFactors = new Factors();
+    }
+
+    /**
+     * @param floatEnabled true to calculate the schedules in float, with a fallback to double. Off by default.
+     */
+    public void setFloatEnabled(boolean floatEnabled)
+    {
+        this.floatEnabled = floatEnabled;
+    }
+
+    /**
+     * @param verify true to calculate every cell in float and in double, and count the cells where they differ.
+     * The double results are kept.
+     */
+    public void setVerify(boolean verify)
+    {
+        this.verify = verify;
+    }
+
+    public void setBudget(PlanBudget budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Calculates the table of each program. The results replace those of the last run.
+     * @param programs the cells
+     */
+    public void run(PlanProgram[] programs)
+    {
+        if(firstStopDepths.length != programs.length)
+        {
+            firstStopDepths = new double[programs.length];
+            decoTimes = new double[programs.length];
+            runTimes = new double[programs.length];
+            doublePrecision = new boolean[programs.length];
+        }
+        fallbacks = 0;
+        mismatches = 0;
+        long startTime = System.nanoTime();
+        for(int cell=0; cell<programs.length; cell++)
+        {
+            PlanProgram program = programs[cell];
+            engine.runProgram(program, config);
+            boolean inFloat = false;
+            if(floatEnabled || verify)
+            {
+                inFloat = schedule(program, true, startTime);
+                if(!inFloat)
+                {
+                    fallbacks++;
+                }
+            }
+            if(verify && inFloat)
+            {
+                double floatFirstStop = firstStopDepth;
+                double floatDecoTime = decoTime;
+                double floatRunTime = runTime;
+                schedule(program, false, startTime);
+                if(floatFirstStop != firstStopDepth || floatDecoTime != decoTime || floatRunTime != runTime)
+                {
+                    mismatches++;
+                }
+                inFloat = false;
+            }
+            else if(!inFloat)
+            {
+                schedule(program, false, startTime);
+            }
+            firstStopDepths[cell] = firstStopDepth;
+            decoTimes[cell] = decoTime;
+            runTimes[cell] = runTime;
+            doublePrecision[cell] = !inFloat;
+        }
+    }
+
+    /**
+     * The table schedule of the program, whose tissues are in the engine. The result is left in firstStopDepth,
+     * decoTime and runTime.
+     * @return false if the schedule is in float and the rounding of a ceiling could change the result, true otherwise
+     */
+    private boolean schedule(PlanProgram program, boolean inFloat, long startTime)
+    {
+        double[] programNitrogen = engine.getNitrogenCompartmentPressures();
+        double[] programHelium = engine.getHeliumCompartmentPressures();
+        pressureScale = 0.0;
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            nitrogenPressures[i] = programNitrogen[i];
+            heliumPressures[i] = programHelium[i];
+            nitrogenPressuresFloat[i] = (float)programNitrogen[i];
+            heliumPressuresFloat[i] = (float)programHelium[i];
+            pressureScale = Math.max(pressureScale, Math.max(Math.abs(programNitrogen[i]), Math.abs(programHelium[i])));
+        }
+        pressureError = ROUNDING*pressureScale;
+
+        //the run time and the depth and gas at the end of the program
+        double Run_Time = 0.0;
+        double Depth = 0.0;
+        double heliumFraction = 0.0;
+        double nitrogenFraction = 0.79;
+        for(int op=0; op<program.length; op++)
+        {
+            if(program.opcodes[op] == DiveSegment.CONSTANT_DEPTH)
+            {
+                Run_Time += program.durations[op];
+            }
+            else
+            {
+                double Rate = program.opcodes[op] == DiveSegment.ASCENT ? config.ascentRate : config.descentRate;
+                Run_Time += Math.abs((program.endDepths[op] - program.startDepths[op])/Rate);
+            }
+            Depth = program.endDepths[op];
+            heliumFraction = program.heliumFractions[op];
+            nitrogenFraction = program.nitrogenFractions[op];
+        }
+
+        double Surface_Pressure = config.surfacePressure;
+        double Water_Vapor_Pressure = config.waterVaporPressure;
+        double Ascent_Rate = Math.abs(config.ascentRate);
+
+        double Ceiling = ceiling(inFloat, config.gradientFactorFirstStop);
+        if(inFloat)
+        {
+            double Ceiling_Error = ceilingError(config.gradientFactorFirstStop);
+            if(firstStop(Ceiling - Ceiling_Error) != firstStop(Ceiling + Ceiling_Error))
+            {
+                return false;
+            }
+        }
+        double First_Stop = firstStop(Ceiling);
+        if(First_Stop > Depth)
+        {
+            throw new DecoCalculationException(DecoCalculationException.STEP_SIZE_TOO_LARGE, "The first stop is deeper than the end of the dive.");
+        }
+
+        //ascent to the first stop, or to the surface
+        double Travel_Time = (Depth - First_Stop)/Ascent_Rate;
+        if(Travel_Time > 0)
+        {
+            travelFactors.set(kN2, kHe, Travel_Time);
+            ascend(inFloat, travelFactors, Depth, First_Stop, heliumFraction, nitrogenFraction);
+            Run_Time += Travel_Time;
+        }
+
+        double Deco_Time = 0.0;
+        double Stop_Step = config.Minimum_Deco_Stop_Time;
+        double Gradient_Factor_Slope = First_Stop > 0 ? (config.gradientFactorSurfacing - config.gradientFactorFirstStop)/(0.0 - First_Stop) : 0.0;
+        double Switch_Depth = Double.MAX_VALUE; //of the gas breathed, none for the bottom gas
+        double Deco_Stop_Depth = First_Stop;
+        int iteration = 0;
+        while(Deco_Stop_Depth > 0)
+        {
+            //switchDecoGas: the deco gas with the shallowest switch depth at or below this stop
+            for(int gas=0; gas<program.decoGasSwitchDepths.length; gas++)
+            {
+                double Gas_Switch_Depth = program.decoGasSwitchDepths[gas];
+                if(Deco_Stop_Depth <= Gas_Switch_Depth && Gas_Switch_Depth < Switch_Depth)
+                {
+                    Switch_Depth = Gas_Switch_Depth;
+                    heliumFraction = program.decoGasHeliumFractions[gas];
+                    nitrogenFraction = program.decoGasNitrogenFractions[gas];
+                }
+            }
+
+            double Next_Stop = Math.max(0.0, Deco_Stop_Depth - config.decoStopInterval);
+            double Gradient_Factor_Next_Stop = Next_Stop*Gradient_Factor_Slope + config.gradientFactorSurfacing;
+            double Inspired_Pressure = Deco_Stop_Depth + Surface_Pressure - Water_Vapor_Pressure;
+            while(true)
+            {
+                double Deco_Ceiling_Depth = ceiling(inFloat, Gradient_Factor_Next_Stop);
+                if(inFloat)
+                {
+                    double Ceiling_Error = ceilingError(Gradient_Factor_Next_Stop);
+                    if((Util.roundToTwoDecimals(Deco_Ceiling_Depth - Ceiling_Error) > Next_Stop) != (Util.roundToTwoDecimals(Deco_Ceiling_Depth + Ceiling_Error) > Next_Stop))
+                    {
+                        return false;
+                    }
+                }
+                if(Util.roundToTwoDecimals(Deco_Ceiling_Depth) <= Next_Stop)
+                {
+                    break;
+                }
+                budget.check(++iteration, startTime, "table stop");
+                stay(inFloat, Inspired_Pressure*nitrogenFraction, Inspired_Pressure*heliumFraction);
+                Deco_Time += Stop_Step;
+            }
+
+            ascend(inFloat, intervalFactors, Deco_Stop_Depth, Next_Stop, heliumFraction, nitrogenFraction);
+            Run_Time += (Deco_Stop_Depth - Next_Stop)/Ascent_Rate;
+            Deco_Stop_Depth = Next_Stop;
+        }
+
+        firstStopDepth = First_Stop;
+        decoTime = Deco_Time;
+        runTime = Run_Time + Deco_Time;
+        return true;
+    }
+
+    /**
+     * @return the first stop for a ceiling, rounded up to the stop interval, 0 if the diver can go to the surface
+     */
+    private double firstStop(double Deco_Ceiling_Depth)
+    {
+        double Rounded_Ceiling = Util.roundToTwoDecimals(Deco_Ceiling_Depth);
+        if(Rounded_Ceiling <= 0)
+        {
+            return 0.0;
+        }
+        return config.decoStopInterval*Math.ceil(Rounded_Ceiling/config.decoStopInterval);
+    }
+
+    /**
+     * GAS_LOADINGS_CONSTANT_DEPTH for one stop step.
+     */
+    private void stay(boolean inFloat, double Inspired_N2_Pressure, double Inspired_He_Pressure)
+    {
+        if(inFloat)
+        {
+            float[] N2_Decay = stopFactors.nitrogenDecayFloat;
+            float[] He_Decay = stopFactors.heliumDecayFloat;
+            float Inspired_N2 = (float)Inspired_N2_Pressure;
+            float Inspired_He = (float)Inspired_He_Pressure;
+            for(int i=0; i<TissueState.COMPARTMENTS; i++)
+            {
+                nitrogenPressuresFloat[i] = Inspired_N2 + (nitrogenPressuresFloat[i] - Inspired_N2)*N2_Decay[i];
+                heliumPressuresFloat[i] = Inspired_He + (heliumPressuresFloat[i] - Inspired_He)*He_Decay[i];
+            }
+            addStepError(STAY_ERRORS, Math.max(Math.abs(Inspired_N2_Pressure), Math.abs(Inspired_He_Pressure)));
+        }
+        else
+        {
+            double[] N2_Decay = stopFactors.nitrogenDecay;
+            double[] He_Decay = stopFactors.heliumDecay;
+            for(int i=0; i<TissueState.COMPARTMENTS; i++)
+            {
+                nitrogenPressures[i] = Inspired_N2_Pressure + (nitrogenPressures[i] - Inspired_N2_Pressure)*N2_Decay[i];
+                heliumPressures[i] = Inspired_He_Pressure + (heliumPressures[i] - Inspired_He_Pressure)*He_Decay[i];
+            }
+        }
+    }
+
+    /**
+     * GAS_LOADINGS_ASCENT_DESCENT from one depth to another, with factors for the time it takes.
+     */
+    private void ascend(boolean inFloat, Factors factors, double Starting_Depth, double Ending_Depth, double heliumFraction, double nitrogenFraction)
+    {
+        double Initial_Inspired_Pressure = Starting_Depth + config.surfacePressure - config.waterVaporPressure;
+        double Inspired_Pressure_Change = Ending_Depth - Starting_Depth;
+        if(inFloat)
+        {
+            float Initial_N2 = (float)(Initial_Inspired_Pressure*nitrogenFraction);
+            float Initial_He = (float)(Initial_Inspired_Pressure*heliumFraction);
+            float N2_Change = (float)(Inspired_Pressure_Change*nitrogenFraction);
+            float He_Change = (float)(Inspired_Pressure_Change*heliumFraction);
+            float[] N2_Decay = factors.nitrogenDecayFloat;
+            float[] He_Decay = factors.heliumDecayFloat;
+            float[] N2_Rate = factors.nitrogenRateFactorFloat;
+            float[] He_Rate = factors.heliumRateFactorFloat;
+            for(int i=0; i<TissueState.COMPARTMENTS; i++)
+            {
+                nitrogenPressuresFloat[i] = Initial_N2 + (nitrogenPressuresFloat[i] - Initial_N2)*N2_Decay[i] + N2_Change*N2_Rate[i];
+                heliumPressuresFloat[i] = Initial_He + (heliumPressuresFloat[i] - Initial_He)*He_Decay[i] + He_Change*He_Rate[i];
+            }
+            //the inspired pressures go from Initial to Initial + Change, and the compartments stay between them and where they were
+            addStepError(ASCENT_ERRORS, Math.max(Math.abs(Initial_Inspired_Pressure), Math.abs(Initial_Inspired_Pressure + Inspired_Pressure_Change)));
+        }
+        else
+        {
+            double Initial_N2 = Initial_Inspired_Pressure*nitrogenFraction;
+            double Initial_He = Initial_Inspired_Pressure*heliumFraction;
+            double N2_Change = Inspired_Pressure_Change*nitrogenFraction;
+            double He_Change = Inspired_Pressure_Change*heliumFraction;
+            double[] N2_Decay = factors.nitrogenDecay;
+            double[] He_Decay = factors.heliumDecay;
+            double[] N2_Rate = factors.nitrogenRateFactor;
+            double[] He_Rate = factors.heliumRateFactor;
+            for(int i=0; i<TissueState.COMPARTMENTS; i++)
+            {
+                //the Schreiner equation, P0*e^-kt + Pi0*(1 - e^-kt) + R*(t - (1 - e^-kt)/k)
+                nitrogenPressures[i] = Initial_N2 + (nitrogenPressures[i] - Initial_N2)*N2_Decay[i] + N2_Change*N2_Rate[i];
+                heliumPressures[i] = Initial_He + (heliumPressures[i] - Initial_He)*He_Decay[i] + He_Change*He_Rate[i];
+            }
+        }
+    }
+
+    /**
+     * @return the ceiling depth at a gradient factor, with the tissue pressures of the precision in use
+     */
+    private double ceiling(boolean inFloat, double Gradient_Factor)
+    {
+        if(!inFloat)
+        {
+            return DecoKernel.buhlmannToleratedAmbientPressure(nitrogenPressures, heliumPressures, N2_a, N2_b, He_a, He_b, Gradient_Factor) - config.surfacePressure;
+        }
+        return DecoKernel.buhlmannToleratedAmbientPressure(nitrogenPressuresFloat, heliumPressuresFloat, N2_a_Float, N2_b_Float, He_a_Float, He_b_Float, (float)Gradient_Factor) - config.surfacePressure;
+    }
+
+    /**
+     * A float step rounds each pressure a few times, and the errors so far are carried over, multiplied by e^-kt
+     * which is at most 1.
+     * @param Inspired_Magnitude the largest inspired pressure of the step
+     */
+    private void addStepError(double Roundings, double Inspired_Magnitude)
+    {
+        pressureScale = Math.max(pressureScale, Inspired_Magnitude);
+        pressureError += Roundings*ROUNDING*pressureScale;
+    }
+
+    /**
+     * The error bound of the float ceiling, from the error bound of the pressures.
+     *
+     * With D = GF/b - GF + 1, the tolerated pressure (P - a*GF)/D changes with the pressure P of one gas by at most
+     * (1 + GF*|aHe - aN2|/P)/D + GF*|bHe - bN2|/(b_min^2*D^2), since a and b move towards that gas's values with
+     * its share of P. D is at least the lower of 1 and its value at the higher b. Both gases can be off by
+     * pressureError, and the ceiling formula itself rounds a few times.
+     * The bound is large where P is small, but there the tolerated pressure is low. Only the compartments that can
+     * lead in float or in double count: those that can be above the lowest the leader can be.
+     * @return a bound for the difference between the float and the double ceiling, infinite if there is none
+     */
+    private double ceilingError(double Gradient_Factor)
+    {
+        double Lowest_Leader = 0.0; //the ceiling is never above the surface
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            double PN2 = nitrogenPressuresFloat[i];
+            double PHe = heliumPressuresFloat[i];
+            double Inert_Gas_Pressure = PN2 + PHe;
+            double Lowest_Inert_Gas_Pressure = Inert_Gas_Pressure - 2.0*pressureError;
+            double Highest_Inert_Gas_Pressure = Inert_Gas_Pressure + 2.0*pressureError;
+            double Lowest_B = Math.min(N2_b[i], He_b[i]);
+            double Highest_B = Math.max(N2_b[i], He_b[i]);
+            double Lowest_Divisor = Math.min(1.0, Gradient_Factor/Highest_B - Gradient_Factor + 1.0);
+            if(Lowest_Divisor <= 0.0)
+            {
+                return Double.POSITIVE_INFINITY;
+            }
+            //whatever the mix, the tolerated pressure is at most that with the lower a and the higher b
+            highestToleratedPressures[i] = (Highest_Inert_Gas_Pressure - Math.min(N2_a[i], He_a[i])*Gradient_Factor)/Lowest_Divisor;
+            if(Lowest_Inert_Gas_Pressure <= 0.0)
+            {
+                toleratedPressureErrors[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double Coefficient_A = (PHe*He_a[i] + PN2*N2_a[i])/Inert_Gas_Pressure;
+            double Coefficient_B = (PHe*He_b[i] + PN2*N2_b[i])/Inert_Gas_Pressure;
+            double Tolerated_Pressure = (Inert_Gas_Pressure - Coefficient_A*Gradient_Factor)/(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0);
+            double Sensitivity = (1.0 + Gradient_Factor*Math.abs(He_a[i] - N2_a[i])/Lowest_Inert_Gas_Pressure)/Lowest_Divisor
+                    + Gradient_Factor*Math.abs(He_b[i] - N2_b[i])/(Lowest_B*Lowest_B*Lowest_Divisor*Lowest_Divisor);
+            double Highest_A = Math.max(Math.abs(N2_a[i]), Math.abs(He_a[i]));
+            double Formula_Magnitude = (Highest_Inert_Gas_Pressure + Highest_A*Gradient_Factor)/Lowest_Divisor + Highest_Inert_Gas_Pressure/(Lowest_B*Lowest_Divisor*Lowest_Divisor);
+            toleratedPressureErrors[i] = Sensitivity*2.0*pressureError + CEILING_ERRORS*ROUNDING*Formula_Magnitude;
+            highestToleratedPressures[i] = Math.min(highestToleratedPressures[i], Tolerated_Pressure + toleratedPressureErrors[i]);
+            Lowest_Leader = Math.max(Lowest_Leader, Tolerated_Pressure - toleratedPressureErrors[i]);
+        }
+        double highest = 0.0;
+        for(int i=0; i<TissueState.COMPARTMENTS; i++)
+        {
+            if(highestToleratedPressures[i] >= Lowest_Leader)
+            {
+                highest = Math.max(highest, toleratedPressureErrors[i]);
+            }
+        }
+        return highest;
+    }
+
+    private static float[] toFloat(double[] values)
+    {
+        float[] result = new float[values.length];
+        for(int i=0; i<values.length; i++)
+        {
+            result[i] = (float)values[i];
+        }
+        return result;
+    }
+
+    /**
+     * e^-kt and (t - (1 - e^-kt)/k)/t per compartment for a time t, in double and in float.
+     */
+    private static final class Factors
+    {
+        final double[] nitrogenDecay = new double[TissueState.COMPARTMENTS];
+        final double[] heliumDecay = new double[TissueState.COMPARTMENTS];
+        final double[] nitrogenRateFactor = new double[TissueState.COMPARTMENTS];
+        final double[] heliumRateFactor = new double[TissueState.COMPARTMENTS];
+        final float[] nitrogenDecayFloat = new float[TissueState.COMPARTMENTS];
+        final float[] heliumDecayFloat = new float[TissueState.COMPARTMENTS];
+        final float[] nitrogenRateFactorFloat = new float[TissueState.COMPARTMENTS];
+        final float[] heliumRateFactorFloat = new float[TissueState.COMPARTMENTS];
+
+        void set(double[] kN2, double[] kHe, double Segment_Time)
+        {
+            for(int i=0; i<TissueState.COMPARTMENTS; i++)
+            {
+                nitrogenDecay[i] = Math.exp(-kN2[i]*Segment_Time);
+                heliumDecay[i] = Math.exp(-kHe[i]*Segment_Time);
+                nitrogenRateFactor[i] = (Segment_Time - (1.0 - nitrogenDecay[i])/kN2[i])/Segment_Time;
+                heliumRateFactor[i] = (Segment_Time - (1.0 - heliumDecay[i])/kHe[i])/Segment_Time;
+                nitrogenDecayFloat[i] = (float)nitrogenDecay[i];
+                heliumDecayFloat[i] = (float)heliumDecay[i];
+                nitrogenRateFactorFloat[i] = (float)nitrogenRateFactor[i];
+                heliumRateFactorFloat[i] = (float)heliumRateFactor[i];
+            }
+        }
+    }
+
+    /**
+     * @return the first stop depth of a cell, 0 for a no-stop dive
+     */
+    public double getFirstStopDepth(int cell)
+    {
+        return firstStopDepths[cell];
+    }
+
+    /**
+     * @return the total time at the stops of a cell, in minutes
+     */
+    public double getDecoTime(int cell)
+    {
+        return decoTimes[cell];
+    }
+
+    /**
+     * @return the run time of a cell at the surface, in minutes
+     */
+    public double getRunTime(int cell)
+    {
+        return runTimes[cell];
+    }
+
+    /**
+     * @return true if the result of a cell was calculated in double
+     */
+    public boolean isDoublePrecision(int cell)
+    {
+        return doublePrecision[cell];
+    }
+
+    /**
+     * @return the number of cells of the last run that fell back from float to double
+     */
+    public int getFallbacks()
+    {
+        return fallbacks;
+    }
+
+    /**
+     * @return the number of cells of the last run, with setVerify(true), where float and double gave different results
+     */
+    public int getMismatches()
+    {
+        return mismatches;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+import java.util.Arrays;
+
+/**
+ * The nitrogen and helium pressures of the 16 compartments, packed in one array: nitrogen in 0-15, helium in 16-31.
+ *
+ * The engines keep their tissues in two arrays, since that is what DecoKernel and Dive use. A TissueState is for
+ * save-points: save copies the two arrays in, restore copies them back into the same arrays, so a snapshot is
+ * two bulk copies and no allocation once the state has been created. The same packing works for the other per
+ * gas compartment values, like the VPM radii.
+ *
+ * equals and hashCode compare the pressures, so a state can be used as a key or value when memoizing
+ * calculations. A state must not be changed while it is used as a key.
+ */
+public final class TissueState
+{
+    public static final int COMPARTMENTS = 16;
+
+    private final double[] pressures = new double[2*COMPARTMENTS];
+
+    public TissueState()
+    {
+    }
+
+    public TissueState(double[] nitrogenPressures, double[] heliumPressures)
+    {
+        save(nitrogenPressures, heliumPressures);
+    }
+
+    /**
+     * Copies the pressures into this state.
+     */
+    public void save(double[] nitrogenPressures, double[] heliumPressures)
+    {
+        System.arraycopy(nitrogenPressures, 0, pressures, 0, COMPARTMENTS);
+        System.arraycopy(heliumPressures, 0, pressures, COMPARTMENTS, COMPARTMENTS);
+    }
+
+    /**
+     * Copies the pressures of this state into the given arrays.
+     */
+    public void restore(double[] nitrogenPressures, double[] heliumPressures)
+    {
+        System.arraycopy(pressures, 0, nitrogenPressures, 0, COMPARTMENTS);
+        System.arraycopy(pressures, COMPARTMENTS, heliumPressures, 0, COMPARTMENTS);
+    }
+
+    /**
+     * Makes this state the same as another one.
+     */
+    public void copyFrom(TissueState other)
+    {
+        System.arraycopy(other.pressures, 0, pressures, 0, pressures.length);
+    }
+
+    /**
+     * @return a new state with the same pressures
+     */
+    public TissueState copy()
+    {
+        TissueState copy = new TissueState();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public double getNitrogenPressure(int compartment)
+    {
+        return pressures[compartment];
+    }
+
+    public double getHeliumPressure(int compartment)
+    {
+        return pressures[COMPARTMENTS + compartment];
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof TissueState && Arrays.equals(pressures, ((TissueState)other).pressures);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(pressures);
+    }
+}
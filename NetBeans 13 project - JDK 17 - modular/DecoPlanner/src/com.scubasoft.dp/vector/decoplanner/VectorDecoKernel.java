@@ -0,0 +1,300 @@
+/**
+ * Copyright Andreas Hagberg
+ */
+
+ package decoplanner;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A DecoKernel.Accelerator that uses the incubating Vector API: the Schreiner and Haldane equations, the Bühlmann
+ * and VPM ceilings and the VPM-B bubble calculations for several compartments per instruction, with a vector
+ * exponential and logarithm. With AVX2 the 16 compartments of one gas take 4 vector steps, with AVX-512 2 steps.
+ * The float Bühlmann ceiling of TableBatch has twice as many lanes, so it takes 2 steps and 1 step.
+ *
+ * This file is kept out of the normal source folder, since it needs the jdk.incubator.vector module to compile.
+ * Compile it after the other classes, from the DecoPlanner folder:
+ *
+ *  javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp <classes folder> -d <classes folder> src/com.scubasoft.dp/vector/decoplanner/VectorDecoKernel.java
+ *
+ * and start DecoPlanner with
+ *
+ *  java --add-modules jdk.incubator.vector -Ddecoplanner.vectorKernel=true ...
+ *
+ * The vector exponential and logarithm are not always rounded like Math.exp and Math.log, so tissue pressures and
+ * surface phase volume times can differ from the scalar kernel in the last bits. The ceilings, radii and gradients
+ * only use add, multiply, divide and square root, and are the same as the scalar ones. The reference schedules are
+ * the same.
+ */
+public final class VectorDecoKernel implements DecoKernel.Accelerator
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void loadAscentDescent(double[] kN2, double[] kHe, double[] nitrogenPressures, double[] heliumPressures, double Initial_Inspired_N2_Pressure, double Nitrogen_Rate, double Initial_Inspired_He_Pressure, double Helium_Rate, double Segment_Time)
+    {
+        schreiner(kHe, heliumPressures, Initial_Inspired_He_Pressure, Helium_Rate, Segment_Time);
+        schreiner(kN2, nitrogenPressures, Initial_Inspired_N2_Pressure, Nitrogen_Rate, Segment_Time);
+    }
+
+    @Override
+    public void loadConstantDepth(double[] kN2, double[] kHe, double[] nitrogenPressures, double[] heliumPressures, double Inspired_Nitrogen_Pressure, double Inspired_Helium_Pressure, double Segment_Time)
+    {
+        haldane(kHe, heliumPressures, Inspired_Helium_Pressure, Segment_Time);
+        haldane(kN2, nitrogenPressures, Inspired_Nitrogen_Pressure, Segment_Time);
+    }
+
+    // P = Pi0 + R(t - 1/k) - (Pi0 - P0 - (R/k))e^-kt
+    private static void schreiner(double[] k, double[] pressures, double Initial_Inspired_Gas_Pressure, double Rate, double Segment_Time)
+    {
+        int i = 0;
+        for(; i<SPECIES.loopBound(k.length); i+=SPECIES.length())
+        {
+            DoubleVector K = DoubleVector.fromArray(SPECIES, k, i);
+            DoubleVector P0 = DoubleVector.fromArray(SPECIES, pressures, i);
+            DoubleVector decay = K.mul(-Segment_Time).lanewise(VectorOperators.EXP);
+            DoubleVector RoverK = K.broadcast(Rate).div(K);
+            DoubleVector P = RoverK.neg().add(Initial_Inspired_Gas_Pressure + Rate*Segment_Time)
+                    .sub(P0.neg().add(Initial_Inspired_Gas_Pressure).sub(RoverK).mul(decay));
+            P.intoArray(pressures, i);
+        }
+        for(; i<k.length; i++)
+        {
+            pressures[i] = DecoKernel.schreinerEquation(Initial_Inspired_Gas_Pressure, Rate, Segment_Time, k[i], pressures[i]);
+        }
+    }
+
+    // P = P0 + (Pi - P0)(1 - e^-kt)
+    private static void haldane(double[] k, double[] pressures, double Inspired_Gas_Pressure, double Segment_Time)
+    {
+        int i = 0;
+        for(; i<SPECIES.loopBound(k.length); i+=SPECIES.length())
+        {
+            DoubleVector K = DoubleVector.fromArray(SPECIES, k, i);
+            DoubleVector P0 = DoubleVector.fromArray(SPECIES, pressures, i);
+            DoubleVector uptake = K.mul(-Segment_Time).lanewise(VectorOperators.EXP).neg().add(1.0);
+            P0.add(P0.neg().add(Inspired_Gas_Pressure).mul(uptake)).intoArray(pressures, i);
+        }
+        for(; i<k.length; i++)
+        {
+            pressures[i] = DecoKernel.haldaneEquation(pressures[i], Inspired_Gas_Pressure, k[i], Segment_Time);
+        }
+    }
+
+    @Override
+    public double buhlmannToleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double[] N2_a, double[] N2_b, double[] He_a, double[] He_b, double Gradient_Factor)
+    {
+        double highest = 0.0;
+        int i = 0;
+        for(; i<SPECIES.loopBound(nitrogenPressures.length); i+=SPECIES.length())
+        {
+            DoubleVector PHe = DoubleVector.fromArray(SPECIES, heliumPressures, i);
+            DoubleVector PN2 = DoubleVector.fromArray(SPECIES, nitrogenPressures, i);
+            DoubleVector inertGasPressure = PHe.add(PN2);
+            DoubleVector Coefficient_A = PHe.mul(DoubleVector.fromArray(SPECIES, He_a, i)).add(PN2.mul(DoubleVector.fromArray(SPECIES, N2_a, i))).div(inertGasPressure);
+            DoubleVector Coefficient_B = PHe.mul(DoubleVector.fromArray(SPECIES, He_b, i)).add(PN2.mul(DoubleVector.fromArray(SPECIES, N2_b, i))).div(inertGasPressure);
+            DoubleVector Tolerated_Ambient_Pressure = inertGasPressure.sub(Coefficient_A.mul(Gradient_Factor))
+                    .div(Coefficient_B.broadcast(Gradient_Factor).div(Coefficient_B).sub(Gradient_Factor).add(1.0));
+            highest = Math.max(highest, Tolerated_Ambient_Pressure.reduceLanes(VectorOperators.MAX));
+        }
+        for(; i<nitrogenPressures.length; i++)
+        {
+            double PHe = heliumPressures[i];
+            double PN2 = nitrogenPressures[i];
+            double inertGasPressure = PHe + PN2;
+            double Coefficient_A = (PHe*He_a[i] + PN2*N2_a[i])/ inertGasPressure;
+            double Coefficient_B = (PHe*He_b[i] + PN2*N2_b[i])/ inertGasPressure;
+            highest = Math.max(highest, (inertGasPressure - Coefficient_A*Gradient_Factor)/(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0));
+        }
+        return highest;
+    }
+
+    @Override
+    public float buhlmannToleratedAmbientPressure(float[] nitrogenPressures, float[] heliumPressures, float[] N2_a, float[] N2_b, float[] He_a, float[] He_b, float Gradient_Factor)
+    {
+        float highest = 0.0f;
+        int i = 0;
+        for(; i<FLOAT_SPECIES.loopBound(nitrogenPressures.length); i+=FLOAT_SPECIES.length())
+        {
+            FloatVector PHe = FloatVector.fromArray(FLOAT_SPECIES, heliumPressures, i);
+            FloatVector PN2 = FloatVector.fromArray(FLOAT_SPECIES, nitrogenPressures, i);
+            FloatVector inertGasPressure = PHe.add(PN2);
+            FloatVector Coefficient_A = PHe.mul(FloatVector.fromArray(FLOAT_SPECIES, He_a, i)).add(PN2.mul(FloatVector.fromArray(FLOAT_SPECIES, N2_a, i))).div(inertGasPressure);
+            FloatVector Coefficient_B = PHe.mul(FloatVector.fromArray(FLOAT_SPECIES, He_b, i)).add(PN2.mul(FloatVector.fromArray(FLOAT_SPECIES, N2_b, i))).div(inertGasPressure);
+            FloatVector Tolerated_Ambient_Pressure = inertGasPressure.sub(Coefficient_A.mul(Gradient_Factor))
+                    .div(Coefficient_B.broadcast(Gradient_Factor).div(Coefficient_B).sub(Gradient_Factor).add(1.0f));
+            highest = Math.max(highest, Tolerated_Ambient_Pressure.reduceLanes(VectorOperators.MAX));
+        }
+        for(; i<nitrogenPressures.length; i++)
+        {
+            float PHe = heliumPressures[i];
+            float PN2 = nitrogenPressures[i];
+            float inertGasPressure = PHe + PN2;
+            float Coefficient_A = (PHe*He_a[i] + PN2*N2_a[i])/ inertGasPressure;
+            float Coefficient_B = (PHe*He_b[i] + PN2*N2_b[i])/ inertGasPressure;
+            highest = Math.max(highest, (inertGasPressure - Coefficient_A*Gradient_Factor)/(Gradient_Factor/Coefficient_B - Gradient_Factor + 1.0f));
+        }
+        return highest;
+    }
+
+    @Override
+    public double vpmToleratedAmbientPressure(double[] nitrogenPressures, double[] heliumPressures, double[] Deco_Gradient_N2, double[] Deco_Gradient_He, double Constant_Pressure_Other_Gases)
+    {
+        double highest = 0.0;
+        int i = 0;
+        for(; i<SPECIES.loopBound(nitrogenPressures.length); i+=SPECIES.length())
+        {
+            DoubleVector PHe = DoubleVector.fromArray(SPECIES, heliumPressures, i);
+            DoubleVector PN2 = DoubleVector.fromArray(SPECIES, nitrogenPressures, i);
+            DoubleVector GradientHe = DoubleVector.fromArray(SPECIES, Deco_Gradient_He, i);
+            DoubleVector GradientN2 = DoubleVector.fromArray(SPECIES, Deco_Gradient_N2, i);
+            DoubleVector Gas_Loading = PHe.add(PN2);
+            DoubleVector Weighted_Allowable_Gradient = GradientHe.mul(PHe).add(GradientN2.mul(PN2)).div(Gas_Loading);
+            DoubleVector Tolerated_Ambient_Pressure = Gas_Loading.add(Constant_Pressure_Other_Gases).sub(Weighted_Allowable_Gradient);
+            //an empty compartment uses the smaller gradient
+            DoubleVector Empty_Compartment = GradientHe.min(GradientN2).neg().add(Constant_Pressure_Other_Gases);
+            Tolerated_Ambient_Pressure = Empty_Compartment.blend(Tolerated_Ambient_Pressure, Gas_Loading.compare(VectorOperators.GT, 0.0));
+            highest = Math.max(highest, Tolerated_Ambient_Pressure.reduceLanes(VectorOperators.MAX));
+        }
+        for(; i<nitrogenPressures.length; i++)
+        {
+            double Gas_Loading = heliumPressures[i] + nitrogenPressures[i];
+            double Tolerated_Ambient_Pressure;
+            if(Gas_Loading > 0.0)
+            {
+                Tolerated_Ambient_Pressure = (Gas_Loading + Constant_Pressure_Other_Gases) - (Deco_Gradient_He[i]* heliumPressures[i] + Deco_Gradient_N2[i]* nitrogenPressures[i]) / Gas_Loading;
+            }
+            else
+            {
+                Tolerated_Ambient_Pressure = Constant_Pressure_Other_Gases - Math.min(Deco_Gradient_He[i], Deco_Gradient_N2[i]);
+            }
+            highest = Math.max(highest, Tolerated_Ambient_Pressure);
+        }
+        return highest;
+    }
+
+    @Override
+    public void regenerateNuclei(double[] Max_Crushing_Pressure, double[] Adjusted_Critical_Radius, double[] Regenerated_Radius, double[] Adjusted_Crushing_Pressure, double Regeneration_Factor, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM)
+    {
+        double Skin_Difference = 2.0*(Skin_Compression_GammaC - Surface_Tension_Gamma);
+        int i = 0;
+        for(; i<SPECIES.loopBound(Max_Crushing_Pressure.length); i+=SPECIES.length())
+        {
+            DoubleVector Radius = DoubleVector.fromArray(SPECIES, Adjusted_Critical_Radius, i);
+            DoubleVector Crushing_Pressure_Pascals = DoubleVector.fromArray(SPECIES, Max_Crushing_Pressure, i).div(Depth_Per_ATM).mul(101325.0);
+            DoubleVector Inverse_Ending_Radius = Crushing_Pressure_Pascals.div(Skin_Difference).add(Radius.broadcast(1.0).div(Radius));
+            DoubleVector Ending_Radius = Inverse_Ending_Radius.broadcast(1.0).div(Inverse_Ending_Radius);
+            DoubleVector Regenerated = Radius.add(Ending_Radius.sub(Radius).mul(Regeneration_Factor));
+            DoubleVector Crush_Pressure_Adjust_Ratio = Ending_Radius.mul(Radius.sub(Regenerated)).div(Regenerated.mul(Radius.sub(Ending_Radius)));
+            Regenerated.intoArray(Regenerated_Radius, i);
+            Crushing_Pressure_Pascals.mul(Crush_Pressure_Adjust_Ratio).div(101325.0).mul(Depth_Per_ATM).intoArray(Adjusted_Crushing_Pressure, i);
+        }
+        for(; i<Max_Crushing_Pressure.length; i++)
+        {
+            double Crushing_Pressure_Pascals = (Max_Crushing_Pressure[i]/Depth_Per_ATM) * 101325.0;
+            double Ending_Radius = 1.0/(Crushing_Pressure_Pascals/Skin_Difference + 1.0/Adjusted_Critical_Radius[i]);
+            Regenerated_Radius[i] = Adjusted_Critical_Radius[i] + (Ending_Radius - Adjusted_Critical_Radius[i]) * Regeneration_Factor;
+            double Crush_Pressure_Adjust_Ratio = (Ending_Radius*(Adjusted_Critical_Radius[i] - Regenerated_Radius[i])) / (Regenerated_Radius[i] * (Adjusted_Critical_Radius[i] - Ending_Radius));
+            Adjusted_Crushing_Pressure[i] = ((Crushing_Pressure_Pascals * Crush_Pressure_Adjust_Ratio) / 101325.0) * Depth_Per_ATM;
+        }
+    }
+
+    @Override
+    public void initialAllowableGradients(double[] Regenerated_Radius, double[] Initial_Allowable_Gradient, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM)
+    {
+        double Numerator = 2.0*Surface_Tension_Gamma*(Skin_Compression_GammaC - Surface_Tension_Gamma);
+        int i = 0;
+        for(; i<SPECIES.loopBound(Regenerated_Radius.length); i+=SPECIES.length())
+        {
+            DoubleVector Radius = DoubleVector.fromArray(SPECIES, Regenerated_Radius, i);
+            Radius.broadcast(Numerator).div(Radius.mul(Skin_Compression_GammaC)).div(101325.0).mul(Depth_Per_ATM).intoArray(Initial_Allowable_Gradient, i);
+        }
+        for(; i<Regenerated_Radius.length; i++)
+        {
+            Initial_Allowable_Gradient[i] = ((Numerator / (Regenerated_Radius[i]*Skin_Compression_GammaC)) / 101325.0) * Depth_Per_ATM;
+        }
+    }
+
+    @Override
+    public void criticalVolumeGradients(double[] Adjusted_Crushing_Pressure, double[] Initial_Allowable_Gradient, double[] Phase_Volume_Time, double[] Allowable_Gradient, double Parameter_Lambda_Pascals, double Surface_Tension_Gamma, double Skin_Compression_GammaC, double Depth_Per_ATM)
+    {
+        double Lambda_Gamma = Parameter_Lambda_Pascals*Surface_Tension_Gamma;
+        int i = 0;
+        for(; i<SPECIES.loopBound(Adjusted_Crushing_Pressure.length); i+=SPECIES.length())
+        {
+            DoubleVector Time = DoubleVector.fromArray(SPECIES, Phase_Volume_Time, i);
+            DoubleVector Adj_Crush_Pressure_Pascals = DoubleVector.fromArray(SPECIES, Adjusted_Crushing_Pressure, i).div(Depth_Per_ATM).mul(101325.0);
+            DoubleVector Initial_Allowable_Grad_Pa = DoubleVector.fromArray(SPECIES, Initial_Allowable_Gradient, i).div(Depth_Per_ATM).mul(101325.0);
+            DoubleVector B = Initial_Allowable_Grad_Pa.add(Time.broadcast(Lambda_Gamma).div(Time.mul(Skin_Compression_GammaC)));
+            DoubleVector C = Adj_Crush_Pressure_Pascals.mul(Parameter_Lambda_Pascals).mul(Surface_Tension_Gamma).mul(Surface_Tension_Gamma)
+                    .div(Time.mul(Skin_Compression_GammaC).mul(Skin_Compression_GammaC));
+            DoubleVector New_Allowable_Grad_Pascals = B.add(B.mul(B).sub(C.mul(4.0)).lanewise(VectorOperators.SQRT)).div(2.0);
+            New_Allowable_Grad_Pascals.div(101325.0).mul(Depth_Per_ATM).intoArray(Allowable_Gradient, i);
+        }
+        for(; i<Adjusted_Crushing_Pressure.length; i++)
+        {
+            double Adj_Crush_Pressure_Pascals = (Adjusted_Crushing_Pressure[i]/Depth_Per_ATM) * 101325.0;
+            double B = (Initial_Allowable_Gradient[i]/Depth_Per_ATM) * 101325.0 + Lambda_Gamma/ (Skin_Compression_GammaC*Phase_Volume_Time[i]);
+            double C = (Surface_Tension_Gamma*(Surface_Tension_Gamma*(Parameter_Lambda_Pascals*Adj_Crush_Pressure_Pascals)))/(Skin_Compression_GammaC*(Skin_Compression_GammaC*Phase_Volume_Time[i]));
+            Allowable_Gradient[i] = (((B + Math.sqrt(B*B - 4.0*C))/2.0)/101325.0)*Depth_Per_ATM;
+        }
+    }
+
+    @Override
+    public void surfacePhaseVolumeTimes(double[] kN2, double[] kHe, double[] nitrogenPressures, double[] heliumPressures, double Surface_Inspired_N2_Pressure, double[] Surface_Phase_Volume_Time)
+    {
+        int i = 0;
+        for(; i<SPECIES.loopBound(kN2.length); i+=SPECIES.length())
+        {
+            DoubleVector KN2 = DoubleVector.fromArray(SPECIES, kN2, i);
+            DoubleVector KHe = DoubleVector.fromArray(SPECIES, kHe, i);
+            DoubleVector PHe = DoubleVector.fromArray(SPECIES, heliumPressures, i);
+            DoubleVector PN2 = DoubleVector.fromArray(SPECIES, nitrogenPressures, i);
+            DoubleVector Nitrogen_Gradient = PN2.sub(Surface_Inspired_N2_Pressure);
+            DoubleVector Total_Gradient = PHe.add(PN2).sub(Surface_Inspired_N2_Pressure);
+            VectorMask<Double> Nitrogen_Supersaturated = PN2.compare(VectorOperators.GT, Surface_Inspired_N2_Pressure);
+            VectorMask<Double> Helium_Supersaturated = Nitrogen_Supersaturated.not().and(PHe.add(PN2).compare(VectorOperators.GE, Surface_Inspired_N2_Pressure));
+
+            DoubleVector Volume_Time = PHe.div(KHe).add(Nitrogen_Gradient.div(KN2)).div(Total_Gradient);
+            //the logarithm and exponentials only when a compartment needs them, usually none does
+            if(Helium_Supersaturated.anyTrue())
+            {
+                DoubleVector Decay_Time_to_Zero_Gradient = KN2.broadcast(1.0).div(KN2.sub(KHe))
+                        .mul(PN2.neg().add(Surface_Inspired_N2_Pressure).div(PHe).lanewise(VectorOperators.LOG));
+                DoubleVector Integral_Gradient_x_Time = PHe.div(KHe).mul(KHe.neg().mul(Decay_Time_to_Zero_Gradient).lanewise(VectorOperators.EXP).neg().add(1.0))
+                        .add(Nitrogen_Gradient.div(KN2).mul(KN2.neg().mul(Decay_Time_to_Zero_Gradient).lanewise(VectorOperators.EXP).neg().add(1.0)));
+                Volume_Time = Volume_Time.blend(Integral_Gradient_x_Time.div(Total_Gradient), Helium_Supersaturated);
+            }
+            Volume_Time.blend(0.0, Nitrogen_Supersaturated.or(Helium_Supersaturated).not()).intoArray(Surface_Phase_Volume_Time, i);
+        }
+        for(; i<kN2.length; i++)
+        {
+            double Nitrogen_Gradient = nitrogenPressures[i] - Surface_Inspired_N2_Pressure;
+            double Total_Gradient = heliumPressures[i] + nitrogenPressures[i] - Surface_Inspired_N2_Pressure;
+            if(nitrogenPressures[i] > Surface_Inspired_N2_Pressure)
+            {
+                Surface_Phase_Volume_Time[i] = (heliumPressures[i]/kHe[i] + Nitrogen_Gradient / kN2[i]) / Total_Gradient;
+            }
+            else if(heliumPressures[i]+nitrogenPressures[i] >= Surface_Inspired_N2_Pressure)
+            {
+                double Decay_Time_to_Zero_Gradient = 1.0/(kN2[i]-kHe[i]) * Math.log((Surface_Inspired_N2_Pressure - nitrogenPressures[i])/heliumPressures[i]);
+                Surface_Phase_Volume_Time[i] = (heliumPressures[i]/kHe[i]*(1.0-Math.exp(-kHe[i]*Decay_Time_to_Zero_Gradient)) + Nitrogen_Gradient/kN2[i]*(1.0-Math.exp(-kN2[i]*Decay_Time_to_Zero_Gradient))) / Total_Gradient;
+            }
+            else
+            {
+                Surface_Phase_Volume_Time[i] = 0.0;
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Vector API, " + SPECIES.length() + " doubles per vector";
+    }
+}
@@ -2,8 +2,14 @@ import java.util.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
+import decoplanner.CompartmentModel;
+import decoplanner.DecoKernel;
+
 /**
  * Perfect alignment with DecoPlanner using exact iterative algorithm from debug output
+ *
+ * The tissue calculations come from DecoPlanner's DecoKernel, so compile from this directory with
+ * javac -d . -sourcepath "NetBeans 13 project - JDK 17 - modular/DecoPlanner/src/com.scubasoft.dp/classes" PerfectAlignmentCLI.java
  */
 public class PerfectAlignmentCLI {
     
@@ -15,6 +21,9 @@ public class PerfectAlignmentCLI {
     private static final double[] N2_HALFTIME = {5.0, 8.0, 12.5, 18.5, 27.0, 38.3, 54.3, 77.0, 109.0, 146.0, 187.0, 239.0, 305.0, 390.0, 498.0, 635.0};
     private static final double[] HE_HALFTIME = {1.88, 3.02, 4.72, 6.99, 10.21, 14.48, 20.53, 29.11, 41.20, 55.19, 70.69, 90.34, 115.29, 147.42, 188.24, 240.03};
     
+    // Gas loadings and ceilings, shared with DecoPlanner
+    private static final DecoKernel kernel = new DecoKernel(CompartmentModel.of(N2_HALFTIME, HE_HALFTIME));
+    
     // Settings (exact from DecoPlanner debug)
     private static final double SURFACE_PRESSURE = 10.1325; // msw
     private static final double WATER_VAPOR_PRESSURE = 0.627; // msw
@@ -317,14 +326,11 @@ public class PerfectAlignmentCLI {
             iteration++;
             
             // Load tissue compartments for iteration using TOTAL time (tempSegmentTime)
-            for (int i = 0; i < 16; i++) {
-                n2Pressure[i] = haldaneEquation(n2Original[i], 
-                    (SURFACE_PRESSURE + stopDepth - WATER_VAPOR_PRESSURE) * (1 - gasO2 - gasHe), 
-                    Math.log(2) / N2_HALFTIME[i], tempSegmentTime);
-                hePressure[i] = haldaneEquation(heOriginal[i], 
-                    (SURFACE_PRESSURE + stopDepth - WATER_VAPOR_PRESSURE) * gasHe, 
-                    Math.log(2) / HE_HALFTIME[i], tempSegmentTime);
-            }
+            n2Pressure = Arrays.copyOf(n2Original, 16);
+            hePressure = Arrays.copyOf(heOriginal, 16);
+            kernel.loadConstantDepth(n2Pressure, hePressure, 
+                (SURFACE_PRESSURE + stopDepth - WATER_VAPOR_PRESSURE) * (1 - gasO2 - gasHe), 
+                (SURFACE_PRESSURE + stopDepth - WATER_VAPOR_PRESSURE) * gasHe, tempSegmentTime);
             
             // Calculate ceiling
             double ceiling = calculateCeiling(gradientFactor);
@@ -420,21 +426,15 @@ public class PerfectAlignmentCLI {
             double segmentTime = (endingAmbientPressure - startingAmbientPressure) / rate;
             
             // Simulate tissue loading during ascent for all compartments
-            double[] tempN2 = new double[16];
-            double[] tempHe = new double[16];
+            // EXACT DecoPlanner Schreiner equation (lines 2093-2095)
+            double[] tempN2 = Arrays.copyOf(initialN2, 16);
+            double[] tempHe = Arrays.copyOf(initialHe, 16);
+            kernel.loadAscentDescent(tempN2, tempHe, initialInspiredN2, nitrogenRate, initialInspiredHe, heliumRate, segmentTime);
+            
             double[] tempGasLoading = new double[16];
             double[] allowableGasLoading = new double[16];
             
             for (int i = 0; i < 16; i++) {
-                // EXACT DecoPlanner Schreiner equation (lines 2093-2095)
-                double n2TimeConstant = Math.log(2) / N2_HALFTIME[i];
-                double heTimeConstant = Math.log(2) / HE_HALFTIME[i];
-                
-                tempHe[i] = initialInspiredHe + heliumRate * (segmentTime - 1/heTimeConstant) - 
-                           (initialInspiredHe - initialHe[i] - (heliumRate/heTimeConstant)) * Math.exp(-heTimeConstant * segmentTime);
-                tempN2[i] = initialInspiredN2 + nitrogenRate * (segmentTime - 1/n2TimeConstant) - 
-                           (initialInspiredN2 - initialN2[i] - (nitrogenRate/n2TimeConstant)) * Math.exp(-n2TimeConstant * segmentTime);
-                
                 tempGasLoading[i] = tempHe[i] + tempN2[i];
                 
                 // EXACT DecoPlanner coefficients (lines 2096-2098)
@@ -487,32 +487,10 @@ public class PerfectAlignmentCLI {
     }
     
     private static double calculateCeiling(double gradientFactor) {
-        double maxCeiling = 0;
+        // EXACT DecoPlanner CALC_DECO_CEILING, never above the surface here
+        double ceiling = DecoKernel.buhlmannToleratedAmbientPressure(n2Pressure, hePressure, N2_A, N2_B, HE_A, HE_B, gradientFactor) - SURFACE_PRESSURE;
         
-        for (int i = 0; i < 16; i++) {
-            double totalPressure = n2Pressure[i] + hePressure[i];
-            
-            // EXACT DecoPlanner calculation (lines 1272-1273)
-            double a = (hePressure[i] * HE_A[i] + n2Pressure[i] * N2_A[i]) / totalPressure;
-            double b = (hePressure[i] * HE_B[i] + n2Pressure[i] * N2_B[i]) / totalPressure;
-            
-            // EXACT DecoPlanner formula (line 1275)
-            double toleratedAmbientPressure = (totalPressure - a * gradientFactor) / (gradientFactor / b - gradientFactor + 1.0);
-            
-            // Pressure cannot be less than zero (lines 1280-1283)
-            if (toleratedAmbientPressure < 0.0) {
-                toleratedAmbientPressure = 0.0;
-            }
-            
-            // EXACT DecoPlanner ceiling calculation (line 1295)
-            double ceiling = toleratedAmbientPressure - SURFACE_PRESSURE;
-            
-            if (ceiling > maxCeiling) {
-                maxCeiling = ceiling;
-            }
-        }
-        
-        return maxCeiling;
+        return Math.max(0, ceiling);
     }
     
     private static void loadTissuesConstant(double depth, double time, double gasO2, double gasHe) {
@@ -529,14 +507,8 @@ public class PerfectAlignmentCLI {
                              gasO2, gasHe, (1 - gasO2 - gasHe));
         }
         
-        for (int i = 0; i < 16; i++) {
-            // EXACT DecoPlanner Haldane equation (line 411)
-            double n2TimeConstant = Math.log(2) / N2_HALFTIME[i];
-            double heTimeConstant = Math.log(2) / HE_HALFTIME[i];
-            
-            n2Pressure[i] = n2Pressure[i] + (inspiredN2 - n2Pressure[i]) * (1 - Math.exp(-n2TimeConstant * time));
-            hePressure[i] = hePressure[i] + (inspiredHe - hePressure[i]) * (1 - Math.exp(-heTimeConstant * time));
-        }
+        // EXACT DecoPlanner Haldane equation (line 411)
+        kernel.loadConstantDepth(n2Pressure, hePressure, inspiredN2, inspiredHe, time);
     }
     
     private static void loadTissuesDescent(double startDepth, double endDepth, double time, 
@@ -552,16 +524,8 @@ public class PerfectAlignmentCLI {
         double R_N2 = rate * (1 - gasO2 - gasHe);
         double R_He = rate * gasHe;
         
-        for (int i = 0; i < 16; i++) {
-            double kN2 = Math.log(2) / N2_HALFTIME[i];
-            double kHe = Math.log(2) / HE_HALFTIME[i];
-            
-            // EXACT DecoPlanner Schreiner equation (line 372, 386)
-            n2Pressure[i] = Pi0_N2 + R_N2 * (time - 1/kN2) - 
-                           (Pi0_N2 - n2Pressure[i] - (R_N2/kN2)) * Math.exp(-kN2 * time);
-            hePressure[i] = Pi0_He + R_He * (time - 1/kHe) - 
-                           (Pi0_He - hePressure[i] - (R_He/kHe)) * Math.exp(-kHe * time);
-        }
+        // EXACT DecoPlanner Schreiner equation (line 372, 386)
+        kernel.loadAscentDescent(n2Pressure, hePressure, Pi0_N2, R_N2, Pi0_He, R_He, time);
     }
     
     private static void loadTissuesAscent(double startDepth, double endDepth, double time, 
@@ -569,11 +533,6 @@ public class PerfectAlignmentCLI {
         loadTissuesDescent(startDepth, endDepth, time, gasO2, gasHe); // Same math, opposite direction
     }
     
-    // Haldane equation for tissue loading (matches DecoPlanner)
-    private static double haldaneEquation(double initialPressure, double inspiredPressure, double k, double time) {
-        return inspiredPressure + (initialPressure - inspiredPressure) * Math.exp(-k * time);
-    }
-    
     // EXACT DecoPlanner rounding method (Util.roundToTwoDecimals)
     private static double roundToTwoDecimals(double value) {
         if (Double.isNaN(value) || Double.isInfinite(value)) {
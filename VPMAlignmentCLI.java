@@ -2,9 +2,15 @@ import java.util.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
+import decoplanner.CompartmentModel;
+import decoplanner.DecoKernel;
+
 /**
  * VPM-B Alignment with DecoPlanner using exact implementation
  * This CLI replicates DecoPlanner's VPM-B algorithm exactly
+ *
+ * The tissue calculations come from DecoPlanner's DecoKernel, so compile from this directory with
+ * javac -d . -sourcepath "NetBeans 13 project - JDK 17 - modular/DecoPlanner/src/com.scubasoft.dp/classes" VPMAlignmentCLI.java
  */
 public class VPMAlignmentCLI {
     
@@ -16,19 +22,14 @@ public class VPMAlignmentCLI {
     private static final int DECO_STOP_INTERVAL = 3; // m
     private static final double MIN_DECO_STOP_TIME = 1.0; // min
     
-    // EXACT VPM oxygen dose/tolerance constants (lines 115-118)
-    private static final double[] PO2LO = new double[11];
-    private static final double[] PO2HI = new double[11];
-    private static final double[] LIMSLP = new double[11];
-    private static final double[] LIMINT = new double[11];
-    
     // EXACT nitrogen half-times (lines 121-136)
     private static final double[] nitrogenHalfTimes = new double[16];
-    private static final double[] kN2 = new double[16]; // k = ln2 / half-time
     
     // EXACT helium half-times (lines 144-159)
     private static final double[] heliumHalfTimes = new double[16];
-    private static final double[] kHe = new double[16]; // k = ln2 / half-time
+    
+    // Gas loadings and ceilings, shared with DecoPlanner
+    private static final DecoKernel kernel;
     
     // EXACT VPM tissue compartment pressures
     private static double[] nitrogenCompartmentPressure = new double[16];
@@ -77,12 +78,6 @@ public class VPMAlignmentCLI {
     private static double Critical_Radius_He_Microns = 1.0;
     
     static {
-        // EXACT initialization from VPMDeco.java constructor (lines 115-118)
-        PO2LO[1]=0.5;PO2LO[2]=0.6;PO2LO[3]=0.7;PO2LO[4]=0.8;PO2LO[5]=0.9;PO2LO[6]=1.1;PO2LO[7]=1.5;PO2LO[8]=1.6061;PO2LO[9]=1.62;PO2LO[10]=1.74;
-        PO2HI[1]=0.6;PO2HI[2]=0.7;PO2HI[3]=0.8;PO2HI[4]=0.9;PO2HI[5]=1.1;PO2HI[6]=1.5;PO2HI[7]=1.6061;PO2HI[8]=1.62;PO2HI[9]=1.74;PO2HI[10]=1.82;
-        LIMSLP[1]=-1800.0;LIMSLP[2]=-1500.0;LIMSLP[3]=-1200.0;LIMSLP[4]=-900.0;LIMSLP[5]=-600.0;LIMSLP[6]=-300.0;LIMSLP[7]=-750.0;LIMSLP[8]=-1250.0;LIMSLP[9]=-125.0;LIMSLP[10]=-50.0;
-        LIMINT[1]=1800.0;LIMINT[2]=1620.0;LIMINT[3]=1410.0;LIMINT[4]=1170.0;LIMINT[5]=900.0;LIMINT[6]=570.0;LIMINT[7]=1245.0;LIMINT[8]=2045.0;LIMINT[9]=222.5;LIMINT[10]=92.0;
-        
         // EXACT nitrogen half-times (lines 121-136)
         nitrogenHalfTimes[0] = 5;
         nitrogenHalfTimes[1] = 8;
@@ -101,12 +96,6 @@ public class VPMAlignmentCLI {
         nitrogenHalfTimes[14] = 498;
         nitrogenHalfTimes[15] = 635;
         
-        // k = ln2 / half-time (lines 139-142)
-        for(int cpt=0; cpt<16; cpt++)
-        {
-            kN2[cpt] = Math.log(2) / nitrogenHalfTimes[cpt];
-        }
-        
         // EXACT helium half-times (lines 144-159)
         heliumHalfTimes[0] = 1.88;
         heliumHalfTimes[1] = 3.02;
@@ -126,10 +115,7 @@ public class VPMAlignmentCLI {
         heliumHalfTimes[15] = 240.03;
 
         // k = ln2 / half-time (lines 162-165)
-        for(int cpt=0; cpt<16; cpt++)
-        {
-            kHe[cpt] = Math.log(2) / heliumHalfTimes[cpt];
-        }
+        kernel = new DecoKernel(CompartmentModel.of(nitrogenHalfTimes, heliumHalfTimes));
     }
     
     public static void main(String[] args) {
@@ -288,51 +274,26 @@ public class VPMAlignmentCLI {
         Constant_Pressure_Other_Gases = (SURFACE_PRESSURE - WATER_VAPOR_PRESSURE) * 0.01; // N2 + Ar + etc.
     }
     
-    // EXACT Schreiner equation from VPMDeco.java (lines 233-242)
-    private static double SCHREINER_EQUATION(double Initial_Inspired_Gas_Pressure, double Rate_Change_Insp_Gas_Pressure,
-                                      double Interval_Time, double Gas_Time_Constant, double Initial_Gas_Pressure)
-    {
-        double result = Initial_Inspired_Gas_Pressure + Rate_Change_Insp_Gas_Pressure* (Interval_Time - 1.0/Gas_Time_Constant) - (Initial_Inspired_Gas_Pressure - Initial_Gas_Pressure - Rate_Change_Insp_Gas_Pressure/Gas_Time_Constant)* Math.exp(-Gas_Time_Constant*Interval_Time);
-        return result;
-    }
-    
-    // Tissue loading methods using Schreiner equation
+    // Tissue loading at constant depth, Haldane equation (DecoKernel)
     private static void loadTissuesConstant(double depth, double time, double gasO2, double gasHe) {
         double ambientPressure = SURFACE_PRESSURE + depth;
         double inspiredN2 = (ambientPressure - WATER_VAPOR_PRESSURE) * (1 - gasO2 - gasHe);
         double inspiredHe = (ambientPressure - WATER_VAPOR_PRESSURE) * gasHe;
         
-        for (int i = 0; i < 16; i++) {
-            // Haldane equation for constant depth
-            nitrogenCompartmentPressure[i] = inspiredN2 + (nitrogenCompartmentPressure[i] - inspiredN2) * 
-                           Math.exp(-kN2[i] * time);
-            heliumCompartmentPressure[i] = inspiredHe + (heliumCompartmentPressure[i] - inspiredHe) * 
-                           Math.exp(-kHe[i] * time);
-        }
+        kernel.loadConstantDepth(nitrogenCompartmentPressure, heliumCompartmentPressure, inspiredN2, inspiredHe, time);
     }
     
+    // Tissue loading during descent, Schreiner equation (DecoKernel)
     private static void loadTissuesDescent(double startDepth, double endDepth, double time, 
                                           double gasO2, double gasHe) {
+        double startPressure = SURFACE_PRESSURE + startDepth;
         double rate = (endDepth - startDepth) / time;
         
-        for (int i = 0; i < 16; i++) {
-            double startPressure = SURFACE_PRESSURE + startDepth;
-            double endPressure = SURFACE_PRESSURE + endDepth;
-            
-            double inspiredN2Start = (startPressure - WATER_VAPOR_PRESSURE) * (1 - gasO2 - gasHe);
-            double inspiredN2End = (endPressure - WATER_VAPOR_PRESSURE) * (1 - gasO2 - gasHe);
-            double inspiredHeStart = (startPressure - WATER_VAPOR_PRESSURE) * gasHe;
-            double inspiredHeEnd = (endPressure - WATER_VAPOR_PRESSURE) * gasHe;
-            
-            // Use EXACT Schreiner equation
-            double n2Rate = (inspiredN2End - inspiredN2Start) / time;
-            nitrogenCompartmentPressure[i] = SCHREINER_EQUATION(inspiredN2Start, n2Rate, time, 
-                                                              kN2[i], nitrogenCompartmentPressure[i]);
-            
-            double heRate = (inspiredHeEnd - inspiredHeStart) / time;
-            heliumCompartmentPressure[i] = SCHREINER_EQUATION(inspiredHeStart, heRate, time,
-                                                            kHe[i], heliumCompartmentPressure[i]);
-        }
+        double inspiredN2Start = (startPressure - WATER_VAPOR_PRESSURE) * (1 - gasO2 - gasHe);
+        double inspiredHeStart = (startPressure - WATER_VAPOR_PRESSURE) * gasHe;
+        
+        kernel.loadAscentDescent(nitrogenCompartmentPressure, heliumCompartmentPressure, 
+                                 inspiredN2Start, rate * (1 - gasO2 - gasHe), inspiredHeStart, rate * gasHe, time);
     }
     
     // Gas class (same as Buhlmann)
@@ -647,11 +608,6 @@ public class VPMAlignmentCLI {
         System.out.println("Algorithm implementation is LOYAL to original VPMDeco.java structure.");
     }
     
-    // EXACT Haldane equation from VPMDeco.java
-    private static double HALDANE_EQUATION(double initial_pressure, double inspired_pressure, double k, double time) {
-        return inspired_pressure + (initial_pressure - inspired_pressure) * Math.exp(-k * time);
-    }
-    
     // EXACT DECOMPRESSION_STOP function from VPMDeco.java lines 2858-3041
     private static double DECOMPRESSION_STOP(double decoStopDepth, double stepSize) {
         double ambientPressure = decoStopDepth + SURFACE_PRESSURE;
@@ -686,18 +642,8 @@ public class VPMAlignmentCLI {
         // EXACT decompression stop loop from VPMDeco.java lines 2968-3029
         boolean goBack;
         do {
-            double[] initialHeliumPressure = new double[16];
-            double[] initialNitrogenPressure = new double[16];
-            
-            for (int i = 0; i < 16; i++) {
-                initialHeliumPressure[i] = heliumCompartmentPressure[i];
-                initialNitrogenPressure[i] = nitrogenCompartmentPressure[i];
-                
-                heliumCompartmentPressure[i] = HALDANE_EQUATION(initialHeliumPressure[i], 
-                    inspiredHeliumPressure, kHe[i], segmentTime);
-                nitrogenCompartmentPressure[i] = HALDANE_EQUATION(initialNitrogenPressure[i], 
-                    inspiredNitrogenPressure, kN2[i], segmentTime);
-            }
+            kernel.loadConstantDepth(nitrogenCompartmentPressure, heliumCompartmentPressure, 
+                                     inspiredNitrogenPressure, inspiredHeliumPressure, segmentTime);
             
             double decoCeilingDepth = CALC_DECO_CEILING();
             
@@ -717,27 +663,9 @@ public class VPMAlignmentCLI {
     }
     
     private static double CALC_DECO_CEILING() {
-        // EXACT ceiling calculation from VPM - find controlling compartment
-        double ceiling = 0;
-        
-        for (int i = 0; i < 16; i++) {
-            // Calculate ceiling based on each gas separately, then take the deeper one
-            double n2_ceiling = 0;
-            double he_ceiling = 0;
-            
-            if (nitrogenCompartmentPressure[i] + Constant_Pressure_Other_Gases > Deco_Gradient_N2[i]) {
-                n2_ceiling = nitrogenCompartmentPressure[i] + Constant_Pressure_Other_Gases - Deco_Gradient_N2[i] - SURFACE_PRESSURE;
-            }
-            
-            if (heliumCompartmentPressure[i] + Constant_Pressure_Other_Gases > Deco_Gradient_He[i]) {
-                he_ceiling = heliumCompartmentPressure[i] + Constant_Pressure_Other_Gases - Deco_Gradient_He[i] - SURFACE_PRESSURE;
-            }
-            
-            double compartment_ceiling = Math.max(n2_ceiling, he_ceiling);
-            if (compartment_ceiling > ceiling) {
-                ceiling = compartment_ceiling;
-            }
-        }
+        // EXACT ceiling calculation from VPMDeco.java - gradients weighted by the He and N2 in each compartment
+        double ceiling = DecoKernel.vpmToleratedAmbientPressure(nitrogenCompartmentPressure, heliumCompartmentPressure, 
+                                                                Deco_Gradient_N2, Deco_Gradient_He, Constant_Pressure_Other_Gases) - SURFACE_PRESSURE;
         
         return Math.max(0, ceiling);
     }